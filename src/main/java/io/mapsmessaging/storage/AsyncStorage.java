@@ -25,6 +25,7 @@ import io.mapsmessaging.storage.impl.tier.memory.MemoryTierStorage;
 import io.mapsmessaging.storage.logging.StorageLogMessages;
 import io.mapsmessaging.storage.tasks.*;
 import io.mapsmessaging.utilities.threads.tasks.PriorityConcurrentTaskScheduler;
+import io.mapsmessaging.utilities.threads.tasks.TaskScheduler;
 import lombok.SneakyThrows;
 import org.jetbrains.annotations.NotNull;
 
@@ -32,6 +33,7 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledFuture;
@@ -121,7 +123,7 @@ public class AsyncStorage<T extends Storable> implements Closeable {
   public Future<T> add(@NotNull T toStore, Completion<T> completion) throws IOException {
     checkClose();
     logger.log(StorageLogMessages.ASYNC_ADD_REQUESTED, toStore.getKey());
-    return scheduler.submit(new AddTask<>(storage, toStore, completion), FOREGROUND_PRIORITY);
+    return schedulerFor(toStore.getKey()).submit(new AddTask<>(storage, toStore, completion), FOREGROUND_PRIORITY);
   }
 
   public Future<Boolean> remove(long key) throws IOException {
@@ -131,7 +133,22 @@ public class AsyncStorage<T extends Storable> implements Closeable {
   public Future<Boolean> remove(long key, Completion<Boolean> completion) throws IOException {
     checkClose();
     logger.log(StorageLogMessages.ASYNC_REMOVE_REQUESTED, key);
-    return scheduler.submit(new RemoveTask<>(storage, key, completion), FOREGROUND_PRIORITY);
+    return schedulerFor(key).submit(new RemoveTask<>(storage, key, completion), FOREGROUND_PRIORITY);
+  }
+
+  // Returns an empty batch for this store, it is applied through apply(batch) so it runs on the store's scheduler
+  public Batch<T> batch() {
+    return storage.batch();
+  }
+
+  public Future<Boolean> apply(@NotNull Batch<T> batch) throws IOException {
+    return apply(batch, null);
+  }
+
+  public Future<Boolean> apply(@NotNull Batch<T> batch, Completion<Boolean> completion) throws IOException {
+    checkClose();
+    logger.log(StorageLogMessages.ASYNC_BATCH_REQUESTED, batch.size());
+    return scheduler.submit(new BatchTask<>(storage, batch, completion), FOREGROUND_PRIORITY);
   }
 
   public Future<T> get(long key) throws IOException {
@@ -141,7 +158,29 @@ public class AsyncStorage<T extends Storable> implements Closeable {
   public Future<T> get(long key, Completion<T> completion) throws IOException {
     checkClose();
     logger.log(StorageLogMessages.ASYNC_GET_REQUESTED, key);
-    return scheduler.submit(new GetTask<>(storage, key, completion), FOREGROUND_PRIORITY);
+    if (storage.supportAsyncReads()) {
+      // The scheduler only issues the read, the future is completed by the I/O handler so reads pipeline
+      CompletableFuture<T> result = new CompletableFuture<>();
+      schedulerFor(key).submit(new GetAsyncTask<>(storage, key, result, completion), FOREGROUND_PRIORITY);
+      return result;
+    }
+    return schedulerFor(key).submit(new GetTask<>(storage, key, completion), FOREGROUND_PRIORITY);
+  }
+
+  public Future<T> get(long key, long bufferMask, Completion<T> completion) throws IOException {
+    checkClose();
+    logger.log(StorageLogMessages.ASYNC_GET_REQUESTED, key);
+    return schedulerFor(key).submit(new GetTask<>(storage, key, bufferMask, completion), FOREGROUND_PRIORITY);
+  }
+
+  public Future<RawRecord> getRaw(long key) throws IOException {
+    return getRaw(key, null);
+  }
+
+  public Future<RawRecord> getRaw(long key, Completion<RawRecord> completion) throws IOException {
+    checkClose();
+    logger.log(StorageLogMessages.ASYNC_GET_REQUESTED, key);
+    return schedulerFor(key).submit(new GetRawTask<>(storage, key, completion), FOREGROUND_PRIORITY);
   }
 
   public Future<Long> size() throws IOException {
@@ -186,7 +225,7 @@ public class AsyncStorage<T extends Storable> implements Closeable {
 
   public Future<Boolean> contains(long key, Completion<Boolean> completion) throws IOException {
     checkClose();
-    return scheduler.submit(new ContainsTask<>(storage, key, completion), FOREGROUND_PRIORITY);
+    return schedulerFor(key).submit(new ContainsTask<>(storage, key, completion), FOREGROUND_PRIORITY);
   }
 
   public Future<Statistics> getStatistics() {
@@ -214,6 +253,12 @@ public class AsyncStorage<T extends Storable> implements Closeable {
     return storage.getLastAccess();
   }
 
+  // A sharded store runs each key operation on the scheduler of the shard that owns the key, so shards write in parallel
+  private TaskScheduler schedulerFor(long key) {
+    TaskScheduler keyScheduler = storage.getExecutor(key);
+    return keyScheduler != null ? keyScheduler : scheduler;
+  }
+
   protected void checkClose() throws IOException {
     if (closed.get()) {
       logger.log(StorageLogMessages.ASYNC_REQUEST_ON_CLOSED_STORE);
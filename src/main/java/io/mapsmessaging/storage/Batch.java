@@ -0,0 +1,93 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage;
+
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An ordered list of adds and removes against a single store. Stores that support atomic batches apply every
+ * operation or none of them, with one commit record and one flush, others apply the operations in order.
+ * <p>
+ * The commit record only covers the store it is written to. Stores made up of several stores, such as sharded stores
+ * or stores sharing their payloads, apply each part separately and report that they do not support atomic batches.
+ */
+public class Batch<T extends Storable> {
+
+  private final Storage<T> storage;
+  private final List<Operation<T>> operations;
+
+  public Batch(@NotNull Storage<T> storage) {
+    this.storage = storage;
+    operations = new ArrayList<>();
+  }
+
+  public Batch<T> add(@NotNull T object) {
+    operations.add(new Operation<>(object.getKey(), object));
+    return this;
+  }
+
+  public Batch<T> remove(long key) {
+    operations.add(new Operation<>(key, null));
+    return this;
+  }
+
+  public @NotNull List<Operation<T>> getOperations() {
+    return Collections.unmodifiableList(operations);
+  }
+
+  public int size() {
+    return operations.size();
+  }
+
+  public boolean isEmpty() {
+    return operations.isEmpty();
+  }
+
+  public void commit() throws IOException {
+    if (!operations.isEmpty()) {
+      storage.apply(this);
+    }
+  }
+
+  public static class Operation<T extends Storable> {
+
+    @Getter
+    private final long key;
+
+    @Getter
+    private final @Nullable T object;
+
+    Operation(long key, @Nullable T object) {
+      this.key = key;
+      this.object = object;
+    }
+
+    public boolean isAdd() {
+      return object != null;
+    }
+  }
+}
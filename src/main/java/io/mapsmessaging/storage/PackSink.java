@@ -0,0 +1,142 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reusable, growable direct buffer that a StorableFactory can pack into instead of allocating a new ByteBuffer array
+ * per object. Each call to newBuffer() starts the next logical buffer, matching one entry of the array pack(T) would
+ * return, and the storage writes the packed data straight from the sink.
+ */
+public class PackSink {
+
+  private static final int INITIAL_SIZE = 4096;
+  private static final int MAX_RETAINED_SIZE = 1024 * 1024;
+
+  private final int initialSize;
+  private ByteBuffer data;
+  private int[] lengths;
+  private int count;
+  private int bufferStart;
+
+  public PackSink() {
+    this(INITIAL_SIZE);
+  }
+
+  public PackSink(int initialSize) {
+    this.initialSize = initialSize;
+    data = ByteBuffer.allocateDirect(initialSize);
+    lengths = new int[4];
+    count = 0;
+    bufferStart = 0;
+  }
+
+  public @NotNull PackSink newBuffer() {
+    closeBuffer();
+    if (count == lengths.length) {
+      int[] tmp = new int[lengths.length * 2];
+      System.arraycopy(lengths, 0, tmp, 0, count);
+      lengths = tmp;
+    }
+    count++;
+    bufferStart = data.position();
+    return this;
+  }
+
+  public @NotNull PackSink put(byte value) {
+    ensureCapacity(1).put(value);
+    return this;
+  }
+
+  public @NotNull PackSink putInt(int value) {
+    ensureCapacity(4).putInt(value);
+    return this;
+  }
+
+  public @NotNull PackSink putLong(long value) {
+    ensureCapacity(8).putLong(value);
+    return this;
+  }
+
+  public @NotNull PackSink put(@NotNull byte[] src) {
+    return put(src, 0, src.length);
+  }
+
+  public @NotNull PackSink put(@NotNull byte[] src, int offset, int length) {
+    ensureCapacity(length).put(src, offset, length);
+    return this;
+  }
+
+  // Copies the remaining bytes of the source without moving its position
+  public @NotNull PackSink put(@NotNull ByteBuffer src) {
+    ensureCapacity(src.remaining()).put(src.duplicate());
+    return this;
+  }
+
+  public int getBufferCount() {
+    return count;
+  }
+
+  public int getLength(int index) {
+    return lengths[index];
+  }
+
+  // Closes the last buffer and returns the packed data ready to be written
+  public @NotNull ByteBuffer complete() {
+    closeBuffer();
+    data.flip();
+    return data;
+  }
+
+  public void reset() {
+    if (data.capacity() > MAX_RETAINED_SIZE) {
+      data = ByteBuffer.allocateDirect(initialSize); // do not hold on to the space used by a single large object
+    }
+    data.clear();
+    count = 0;
+    bufferStart = 0;
+  }
+
+  private void closeBuffer() {
+    if (count > 0) {
+      lengths[count - 1] = data.position() - bufferStart;
+    }
+  }
+
+  private ByteBuffer ensureCapacity(int length) {
+    if (count == 0) {
+      newBuffer();
+    }
+    if (data.remaining() < length) {
+      int size = data.capacity();
+      while (size - data.position() < length) {
+        size = size * 2;
+      }
+      ByteBuffer tmp = ByteBuffer.allocateDirect(size);
+      data.flip();
+      tmp.put(data);
+      data = tmp;
+    }
+    return data;
+  }
+}
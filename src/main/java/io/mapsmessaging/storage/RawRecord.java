@@ -0,0 +1,103 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage;
+
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A leased, read only view of a stored record as it was packed by the StorableFactory. The buffers may be slices of a
+ * mapped file, so they are only valid until the record is closed.
+ */
+public class RawRecord implements Closeable {
+
+  @Getter
+  private final long key;
+
+  @Getter
+  private final long expiry;
+
+  private final ByteBuffer[] buffers;
+  private final Runnable onRelease;
+  private final AtomicBoolean released;
+
+  public RawRecord(long key, long expiry, @NotNull ByteBuffer[] buffers, @Nullable Runnable onRelease) {
+    this.key = key;
+    this.expiry = expiry;
+    this.buffers = buffers;
+    this.onRelease = onRelease;
+    released = new AtomicBoolean(false);
+  }
+
+  // Each call returns fresh views, so consuming them does not affect later calls
+  public @NotNull ByteBuffer[] getBuffers() throws IOException {
+    checkReleased();
+    ByteBuffer[] views = new ByteBuffer[buffers.length];
+    for (int x = 0; x < buffers.length; x++) {
+      views[x] = buffers[x].duplicate();
+    }
+    return views;
+  }
+
+  public long getLength() {
+    long length = 0;
+    for (ByteBuffer buffer : buffers) {
+      length += buffer.remaining();
+    }
+    return length;
+  }
+
+  // Writes every buffer to the channel without disturbing the views, so the record can be written more than once
+  public long writeTo(@NotNull WritableByteChannel channel) throws IOException {
+    checkReleased();
+    long written = 0;
+    for (ByteBuffer buffer : buffers) {
+      ByteBuffer view = buffer.duplicate();
+      while (view.hasRemaining()) {
+        written += channel.write(view);
+      }
+    }
+    return written;
+  }
+
+  public boolean isReleased() {
+    return released.get();
+  }
+
+  @Override
+  public void close() {
+    if (released.compareAndSet(false, true) && onRelease != null) {
+      onRelease.run();
+    }
+  }
+
+  private void checkReleased() throws IOException {
+    if (released.get()) {
+      throw new IOException("Raw record " + key + " has been released");
+    }
+  }
+}
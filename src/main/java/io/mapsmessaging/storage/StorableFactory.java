@@ -30,4 +30,9 @@ public interface StorableFactory<T extends Storable> {
 
   @NotNull ByteBuffer[] pack(@NotNull T object) throws IOException;
 
+  // Optionally packs straight into a reusable sink supplied by the storage, returning false falls back to pack(T)
+  default boolean pack(@NotNull T object, @NotNull PackSink sink) throws IOException {
+    return false;
+  }
+
 }
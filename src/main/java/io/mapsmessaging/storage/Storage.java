@@ -28,9 +28,12 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface Storage<T extends Storable> extends Closeable {
 
+  long ALL_BUFFERS = -1L;
+
   //region Life cycle API
   void delete() throws IOException;
 
@@ -85,6 +88,53 @@ public interface Storage<T extends Storable> extends Closeable {
 
   @Nullable T get(long key) throws IOException;
 
+  // Loads only the packed buffers whose bit is set in the mask, the others are passed to the factory as empty buffers.
+  // Buffers beyond the 64th are always loaded. Stores that can not read selectively return the full object.
+  default @Nullable T get(long key, long bufferMask) throws IOException {
+    return get(key);
+  }
+
+  //<editor-fold desc="Raw access API. If supported the stored buffers are leased out without being unpacked, the lease must be closed once done">
+  default boolean supportRawAccess() {
+    return false;
+  }
+
+  default @Nullable RawRecord getRaw(long key) throws IOException {
+    return null;
+  }
+  //</editor-fold>
+
+  //<editor-fold desc="Asynchronous read API. If supported the future is completed from the I/O completion handler, so many reads can be in flight at once">
+  default boolean supportAsyncReads() {
+    return false;
+  }
+
+  default @NotNull CompletableFuture<T> getAsync(long key) throws IOException {
+    return CompletableFuture.completedFuture(get(key));
+  }
+  //</editor-fold>
+
+  //<editor-fold desc="Batch API. If atomic batches are supported the operations are applied all or nothing with one commit record and one flush">
+  default @NotNull Batch<T> batch() {
+    return new Batch<>(this);
+  }
+
+  // Atomic only within one store, there is no commit record spanning several stores
+  default boolean supportAtomicBatches() {
+    return false;
+  }
+
+  default void apply(@NotNull Batch<T> batch) throws IOException {
+    for (Batch.Operation<T> operation : batch.getOperations()) {
+      if (operation.isAdd()) {
+        add(operation.getObject());
+      } else {
+        remove(operation.getKey());
+      }
+    }
+  }
+  //</editor-fold>
+
   @NotNull List<Long> getKeys();
 
   boolean contains(long key);
@@ -99,5 +149,10 @@ public interface Storage<T extends Storable> extends Closeable {
 
 
   void setExecutor(TaskScheduler executor);
+
+  // Stores that run each key on a scheduler of their own return it here, null runs the key on the store's executor
+  default @Nullable TaskScheduler getExecutor(long key) {
+    return null;
+  }
   //endregion
 }
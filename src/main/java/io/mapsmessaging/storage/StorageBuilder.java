@@ -23,6 +23,7 @@ import io.mapsmessaging.logging.Logger;
 import io.mapsmessaging.logging.LoggerFactory;
 import io.mapsmessaging.storage.impl.debug.DebugStorage;
 import io.mapsmessaging.storage.impl.file.config.PartitionStorageConfig;
+import io.mapsmessaging.storage.impl.journal.JournalStorageConfig;
 import io.mapsmessaging.storage.impl.memory.MemoryStorageConfig;
 import io.mapsmessaging.storage.impl.tier.memory.MemoryTierConfig;
 import io.mapsmessaging.storage.logging.StorageLogMessages;
@@ -85,6 +86,9 @@ public class StorageBuilder<T extends Storable> {
     else if(type.equalsIgnoreCase("memorytier")){
       config = new MemoryTierConfig();
     }
+    else if(type.equalsIgnoreCase("journal")){
+      config = new JournalStorageConfig();
+    }
     else{
       throw new IllegalArgumentException("Unknown storage type: " + type);
     }
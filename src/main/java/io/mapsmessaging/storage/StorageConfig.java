@@ -23,6 +23,7 @@ package io.mapsmessaging.storage;
 import com.fasterxml.jackson.annotation.JsonSubTypes;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
 import io.mapsmessaging.storage.impl.file.config.PartitionStorageConfig;
+import io.mapsmessaging.storage.impl.journal.JournalStorageConfig;
 import io.mapsmessaging.storage.impl.memory.MemoryStorageConfig;
 import io.mapsmessaging.storage.impl.tier.memory.MemoryTierConfig;
 import io.swagger.v3.oas.annotations.media.DiscriminatorMapping;
@@ -41,16 +42,18 @@ import java.util.Map;
 @JsonSubTypes({
     @JsonSubTypes.Type(value = MemoryStorageConfig.class, name = "memory"),
     @JsonSubTypes.Type(value = PartitionStorageConfig.class, name = "partition"),
-    @JsonSubTypes.Type(value = MemoryTierConfig.class, name = "tieredMemory")
+    @JsonSubTypes.Type(value = MemoryTierConfig.class, name = "tieredMemory"),
+    @JsonSubTypes.Type(value = JournalStorageConfig.class, name = "journal")
 })
 @Schema(
     description = "Base class for all storage configurations",
     discriminatorProperty = "type",
-    oneOf = { MemoryStorageConfig.class, PartitionStorageConfig.class, MemoryTierConfig.class },
+    oneOf = { MemoryStorageConfig.class, PartitionStorageConfig.class, MemoryTierConfig.class, JournalStorageConfig.class },
     discriminatorMapping = {
         @DiscriminatorMapping(value = "memory", schema = MemoryStorageConfig.class),
         @DiscriminatorMapping(value = "partition", schema = PartitionStorageConfig.class),
-        @DiscriminatorMapping(value = "tieredMemory", schema = MemoryTierConfig.class)
+        @DiscriminatorMapping(value = "tieredMemory", schema = MemoryTierConfig.class),
+        @DiscriminatorMapping(value = "journal", schema = JournalStorageConfig.class)
     }
 )
 
@@ -19,7 +19,9 @@
 
 package io.mapsmessaging.storage.impl.cache;
 
+import io.mapsmessaging.storage.Batch;
 import io.mapsmessaging.storage.LayeredStorage;
+import io.mapsmessaging.storage.RawRecord;
 import io.mapsmessaging.storage.Statistics;
 import io.mapsmessaging.storage.Storable;
 import io.mapsmessaging.storage.Storage;
@@ -32,6 +34,7 @@ import org.jetbrains.annotations.Nullable;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.LongAdder;
 
 public class CacheLayer<T extends Storable> implements LayeredStorage<T> {
@@ -101,6 +104,27 @@ public class CacheLayer<T extends Storable> implements LayeredStorage<T> {
     return baseStorage.remove(key);
   }
 
+  @Override
+  public boolean supportAtomicBatches() {
+    return baseStorage.supportAtomicBatches();
+  }
+
+  @Override
+  public void apply(@NotNull Batch<T> batch) throws IOException {
+    // Evict first so a failed batch can not leave stale entries behind, then cache the result once it has been applied
+    for (Batch.Operation<T> operation : batch.getOperations()) {
+      cache.cacheRemove(operation.getKey());
+    }
+    baseStorage.apply(batch);
+    for (Batch.Operation<T> operation : batch.getOperations()) {
+      if (operation.isAdd()) {
+        cache.cachePut(operation.getObject());
+      } else {
+        cache.cacheRemove(operation.getKey());
+      }
+    }
+  }
+
   @Override
   public long size() throws IOException {
     return baseStorage.size();
@@ -160,6 +184,53 @@ public class CacheLayer<T extends Storable> implements LayeredStorage<T> {
     return obj;
   }
 
+  // A partially loaded object is never cached, but a cached one is complete and so satisfies any mask
+  @Override
+  public @Nullable T get(long key, long bufferMask) throws IOException {
+    if (bufferMask == ALL_BUFFERS) {
+      return get(key);
+    }
+    T obj = cache.cacheGet(key);
+    if (obj != null) {
+      baseStorage.updateLastAccess();
+      cacheHit.increment();
+      return obj;
+    }
+    return baseStorage.get(key, bufferMask);
+  }
+
+  @Override
+  public boolean supportAsyncReads() {
+    return baseStorage.supportAsyncReads();
+  }
+
+  @Override
+  public @NotNull CompletableFuture<T> getAsync(long key) throws IOException {
+    T obj = cache.cacheGet(key);
+    if (obj != null) {
+      baseStorage.updateLastAccess();
+      cacheHit.increment();
+      return CompletableFuture.completedFuture(obj);
+    }
+    cacheMiss.increment();
+    return baseStorage.getAsync(key).thenApply(loaded -> {
+      if (loaded != null) {
+        cache.cachePut(loaded);
+      }
+      return loaded;
+    });
+  }
+
+  @Override
+  public boolean supportRawAccess() {
+    return baseStorage.supportRawAccess();
+  }
+
+  @Override
+  public @Nullable RawRecord getRaw(long key) throws IOException {
+    return baseStorage.getRaw(key);
+  }
+
   @Override
   public @NotNull List<Long> getKeys() {
     return baseStorage.getKeys();
@@ -32,6 +32,7 @@ import org.jetbrains.annotations.Nullable;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static io.mapsmessaging.storage.logging.StorageLogMessages.DEBUG_LOGGING;
@@ -255,6 +256,80 @@ public class DebugStorage<T extends Storable> implements Storage<T>, ExpiredMoni
     }
   }
 
+  @Override
+  public @Nullable T get(long key, long bufferMask) throws IOException {
+    try {
+      enterFunction("get");
+      logger.log(DEBUG_LOGGING, "Get key from " + physicalStorage.getName() + ": " + key + " mask: " + Long.toHexString(bufferMask));
+      return physicalStorage.get(key, bufferMask);
+    } finally {
+      exitFunction();
+    }
+  }
+
+  @Override
+  public boolean supportAsyncReads() {
+    try {
+      enterFunction("supportAsyncReads");
+      return physicalStorage.supportAsyncReads();
+    } finally {
+      exitFunction();
+    }
+  }
+
+  @Override
+  public @NotNull CompletableFuture<T> getAsync(long key) throws IOException {
+    try {
+      enterFunction("getAsync");
+      logger.log(DEBUG_LOGGING, "Get async key from " + physicalStorage.getName() + ": " + key);
+      return physicalStorage.getAsync(key);
+    } finally {
+      exitFunction();
+    }
+  }
+
+  @Override
+  public boolean supportAtomicBatches() {
+    try {
+      enterFunction("supportAtomicBatches");
+      return physicalStorage.supportAtomicBatches();
+    } finally {
+      exitFunction();
+    }
+  }
+
+  @Override
+  public void apply(@NotNull Batch<T> batch) throws IOException {
+    try {
+      enterFunction("apply");
+      logger.log(DEBUG_LOGGING, "Apply batch to " + physicalStorage.getName() + ": " + batch.size() + " operations");
+      physicalStorage.apply(batch);
+    } finally {
+      exitFunction();
+    }
+  }
+
+  @Override
+  public boolean supportRawAccess() {
+    try {
+      enterFunction("supportRawAccess");
+      return physicalStorage.supportRawAccess();
+    } finally {
+      exitFunction();
+    }
+  }
+
+  @Override
+  public @Nullable RawRecord getRaw(long key) throws IOException {
+    try {
+      enterFunction("getRaw");
+      logger.log(DEBUG_LOGGING, "Get raw key from " + physicalStorage.getName() + ": " + key);
+      return physicalStorage.getRaw(key);
+    } finally {
+      exitFunction();
+    }
+  }
+
   @Override
   public @NotNull List<Long> getKeys() {
     try {
@@ -0,0 +1,153 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl.file;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Chooses where partition index and data files are placed when a store is striped across several directories, such as
+ * separate mount points, and finds them again on reload. Each configured root holds a directory with the same relative
+ * path as the store, so several stores can share the roots. With no roots configured everything stays in the store
+ * directory.
+ */
+public class PartitionDirectories {
+
+  public static final String LEAST_USED = "leastUsed";
+
+  private final File storeDirectory;
+  private final List<File> indexRoots;
+  private final List<File> dataRoots;
+  private final boolean leastUsed;
+  private int nextIndex;
+  private int nextData;
+
+  public PartitionDirectories(String storeDirectory, @Nullable String indexDirectories, @Nullable String dataDirectories, @Nullable String placement) {
+    this.storeDirectory = new File(storeDirectory);
+    indexRoots = resolve(storeDirectory, indexDirectories);
+    dataRoots = resolve(storeDirectory, dataDirectories);
+    leastUsed = LEAST_USED.equalsIgnoreCase(placement);
+    nextIndex = 0;
+    nextData = 0;
+  }
+
+  private static List<File> resolve(String storeDirectory, @Nullable String roots) {
+    List<File> resolved = new ArrayList<>();
+    if (roots != null) {
+      for (String root : roots.split(",")) {
+        if (!root.isBlank()) {
+          resolved.add(new File(root.trim(), storeDirectory));
+        }
+      }
+    }
+    if (resolved.isEmpty()) {
+      resolved.add(new File(storeDirectory));
+    }
+    return Collections.unmodifiableList(resolved);
+  }
+
+  public List<File> getIndexRoots() {
+    return indexRoots;
+  }
+
+  public List<File> getDataRoots() {
+    return dataRoots;
+  }
+
+  public boolean exists() {
+    for (File root : indexRoots) {
+      if (root.exists()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public void create() throws IOException {
+    for (File root : indexRoots) {
+      Files.createDirectories(root.toPath());
+    }
+    for (File root : dataRoots) {
+      Files.createDirectories(root.toPath());
+    }
+  }
+
+  public synchronized File placeIndex() {
+    int selected = select(indexRoots, nextIndex);
+    nextIndex = selected + 1;
+    return indexRoots.get(selected);
+  }
+
+  public synchronized File placeData() {
+    int selected = select(dataRoots, nextData);
+    nextData = selected + 1;
+    return dataRoots.get(selected);
+  }
+
+  // Returns the directory already holding a file starting with the prefix, so a reloaded partition finds its data.
+  // The store directory is searched last, it holds the data of partitions created before any roots were configured
+  public @Nullable File locateData(String prefix) {
+    List<File> candidates = new ArrayList<>(dataRoots);
+    candidates.add(storeDirectory);
+    for (File root : candidates) {
+      String[] children = root.list((dir, name) -> name.startsWith(prefix));
+      if (children != null && children.length > 0) {
+        return root;
+      }
+    }
+    return null;
+  }
+
+  public void deleteEmpty() throws IOException {
+    List<File> all = new ArrayList<>(indexRoots);
+    all.addAll(dataRoots);
+    for (File root : all) {
+      String[] children = root.list();
+      if (children != null && children.length == 0) {
+        Files.deleteIfExists(root.toPath());
+      }
+    }
+  }
+
+  private int select(List<File> roots, int next) {
+    if (roots.size() == 1) {
+      return 0;
+    }
+    if (!leastUsed) {
+      return next % roots.size();
+    }
+    int selected = 0;
+    long mostFree = -1;
+    for (int x = 0; x < roots.size(); x++) {
+      long free = roots.get(x).getUsableSpace();
+      if (free > mostFree) {
+        mostFree = free;
+        selected = x;
+      }
+    }
+    return selected;
+  }
+}
@@ -39,17 +39,26 @@ import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
 
 @SuppressWarnings("javaarchitecture:S7091") // yes it will trigger the ArchiveMonitorTask
 public class PartitionStorage<T extends Storable> implements Storage<T>, ExpiredMonitor, TierMigrationMonitor {
 
   private static final String PARTITION_FILE_NAME = "partition_";
+  private static final String BATCH_LOG_NAME = "batch_log";
+  private static final int BATCH_HEADER_SIZE = 12; // [int length][int crc][int count]
+  private static final byte BATCH_ADD = 1;
+  private static final byte BATCH_REMOVE = 2;
 
   private final ExpiredStorableHandler expiredHandler;
 
@@ -59,11 +68,12 @@ public class PartitionStorage<T extends Storable> implements Storage<T>, Expired
   private final int itemCount;
   private final ExpireStorableTaskManager<T> expiredMonitor;
   private final PartitionStorageConfig config;
+  private final PartitionDirectories directories;
 
   private final List<IndexStorage<T>> partitions;
-  private final String fileName;
   private final String rootDirectory;
   private final long archiveIdleTime;
+  private final long mappedReadIdleTime;
 
   private final LongAdder reads;
   private final LongAdder writes;
@@ -75,6 +85,7 @@ public class PartitionStorage<T extends Storable> implements Storage<T>, Expired
   private final LongAdder byteWrites;
   private final LongAdder byteReads;
 
+  private FileChannel batchLog;
   private boolean shutdown;
   private boolean paused;
   private long partitionCounter;
@@ -83,23 +94,29 @@ public class PartitionStorage<T extends Storable> implements Storage<T>, Expired
 
   @SuppressWarnings("javaarchitecture:S7091") // yes it will trigger the archive monitor task
   public PartitionStorage(PartitionStorageConfig config, ExpiredStorableHandler expiredHandler) throws IOException{
+    config.validate();
     this.config = config;
     this.expiredHandler = Objects.requireNonNullElseGet(expiredHandler, () -> new BaseExpiredHandler<>(this));
     this.itemCount = config.getItemCount();
-    this.fileName = config.getFileName() + File.separator + PARTITION_FILE_NAME;
 
     partitions = new ArrayList<>();
     taskScheduler = config.getTaskQueue();
     rootDirectory = config.getFileName();
     archiveIdleTime = config.getDeferredConfig().getIdleTime();
+    mappedReadIdleTime = config.getMappedReadIdleTime();
     partitionCounter = 0;
     shutdown = false;
-    File location = new File(config.getFileName());
+    directories = new PartitionDirectories(config.getFileName(), config.getIndexDirectories(), config.getDataDirectories(), config.getDirectoryPlacement());
     expiredMonitor = new ExpireStorableTaskManager<>(this, taskScheduler, config.getExpiredEventPoll());
-    if (location.exists()) {
-      reload(location);
+    if (directories.exists()) {
+      directories.create();
+      for (File location : directories.getIndexRoots()) {
+        reload(location);
+      }
+      partitions.sort(Comparator.comparingLong(IndexStorage::getStart));
+      scanForEmpty();
     } else {
-      location.mkdir();
+      directories.create();
       locateOrCreatePartition(0); // Force the creation of the key file
     }
     reads = new LongAdder();
@@ -111,6 +128,7 @@ public class PartitionStorage<T extends Storable> implements Storage<T>, Expired
     byteReads = new LongAdder();
     lastKeyStored = -2;
     lastAccess = System.currentTimeMillis();
+    redoBatchLog();
   }
 
   @Override
@@ -136,6 +154,7 @@ public class PartitionStorage<T extends Storable> implements Storage<T>, Expired
       resume(); // need to resume it to set state successfully
     }
     expiredMonitor.close();
+    closeBatchLog();
     for (IndexStorage<T> partition : partitions) {
       partition.close();
     }
@@ -150,6 +169,8 @@ public class PartitionStorage<T extends Storable> implements Storage<T>, Expired
     if (paused) {
       resume();
     }
+    closeBatchLog();
+    Files.deleteIfExists(batchLogFile().toPath());
     for (IndexStorage<T> partition : partitions) {
       partition.delete();
     }
@@ -166,6 +187,7 @@ public class PartitionStorage<T extends Storable> implements Storage<T>, Expired
     if (children == null || children.length == 0) {
       Files.deleteIfExists(file.toPath());
     }
+    directories.deleteEmpty();
   }
 
   @Override
@@ -177,6 +199,7 @@ public class PartitionStorage<T extends Storable> implements Storage<T>, Expired
   public void pause() throws IOException {
     if (!paused) {
       paused = true;
+      closeBatchLog();
       for (IndexStorage<T> partition : partitions) {
         partition.pause();
       }
@@ -206,13 +229,17 @@ public class PartitionStorage<T extends Storable> implements Storage<T>, Expired
 
   @Override
   public void add(@NotNull T object) throws IOException {
+    add(object, null);
+  }
+
+  private void add(@NotNull T object, @Nullable ByteBuffer[] packed) throws IOException {
     if (paused) {
       resume();
     }
     lastAccess = System.currentTimeMillis();
     long time = System.currentTimeMillis();
     IndexStorage<T> partition = locateOrCreatePartition(object.getKey());
-    IndexRecord indexRecord = partition.add(object);
+    IndexRecord indexRecord = partition.add(object, packed);
     if (partition.isFull() && object.getKey() < partition.getEnd()) {
       partition.setEnd(object.getKey());
     }
@@ -252,6 +279,11 @@ public class PartitionStorage<T extends Storable> implements Storage<T>, Expired
 
   @Override
   public @Nullable T get(long key) throws IOException {
+    return get(key, ALL_BUFFERS);
+  }
+
+  @Override
+  public @Nullable T get(long key, long bufferMask) throws IOException {
     if (paused) {
       resume();
     }
@@ -261,7 +293,7 @@ public class PartitionStorage<T extends Storable> implements Storage<T>, Expired
     try {
       IndexStorage<T> partition = locatePartition(key);
       if (partition != null) {
-        IndexGet<T> retrieved = partition.get(key);
+        IndexGet<T> retrieved = partition.get(key, bufferMask);
         if (retrieved != null) {
           reads.increment();
           byteReads.add(retrieved.getIndexRecord().getLength());
@@ -274,6 +306,354 @@ public class PartitionStorage<T extends Storable> implements Storage<T>, Expired
     }
   }
 
+  @Override
+  public boolean supportAsyncReads() {
+    return config.isAsyncIO();
+  }
+
+  @Override
+  public @NotNull CompletableFuture<T> getAsync(long key) throws IOException {
+    if (paused) {
+      resume();
+    }
+    lastAccess = System.currentTimeMillis();
+
+    long time = System.currentTimeMillis();
+    IndexStorage<T> partition = locatePartition(key);
+    CompletableFuture<IndexGet<T>> pending = partition != null ? partition.getAsync(key) : null;
+    if (pending == null) {
+      readTimes.add((System.currentTimeMillis() - time));
+      return CompletableFuture.completedFuture(null);
+    }
+    return pending.thenApply(retrieved -> {
+      reads.increment();
+      byteReads.add(retrieved.getIndexRecord().getLength());
+      readTimes.add((System.currentTimeMillis() - time));
+      return retrieved.getObject();
+    });
+  }
+
+  @Override
+  public boolean supportRawAccess() {
+    return true;
+  }
+
+  @Override
+  public @Nullable RawRecord getRaw(long key) throws IOException {
+    if (paused) {
+      resume();
+    }
+    lastAccess = System.currentTimeMillis();
+
+    long time = System.currentTimeMillis();
+    try {
+      IndexStorage<T> partition = locatePartition(key);
+      if (partition != null) {
+        RawRecord retrieved = partition.getRaw(key);
+        if (retrieved != null) {
+          reads.increment();
+          byteReads.add(retrieved.getLength());
+          return retrieved;
+        }
+      }
+      return null;
+    } finally {
+      readTimes.add((System.currentTimeMillis() - time));
+    }
+  }
+
+  @Override
+  public boolean supportAtomicBatches() {
+    return true;
+  }
+
+  // The whole batch is written to the batch log as a single commit record and forced once, then applied and each
+  // partition it touched is forced once. If an operation fails the ones already applied are undone and the log is
+  // cleared, and if the process stops part way after the commit record is on disk the batch is completed when the
+  // store is next opened.
+  @Override
+  public void apply(@NotNull Batch<T> batch) throws IOException {
+    if (batch.isEmpty()) {
+      return;
+    }
+    if (paused) {
+      resume();
+    }
+    validateBatch(batch);
+    StorableFactory<T> factory = config.getStorableFactory();
+    List<Batch.Operation<T>> operations = batch.getOperations();
+    ByteBuffer[][] packed = new ByteBuffer[operations.size()][];
+    for (int x = 0; x < operations.size(); x++) {
+      Batch.Operation<T> operation = operations.get(x);
+      if (operation.isAdd()) {
+        packed[x] = factory.pack(operation.getObject());
+      }
+    }
+    writeBatchLog(operations, packed);
+
+    List<UndoRecord> undo = new ArrayList<>();
+    Set<IndexStorage<T>> touched = new LinkedHashSet<>();
+    try {
+      for (int x = 0; x < operations.size(); x++) {
+        Batch.Operation<T> operation = operations.get(x);
+        long key = operation.getKey();
+        if (operation.isAdd()) {
+          undo.add(new UndoRecord(key, null)); // recorded first, the add may fail after part of it is written
+          add(operation.getObject(), packed[x]);
+          touched.add(locatePartition(key));
+        } else {
+          IndexStorage<T> partition = locatePartition(key);
+          if (partition != null) {
+            ByteBuffer[] previous = copyRaw(partition, key);
+            if (previous != null) {
+              undo.add(new UndoRecord(key, previous));
+            }
+            if (remove(key)) {
+              touched.add(partition);
+            }
+          }
+        }
+      }
+      forcePartitions(touched);
+    } catch (IOException | RuntimeException e) {
+      rollbackBatch(undo, touched, e);
+      throw e;
+    }
+    clearBatchLog();
+  }
+
+  // Undoes the applied operations newest first and clears the log. If the undo fails as well the log is left in place
+  // and the batch is completed when the store is next opened.
+  private void rollbackBatch(List<UndoRecord> undo, Set<IndexStorage<T>> touched, Exception failure) {
+    try {
+      for (int x = undo.size() - 1; x >= 0; x--) {
+        undoOperation(undo.get(x), touched);
+      }
+      forcePartitions(touched);
+      clearBatchLog();
+    } catch (IOException | RuntimeException e) {
+      failure.addSuppressed(e);
+    }
+  }
+
+  // A removed record is only unpacked if the batch is rolled back
+  private void undoOperation(UndoRecord record, Set<IndexStorage<T>> touched) throws IOException {
+    long key = record.key;
+    if (record.packed == null) {
+      IndexStorage<T> partition = locatePartition(key);
+      if (remove(key)) {
+        touched.add(partition);
+      }
+    } else if (!contains(key)) {
+      ByteBuffer[] views = new ByteBuffer[record.packed.length];
+      for (int x = 0; x < views.length; x++) {
+        views[x] = record.packed[x].duplicate();
+      }
+      StorableFactory<T> factory = config.getStorableFactory();
+      add(factory.unpack(views), record.packed);
+      touched.add(locatePartition(key));
+    }
+  }
+
+  // The raw buffers may be slices of a mapped file that the remove releases, so they are copied to the heap. Data
+  // files without raw access fall back to reading and packing the object.
+  private @Nullable ByteBuffer[] copyRaw(IndexStorage<T> partition, long key) throws IOException {
+    try (RawRecord raw = partition.getRaw(key)) {
+      if (raw == null) {
+        T previous = partition.contains(key) ? get(key) : null;
+        return previous != null ? config.getStorableFactory().pack(previous) : null;
+      }
+      ByteBuffer[] buffers = raw.getBuffers();
+      ByteBuffer[] copy = new ByteBuffer[buffers.length];
+      for (int x = 0; x < buffers.length; x++) {
+        copy[x] = ByteBuffer.allocate(buffers[x].remaining());
+        copy[x].put(buffers[x]).flip();
+      }
+      return copy;
+    }
+  }
+
+  // Adds the object if the key is absent and removes the key if present, so it can be repeated safely
+  private void replayOperation(Batch.Operation<T> operation, Set<IndexStorage<T>> touched) throws IOException {
+    long key = operation.getKey();
+    if (operation.isAdd()) {
+      if (!contains(key)) {
+        add(operation.getObject());
+        touched.add(locatePartition(key));
+      }
+    } else {
+      IndexStorage<T> partition = locatePartition(key);
+      if (remove(key)) {
+        touched.add(partition);
+      }
+    }
+  }
+
+  private void forcePartitions(Set<IndexStorage<T>> touched) throws IOException {
+    for (IndexStorage<T> partition : touched) {
+      if (partition != null && partitions.contains(partition)) {
+        partition.force();
+      }
+    }
+  }
+
+  // Rejects the batch before anything is written if an add would collide with an existing key
+  private void validateBatch(@NotNull Batch<T> batch) throws IOException {
+    Set<Long> present = new HashSet<>();
+    Set<Long> absent = new HashSet<>();
+    for (Batch.Operation<T> operation : batch.getOperations()) {
+      long key = operation.getKey();
+      boolean exists = present.contains(key) || (!absent.contains(key) && contains(key));
+      if (operation.isAdd()) {
+        if (exists) {
+          throw new IOException("Key already exists: " + key);
+        }
+        absent.remove(key);
+        present.add(key);
+      } else {
+        present.remove(key);
+        absent.add(key);
+      }
+    }
+  }
+
+  private void writeBatchLog(List<Batch.Operation<T>> operations, ByteBuffer[][] packed) throws IOException {
+    List<ByteBuffer> buffers = new ArrayList<>();
+    ByteBuffer header = ByteBuffer.allocate(BATCH_HEADER_SIZE);
+    buffers.add(header);
+    CRC32 crc = new CRC32();
+    ByteBuffer count = ByteBuffer.allocate(4).putInt(operations.size()).flip();
+    crc.update(count.duplicate());
+    int length = 4;
+    for (int x = 0; x < operations.size(); x++) {
+      Batch.Operation<T> operation = operations.get(x);
+      ByteBuffer meta;
+      if (operation.isAdd()) {
+        meta = ByteBuffer.allocate(13 + packed[x].length * 4);
+        meta.put(BATCH_ADD).putLong(operation.getKey()).putInt(packed[x].length);
+        for (ByteBuffer buffer : packed[x]) {
+          meta.putInt(buffer.remaining());
+        }
+      } else {
+        meta = ByteBuffer.allocate(9);
+        meta.put(BATCH_REMOVE).putLong(operation.getKey());
+      }
+      meta.flip();
+      crc.update(meta.duplicate());
+      length += meta.remaining();
+      buffers.add(meta);
+      if (packed[x] != null) {
+        for (ByteBuffer buffer : packed[x]) {
+          ByteBuffer view = buffer.duplicate();
+          crc.update(view.duplicate());
+          length += view.remaining();
+          buffers.add(view);
+        }
+      }
+    }
+    header.putInt(length).putInt((int) crc.getValue()).putInt(operations.size()).flip();
+
+    FileChannel channel = openBatchLog();
+    channel.position(0);
+    ByteBuffer[] gather = buffers.toArray(new ByteBuffer[0]);
+    long remaining = BATCH_HEADER_SIZE - 4L + length;
+    while (remaining > 0) {
+      remaining -= channel.write(gather);
+    }
+    channel.force(false);
+  }
+
+  // Once every partition is on disk the commit record is no longer needed, so it is zeroed to stop a replay
+  private void clearBatchLog() throws IOException {
+    FileChannel channel = openBatchLog();
+    channel.write(ByteBuffer.allocate(4), 0);
+    channel.force(false);
+  }
+
+  private void redoBatchLog() throws IOException {
+    File file = batchLogFile();
+    if (!file.exists()) {
+      return;
+    }
+    List<Batch.Operation<T>> operations = readBatchLog(file);
+    if (!operations.isEmpty()) {
+      Set<IndexStorage<T>> touched = new LinkedHashSet<>();
+      for (Batch.Operation<T> operation : operations) {
+        replayOperation(operation, touched);
+      }
+      forcePartitions(touched);
+    }
+    clearBatchLog();
+  }
+
+  // Returns the logged operations, or an empty list if the log holds no complete commit record
+  private List<Batch.Operation<T>> readBatchLog(File file) throws IOException {
+    List<Batch.Operation<T>> operations = new ArrayList<>();
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      ByteBuffer header = ByteBuffer.allocate(8);
+      if (channel.read(header, 0) < 8) {
+        return operations;
+      }
+      header.flip();
+      int length = header.getInt();
+      int expected = header.getInt();
+      if (length <= 0 || channel.size() < 8L + length) {
+        return operations;
+      }
+      ByteBuffer body = ByteBuffer.allocate(length);
+      while (body.hasRemaining() && channel.read(body, 8L + body.position()) > 0) {
+        // read the whole record
+      }
+      body.flip();
+      CRC32 crc = new CRC32();
+      crc.update(body.duplicate());
+      if ((int) crc.getValue() != expected) {
+        return operations;
+      }
+      Batch<T> batch = new Batch<>(this);
+      StorableFactory<T> factory = config.getStorableFactory();
+      int count = body.getInt();
+      for (int x = 0; x < count; x++) {
+        byte type = body.get();
+        long key = body.getLong();
+        if (type == BATCH_ADD) {
+          ByteBuffer[] buffers = new ByteBuffer[body.getInt()];
+          int[] lengths = new int[buffers.length];
+          for (int y = 0; y < lengths.length; y++) {
+            lengths[y] = body.getInt();
+          }
+          for (int y = 0; y < buffers.length; y++) {
+            buffers[y] = body.slice().limit(lengths[y]);
+            body.position(body.position() + lengths[y]);
+          }
+          batch.add(factory.unpack(buffers));
+        } else {
+          batch.remove(key);
+        }
+      }
+      operations.addAll(batch.getOperations());
+    }
+    return operations;
+  }
+
+  private FileChannel openBatchLog() throws IOException {
+    if (batchLog == null) {
+      batchLog = FileChannel.open(batchLogFile().toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+    return batchLog;
+  }
+
+  private void closeBatchLog() throws IOException {
+    if (batchLog != null) {
+      batchLog.close();
+      batchLog = null;
+    }
+  }
+
+  private File batchLogFile() {
+    return new File(rootDirectory, BATCH_LOG_NAME);
+  }
+
   @Override
   public @NotNull List<Long> getKeys() {
     List<Long> keyList = new NaturalOrderedLongList();
@@ -285,12 +665,8 @@ public class PartitionStorage<T extends Storable> implements Storage<T>, Expired
 
   @Override
   public boolean contains(long key) {
-    for (IndexStorage<T> partition : partitions) {
-      if(partition.contains(key)){
-        return true;
-      }
-    }
-    return false;
+    IndexStorage<T> partition = locatePartition(key);
+    return partition != null && partition.contains(key);
   }
 
   @Override
@@ -404,6 +780,15 @@ public class PartitionStorage<T extends Storable> implements Storage<T>, Expired
   }
 
   public void scanForArchiveMigration() throws IOException {
+    if (mappedReadIdleTime > 0) {
+      long idleThreshold = System.currentTimeMillis() - mappedReadIdleTime;
+      for (int x = 0; x < partitions.size() - 1; x++) {
+        IndexStorage<T> partition = partitions.get(x);
+        if (partition.getLastAccess() < idleThreshold) {
+          partition.releaseMappings();
+        }
+      }
+    }
     if(archiveIdleTime > 0) {
       long archiveThreshold = System.currentTimeMillis() - archiveIdleTime;
       for(int x=0;x<partitions.size() -1; x++){
@@ -486,7 +871,7 @@ public class PartitionStorage<T extends Storable> implements Storage<T>, Expired
   private @NotNull IndexStorage<T> locateOrCreatePartition(long key) throws IOException {
     IndexStorage<T> partition = scanForPartition(key);
     if (partition == null) {
-      String partitionName = fileName + partitionCounter++;
+      String partitionName = PARTITION_FILE_NAME + partitionCounter++;
       long start = 0;
       if (!partitions.isEmpty()) {
         start = partitions.get(partitions.size() - 1).getEnd() + 1;
@@ -494,9 +879,15 @@ public class PartitionStorage<T extends Storable> implements Storage<T>, Expired
       if (key < start || key >= (start + itemCount)) {
         start = key;
       }
-      partition = new IndexStorage<>(config, partitionName, start, taskScheduler);
+      String indexName = new File(directories.placeIndex(), partitionName).getPath();
+      String dataName = new File(directories.placeData(), partitionName + "_index").getPath();
+      partition = new IndexStorage<>(config, indexName, dataName, start, taskScheduler);
       partitions.add(partition);
       partitions.sort(Comparator.comparingLong(IndexStorage::getStart));
+      int next = partitions.indexOf(partition) + 1;
+      if (next < partitions.size() && partition.getEnd() >= partitions.get(next).getStart()) {
+        partition.setEnd(partitions.get(next).getStart() - 1); // never overlap the partition that follows
+      }
     }
     return partition;
   }
@@ -532,7 +923,7 @@ public class PartitionStorage<T extends Storable> implements Storage<T>, Expired
         AtomicReference<IOException> exception = new AtomicReference<>();
         Arrays.stream(childFiles).parallel().forEach(test -> {
           try {
-            hasExpired.set(loadStore(test) || hasExpired.get());
+            hasExpired.set(loadStore(location, test) || hasExpired.get());
           } catch (IOException e) {
             exception.set(e);
           }
@@ -545,8 +936,6 @@ public class PartitionStorage<T extends Storable> implements Storage<T>, Expired
         }
       }
     }
-    partitions.sort(Comparator.comparingLong(IndexStorage::getStart));
-    scanForEmpty();
   }
 
   private void submit(FileTask<?> task) throws IOException {
@@ -573,15 +962,21 @@ public class PartitionStorage<T extends Storable> implements Storage<T>, Expired
     }
   }
 
-  private boolean loadStore(String test) throws IOException {
+  private boolean loadStore(File location, String test) throws IOException {
     if (test.startsWith(PARTITION_FILE_NAME) && test.endsWith("index")) {
       String loadName = test.substring(PARTITION_FILE_NAME.length(), test.length() - "_index".length());
-      IndexStorage<T> indexStorage = new IndexStorage<>(config,fileName + loadName,  0, taskScheduler);
+      File dataRoot = directories.locateData(test + "_data");
+      String indexName = new File(location, PARTITION_FILE_NAME + loadName).getPath();
+      if (dataRoot == null) {
+        // The index points into the data file, an empty replacement would only return garbage
+        throw new IOException("Data file " + test + "_data for partition " + indexName + " not found in " + directories.getDataRoots() + " or " + rootDirectory);
+      }
+      IndexStorage<T> indexStorage = new IndexStorage<>(config, indexName, new File(dataRoot, test).getPath(), 0, taskScheduler);
       synchronized (partitions) {
         partitions.add(indexStorage);
         int partNumber = extractPartitionNumber(loadName);
-        if (partNumber > partitionCounter) {
-          partitionCounter = partNumber;
+        if (partNumber >= partitionCounter) {
+          partitionCounter = partNumber + 1L; // next free partition name
         }
       }
       return (indexStorage.hasExpired());
@@ -593,5 +988,14 @@ public class PartitionStorage<T extends Storable> implements Storage<T>, Expired
     return Integer.parseInt(name.trim());
   }
 
-}
+  // The key to remove again, or the packed record to add back
+  private static final class UndoRecord {
+    private final long key;
+    private final @Nullable ByteBuffer[] packed;
 
+    private UndoRecord(long key, @Nullable ByteBuffer[] packed) {
+      this.key = key;
+      this.packed = packed;
+    }
+  }
+}
@@ -22,6 +22,7 @@ package io.mapsmessaging.storage.impl.file;
 import io.mapsmessaging.storage.*;
 import io.mapsmessaging.storage.impl.BaseStorageFactory;
 import io.mapsmessaging.storage.impl.file.config.PartitionStorageConfig;
+import io.mapsmessaging.storage.impl.journal.SharedPayloadStorage;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -58,6 +59,15 @@ public class PartitionStorageFactory<T extends Storable> extends BaseStorageFact
     partitionStorageConfig.setFileName(name);
     partitionStorageConfig.setTaskQueue(taskQueue);
     partitionStorageConfig.setStorableFactory(storableFactory);
+    if (partitionStorageConfig.getShardCount() > 1) {
+      return new ShardedStorage<>(partitionStorageConfig, expiredHandler);
+    }
+    if (partitionStorageConfig.getFixedRecordSize() > 0) {
+      return new SlabStorage<>(partitionStorageConfig, expiredHandler);
+    }
+    if (partitionStorageConfig.getSharedPayloadDirectory() != null) {
+      return new SharedPayloadStorage<>(partitionStorageConfig, expiredHandler);
+    }
     return new PartitionStorage<>(partitionStorageConfig, expiredHandler);
   }
 
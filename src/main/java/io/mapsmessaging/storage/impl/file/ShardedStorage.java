@@ -0,0 +1,437 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl.file;
+
+import io.mapsmessaging.storage.*;
+import io.mapsmessaging.storage.impl.file.config.PartitionStorageConfig;
+import io.mapsmessaging.storage.impl.journal.SharedPayloadStorage;
+import io.mapsmessaging.utilities.collections.NaturalOrderedLongList;
+import io.mapsmessaging.utilities.threads.tasks.PriorityConcurrentTaskScheduler;
+import io.mapsmessaging.utilities.threads.tasks.TaskScheduler;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Spreads the keys of one logical store across ShardCount independent partition stores, each in its own directory with
+ * its own task queue. Keys are routed either by key modulo the shard count or in blocks of ShardRangeSize keys. Once an
+ * executor is set every shard is driven by its own single threaded scheduler, the {@link AsyncStorage} submits key
+ * operations straight to the owning shard's scheduler so writes to different shards run in parallel, while operations
+ * over the whole store fan out to every shard and merge the results.
+ */
+public class ShardedStorage<T extends Storable> implements Storage<T> {
+
+  public static final String RANGE_ROUTING = "range";
+
+  private static final String SHARD_DIRECTORY = "shard_";
+  private static final int FOREGROUND_PRIORITY = 1;
+
+  @Getter
+  private final TaskQueue taskScheduler;
+
+  private final String rootDirectory;
+  private final List<Storage<T>> shards;
+  private final boolean rangeRouting;
+  private final long rangeSize;
+
+  private TaskScheduler[] executors;
+
+  public ShardedStorage(PartitionStorageConfig config, ExpiredStorableHandler expiredHandler) throws IOException {
+    rootDirectory = config.getFileName();
+    taskScheduler = config.getTaskQueue();
+    rangeRouting = RANGE_ROUTING.equalsIgnoreCase(config.getShardRouting());
+    rangeSize = Math.max(1, config.getShardRangeSize());
+    int shardCount = config.getShardCount();
+    String[] existing = new File(rootDirectory).list((dir, name) -> name.startsWith(SHARD_DIRECTORY));
+    if (existing != null && existing.length > 0 && existing.length != shardCount) {
+      throw new IOException("Store " + rootDirectory + " was created with " + existing.length + " shards, configured for " + shardCount);
+    }
+    shards = new ArrayList<>();
+    for (int x = 0; x < shardCount; x++) {
+      PartitionStorageConfig shardConfig = new PartitionStorageConfig(config);
+      shardConfig.setShardCount(1);
+      if (config.getCapacity() > 0) {
+        shardConfig.setCapacity((config.getCapacity() + shardCount - 1) / shardCount);
+      }
+      shardConfig.setFileName(rootDirectory + File.separator + SHARD_DIRECTORY + x);
+      shardConfig.setTaskQueue(new TaskQueue());
+      if (shardConfig.getFixedRecordSize() > 0) {
+        shards.add(new SlabStorage<>(shardConfig, expiredHandler));
+      } else if (shardConfig.getSharedPayloadDirectory() != null) {
+        shards.add(new SharedPayloadStorage<>(shardConfig, expiredHandler));
+      } else {
+        shards.add(new PartitionStorage<>(shardConfig, expiredHandler));
+      }
+    }
+    executors = null;
+  }
+
+  public int getShardCount() {
+    return shards.size();
+  }
+
+  public int shardOf(long key) {
+    long slot = rangeRouting ? Math.floorDiv(key, rangeSize) : key;
+    return (int) Math.floorMod(slot, (long) shards.size());
+  }
+
+  // The scheduler that owns the key's shard, null until an executor has been set
+  @Override
+  public @Nullable TaskScheduler getExecutor(long key) {
+    TaskScheduler[] current = executors;
+    return current != null ? current[shardOf(key)] : null;
+  }
+
+  @Override
+  public String getName() {
+    return rootDirectory;
+  }
+
+  @Override
+  public void shutdown() throws IOException {
+    // Called from outside the shard schedulers, the shards wait here for their own outstanding tasks
+    for (Storage<T> shard : shards) {
+      shard.shutdown();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      fanOut((x, shard) -> {
+        shard.close();
+        return null;
+      });
+    } finally {
+      stopExecutors();
+    }
+  }
+
+  @Override
+  public void delete() throws IOException {
+    try {
+      fanOut((x, shard) -> {
+        shard.delete();
+        return null;
+      });
+    } finally {
+      stopExecutors();
+    }
+    String[] children = new File(rootDirectory).list();
+    if (children != null && children.length == 0) {
+      Files.deleteIfExists(new File(rootDirectory).toPath());
+    }
+  }
+
+  @Override
+  public boolean supportPause() {
+    return true;
+  }
+
+  @Override
+  public void pause() throws IOException {
+    fanOut((x, shard) -> {
+      shard.pause();
+      return null;
+    });
+  }
+
+  @Override
+  public void resume() throws IOException {
+    fanOut((x, shard) -> {
+      shard.resume();
+      return null;
+    });
+  }
+
+  @Override
+  public void add(@NotNull T object) throws IOException {
+    shardFor(object.getKey()).add(object);
+  }
+
+  @Override
+  public boolean remove(long key) throws IOException {
+    return shardFor(key).remove(key);
+  }
+
+  @Override
+  public @Nullable T get(long key) throws IOException {
+    return shardFor(key).get(key);
+  }
+
+  @Override
+  public @Nullable T get(long key, long bufferMask) throws IOException {
+    return shardFor(key).get(key, bufferMask);
+  }
+
+  @Override
+  public boolean supportRawAccess() {
+    return shards.get(0).supportRawAccess();
+  }
+
+  @Override
+  public @Nullable RawRecord getRaw(long key) throws IOException {
+    return shardFor(key).getRaw(key);
+  }
+
+  @Override
+  public boolean supportAsyncReads() {
+    return shards.get(0).supportAsyncReads();
+  }
+
+  @Override
+  public @NotNull CompletableFuture<T> getAsync(long key) throws IOException {
+    return shardFor(key).getAsync(key);
+  }
+
+  @Override
+  public boolean contains(long key) {
+    return shardFor(key).contains(key);
+  }
+
+  @Override
+  public @NotNull List<Long> getKeys() {
+    List<Long> keyList = new NaturalOrderedLongList();
+    try {
+      for (List<Long> keys : fanOut((x, shard) -> shard.getKeys())) {
+        keyList.addAll(keys);
+      }
+    } catch (IOException e) {
+      // the shards do not raise exceptions when listing keys
+    }
+    return keyList;
+  }
+
+  @Override
+  public long size() throws IOException {
+    long size = 0;
+    for (Long shardSize : fanOut((x, shard) -> shard.size())) {
+      size += shardSize;
+    }
+    return size;
+  }
+
+  @Override
+  public long getLastKey() {
+    long lastKey = 0;
+    for (Storage<T> shard : shards) {
+      lastKey = Math.max(lastKey, shard.getLastKey());
+    }
+    return lastKey;
+  }
+
+  @Override
+  public long getLastAccess() {
+    long lastAccess = 0;
+    for (Storage<T> shard : shards) {
+      lastAccess = Math.max(lastAccess, shard.getLastAccess());
+    }
+    return lastAccess;
+  }
+
+  @Override
+  public void updateLastAccess() {
+    for (Storage<T> shard : shards) {
+      shard.updateLastAccess();
+    }
+  }
+
+  @Override
+  public boolean isEmpty() {
+    try {
+      return !fanOut((x, shard) -> shard.isEmpty()).contains(Boolean.FALSE);
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  @Override
+  public @NotNull Collection<Long> keepOnly(@NotNull Collection<Long> listToKeep) throws IOException {
+    List<List<Long>> split = split(listToKeep);
+    List<Long> notFound = new ArrayList<>();
+    for (Collection<Long> missing : fanOut((x, shard) -> shard.keepOnly(split.get(x)))) {
+      notFound.addAll(missing);
+    }
+    return notFound;
+  }
+
+  @Override
+  public int removeAll(@NotNull Collection<Long> listToRemove) throws IOException {
+    List<List<Long>> split = split(listToRemove);
+    int counter = 0;
+    for (Integer removed : fanOut((x, shard) -> split.get(x).isEmpty() ? 0 : shard.removeAll(split.get(x)))) {
+      counter += removed;
+    }
+    return counter;
+  }
+
+  // Each shard applies its share of the batch atomically, there is no commit across shards
+  @Override
+  public boolean supportAtomicBatches() {
+    return false;
+  }
+
+  @Override
+  public void apply(@NotNull Batch<T> batch) throws IOException {
+    List<Batch<T>> split = new ArrayList<>();
+    for (Storage<T> shard : shards) {
+      split.add(shard.batch());
+    }
+    for (Batch.Operation<T> operation : batch.getOperations()) {
+      Batch<T> shardBatch = split.get(shardOf(operation.getKey()));
+      if (operation.isAdd()) {
+        shardBatch.add(operation.getObject());
+      } else {
+        shardBatch.remove(operation.getKey());
+      }
+    }
+    fanOut((x, shard) -> {
+      split.get(x).commit();
+      return null;
+    });
+  }
+
+  @Override
+  public @NotNull Statistics getStatistics() {
+    long reads = 0;
+    long writes = 0;
+    long deletes = 0;
+    long bytesRead = 0;
+    long bytesWritten = 0;
+    long readTime = 0;
+    long writeTime = 0;
+    long totalSize = 0;
+    long emptySpace = 0;
+    int partitionCount = 0;
+    List<Statistics> collected;
+    try {
+      collected = fanOut((x, shard) -> shard.getStatistics());
+    } catch (IOException e) {
+      collected = new ArrayList<>();
+    }
+    for (Statistics statistics : collected) {
+      if (statistics instanceof StorageStatistics) {
+        StorageStatistics shardStatistics = (StorageStatistics) statistics;
+        reads += shardStatistics.getReads();
+        writes += shardStatistics.getWrites();
+        deletes += shardStatistics.getDeletes();
+        bytesRead += shardStatistics.getBytesRead();
+        bytesWritten += shardStatistics.getBytesWritten();
+        readTime += shardStatistics.getReadLatency() * shardStatistics.getReads();
+        writeTime += shardStatistics.getWriteLatency() * shardStatistics.getWrites();
+        totalSize += shardStatistics.getTotalSize();
+        emptySpace += shardStatistics.getTotalEmptySpace();
+        partitionCount += shardStatistics.getPartitionCount();
+      }
+    }
+    return new StorageStatistics(reads, writes, deletes, bytesRead, bytesWritten, readTime, writeTime, totalSize, emptySpace, partitionCount);
+  }
+
+  // The executor passed in is not used, each shard gets a single threaded scheduler of its own so shards run in
+  // parallel, and callers reach them through getExecutor(key)
+  @Override
+  public void setExecutor(TaskScheduler executor) {
+    TaskScheduler[] created = new TaskScheduler[shards.size()];
+    for (int x = 0; x < shards.size(); x++) {
+      created[x] = new PriorityConcurrentTaskScheduler(rootDirectory + "_" + SHARD_DIRECTORY + x, 2);
+      shards.get(x).setExecutor(created[x]);
+    }
+    executors = created;
+  }
+
+  @Override
+  public boolean executeTasks() throws Exception {
+    boolean hasTasks = false;
+    for (Storage<T> shard : shards) {
+      hasTasks = shard.executeTasks() || hasTasks;
+    }
+    return hasTasks;
+  }
+
+  private Storage<T> shardFor(long key) {
+    return shards.get(shardOf(key));
+  }
+
+  private List<List<Long>> split(Collection<Long> keys) {
+    List<List<Long>> split = new ArrayList<>();
+    for (int x = 0; x < shards.size(); x++) {
+      split.add(new ArrayList<>());
+    }
+    for (Long key : keys) {
+      split.get(shardOf(key)).add(key);
+    }
+    return split;
+  }
+
+  // Runs the call on each shard's own scheduler, so it is ordered after the shard's queued work, and waits for them all
+  private <V> List<V> fanOut(ShardCall<T, V> call) throws IOException {
+    List<V> results = new ArrayList<>();
+    TaskScheduler[] current = executors;
+    if (current == null) {
+      for (int x = 0; x < shards.size(); x++) {
+        results.add(call.apply(x, shards.get(x)));
+      }
+      return results;
+    }
+    List<Future<V>> futures = new ArrayList<>();
+    for (int x = 0; x < shards.size(); x++) {
+      int index = x;
+      futures.add(current[x].submit(() -> call.apply(index, shards.get(index)), FOREGROUND_PRIORITY));
+    }
+    IOException raised = null;
+    for (Future<V> future : futures) {
+      try {
+        results.add(future.get());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        raised = new IOException(e);
+      } catch (ExecutionException e) {
+        raised = e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+      }
+    }
+    if (raised != null) {
+      throw raised;
+    }
+    return results;
+  }
+
+  private void stopExecutors() {
+    TaskScheduler[] current = executors;
+    executors = null;
+    if (current != null) {
+      for (TaskScheduler executor : current) {
+        executor.shutdown();
+      }
+    }
+  }
+
+  @FunctionalInterface
+  private interface ShardCall<T extends Storable, V> {
+    V apply(int index, Storage<T> shard) throws IOException;
+  }
+}
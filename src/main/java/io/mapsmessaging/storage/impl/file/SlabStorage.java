@@ -0,0 +1,369 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl.file;
+
+import io.mapsmessaging.storage.*;
+import io.mapsmessaging.storage.impl.expired.ExpireStorableTaskManager;
+import io.mapsmessaging.storage.impl.file.config.PartitionStorageConfig;
+import io.mapsmessaging.storage.impl.file.partition.SlabPartition;
+import io.mapsmessaging.utilities.collections.NaturalOrderedLongList;
+import io.mapsmessaging.utilities.collections.NaturalOrderedLongQueue;
+import io.mapsmessaging.utilities.collections.bitset.BitSetFactory;
+import io.mapsmessaging.utilities.collections.bitset.BitSetFactoryImpl;
+import io.mapsmessaging.utilities.threads.tasks.TaskScheduler;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Partitioned store for records that always pack to no more than FixedRecordSize bytes. Each partition covers an
+ * aligned block of ItemCount keys, so the partition and the slot within it are computed from the key and no index is
+ * kept. See {@link SlabPartition} for the file layout.
+ */
+public class SlabStorage<T extends Storable> implements Storage<T>, ExpiredMonitor {
+
+  private static final String SLAB_FILE_NAME = "slab_";
+
+  private final ExpiredStorableHandler expiredHandler;
+
+  @Getter
+  private final TaskQueue taskScheduler;
+
+  private final PartitionStorageConfig config;
+  private final int itemCount;
+  private final int recordSize;
+  private final String rootDirectory;
+  private final ExpireStorableTaskManager<T> expiredMonitor;
+
+  // Keyed by the first key of each partition
+  private final TreeMap<Long, SlabPartition<T>> partitions;
+
+  private final LongAdder reads;
+  private final LongAdder writes;
+  private final LongAdder deletes;
+
+  private final LongAdder readTimes;
+  private final LongAdder writeTimes;
+
+  private final LongAdder byteWrites;
+  private final LongAdder byteReads;
+
+  private boolean shutdown;
+  private long lastKeyStored;
+  private long lastAccess;
+
+  public SlabStorage(PartitionStorageConfig config, ExpiredStorableHandler expiredHandler) throws IOException {
+    this.config = config;
+    this.expiredHandler = Objects.requireNonNullElseGet(expiredHandler, () -> new BaseExpiredHandler<>(this));
+    itemCount = config.getItemCount();
+    recordSize = config.getFixedRecordSize();
+    rootDirectory = config.getFileName();
+    taskScheduler = config.getTaskQueue();
+    partitions = new TreeMap<>();
+    expiredMonitor = new ExpireStorableTaskManager<>(this, taskScheduler, config.getExpiredEventPoll());
+    reads = new LongAdder();
+    writes = new LongAdder();
+    readTimes = new LongAdder();
+    writeTimes = new LongAdder();
+    deletes = new LongAdder();
+    byteWrites = new LongAdder();
+    byteReads = new LongAdder();
+    shutdown = false;
+    lastKeyStored = -2;
+    lastAccess = System.currentTimeMillis();
+    File location = new File(rootDirectory);
+    if (location.exists()) {
+      reload(location);
+    } else {
+      location.mkdirs();
+    }
+  }
+
+  private void reload(File location) throws IOException {
+    String[] childFiles = location.list();
+    if (childFiles == null) {
+      return;
+    }
+    boolean hasExpiry = false;
+    for (String child : childFiles) {
+      if (child.startsWith(SLAB_FILE_NAME)) {
+        long start = Long.parseLong(child.substring(SLAB_FILE_NAME.length()));
+        SlabPartition<T> partition = openPartition(start);
+        partitions.put(start, partition);
+        Queue<Long> expired = new ArrayDeque<>();
+        partition.scanForExpired(expired);
+        hasExpiry = hasExpiry || !expired.isEmpty();
+      }
+    }
+    if (hasExpiry) {
+      expiredMonitor.schedulePoll();
+    }
+  }
+
+  private SlabPartition<T> openPartition(long start) throws IOException {
+    String name = rootDirectory + File.separator + SLAB_FILE_NAME + start;
+    return new SlabPartition<>(name, config.getStorableFactory(), start, itemCount, recordSize, config.isSync());
+  }
+
+  @Override
+  public String getName() {
+    return rootDirectory;
+  }
+
+  @Override
+  public void shutdown() throws IOException {
+    shutdown = true;
+    expiredMonitor.close();
+    while (taskScheduler.hasTasks()) {
+      taskScheduler.executeTasks();
+    }
+    taskScheduler.abortAll();
+  }
+
+  @Override
+  public void close() throws IOException {
+    expiredMonitor.close();
+    for (SlabPartition<T> partition : partitions.values()) {
+      partition.close();
+    }
+    partitions.clear();
+  }
+
+  @Override
+  public void delete() throws IOException {
+    if (!shutdown) {
+      shutdown();
+    }
+    for (SlabPartition<T> partition : partitions.values()) {
+      partition.delete();
+    }
+    partitions.clear();
+    File file = new File(rootDirectory);
+    String[] children = file.list();
+    if (children == null || children.length == 0) {
+      Files.deleteIfExists(file.toPath());
+    }
+  }
+
+  @Override
+  public void add(@NotNull T object) throws IOException {
+    if (object.getKey() < 0) {
+      throw new IOException("Fixed record stores do not support negative keys");
+    }
+    lastAccess = System.currentTimeMillis();
+    long time = System.currentTimeMillis();
+    long start = object.getKey() - (object.getKey() % itemCount);
+    SlabPartition<T> partition = partitions.get(start);
+    boolean created = partition == null;
+    if (created) {
+      partition = openPartition(start);
+      partitions.put(start, partition);
+    }
+    int length;
+    try {
+      length = partition.add(object);
+    } catch (IOException e) {
+      if (created) {
+        partitions.remove(start);
+        partition.delete();
+      }
+      throw e;
+    }
+    expiredMonitor.added(object);
+    byteWrites.add(length);
+    writes.increment();
+    writeTimes.add((System.currentTimeMillis() - time));
+    if (getLastKey() < object.getKey()) {
+      lastKeyStored = object.getKey();
+    }
+  }
+
+  @Override
+  public boolean remove(long key) throws IOException {
+    lastAccess = System.currentTimeMillis();
+    SlabPartition<T> partition = locatePartition(key);
+    if (partition != null && partition.remove(key)) {
+      deletes.increment();
+      if (partition.isEmpty() && partitions.size() > 1) {
+        partitions.remove(partition.getStart());
+        partition.delete();
+      }
+      return true;
+    }
+    return false;
+  }
+
+  @Override
+  public @Nullable T get(long key) throws IOException {
+    lastAccess = System.currentTimeMillis();
+    long time = System.currentTimeMillis();
+    try {
+      SlabPartition<T> partition = locatePartition(key);
+      if (partition != null) {
+        T obj = partition.get(key);
+        if (obj != null) {
+          reads.increment();
+          byteReads.add(recordSize);
+          return obj;
+        }
+      }
+      return null;
+    } finally {
+      readTimes.add((System.currentTimeMillis() - time));
+    }
+  }
+
+  private @Nullable SlabPartition<T> locatePartition(long key) {
+    if (key < 0) {
+      return null;
+    }
+    return partitions.get(key - (key % itemCount));
+  }
+
+  @Override
+  public boolean contains(long key) {
+    SlabPartition<T> partition = locatePartition(key);
+    return partition != null && partition.contains(key);
+  }
+
+  @Override
+  public @NotNull List<Long> getKeys() {
+    List<Long> keyList = new NaturalOrderedLongList();
+    for (SlabPartition<T> partition : partitions.values()) {
+      keyList.addAll(partition.getKeys());
+    }
+    return keyList;
+  }
+
+  @Override
+  public long size() {
+    long size = 0;
+    for (SlabPartition<T> partition : partitions.values()) {
+      size += partition.size();
+    }
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    for (SlabPartition<T> partition : partitions.values()) {
+      if (!partition.isEmpty()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public long getLastKey() {
+    if (lastKeyStored == -2) {
+      lastKeyStored = partitions.isEmpty() ? 0 : partitions.lastEntry().getValue().getLastKey();
+    }
+    return lastKeyStored;
+  }
+
+  @Override
+  public long getLastAccess() {
+    return lastAccess;
+  }
+
+  @Override
+  public void updateLastAccess() {
+    lastAccess = System.currentTimeMillis();
+  }
+
+  @Override
+  public @NotNull Collection<Long> keepOnly(@NotNull Collection<Long> listToKeep) throws IOException {
+    Set<Long> keep = new HashSet<>(listToKeep);
+    for (SlabPartition<T> partition : partitions.values()) {
+      partition.keepOnly(keep);
+    }
+    List<Long> notFound = new ArrayList<>();
+    for (Long key : listToKeep) {
+      if (!contains(key)) {
+        notFound.add(key);
+      }
+    }
+    return notFound;
+  }
+
+  @Override
+  public int removeAll(@NotNull Collection<Long> listToRemove) throws IOException {
+    int counter = 0;
+    for (Long key : listToRemove) {
+      if (remove(key)) {
+        counter++;
+      }
+    }
+    return counter;
+  }
+
+  @Override
+  public void scanForExpired() throws IOException {
+    try (BitSetFactory bitSetFactory = new BitSetFactoryImpl(8192)) {
+      Queue<Long> expiredList = new NaturalOrderedLongQueue(0, bitSetFactory);
+      for (SlabPartition<T> partition : partitions.values()) {
+        partition.scanForExpired(expiredList);
+      }
+      if (!expiredList.isEmpty()) {
+        expiredHandler.expired(expiredList);
+        expiredMonitor.schedulePoll();
+      }
+    }
+  }
+
+  @Override
+  public void setExecutor(TaskScheduler scheduler) {
+    taskScheduler.setTaskScheduler(scheduler);
+  }
+
+  @Override
+  public boolean executeTasks() throws IOException {
+    return taskScheduler.executeTasks();
+  }
+
+  @Override
+  public @NotNull Statistics getStatistics() {
+    long length = 0;
+    long emptySpace = 0;
+    for (SlabPartition<T> partition : partitions.values()) {
+      length += partition.length();
+      emptySpace += partition.emptySpace();
+    }
+    return new StorageStatistics(
+        reads.sumThenReset(),
+        writes.sumThenReset(),
+        deletes.sumThenReset(),
+        byteReads.sumThenReset(),
+        byteWrites.sumThenReset(),
+        readTimes.sumThenReset(),
+        writeTimes.sumThenReset(),
+        length,
+        emptySpace,
+        partitions.size()
+    );
+  }
+}
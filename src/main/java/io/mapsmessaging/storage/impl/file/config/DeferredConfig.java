@@ -42,6 +42,9 @@ public class DeferredConfig {
   @Schema(description = "Digest algorithm name for checksums (e.g., SHA-256)")
   private String digestName = "";
 
+  @Schema(description = "If greater than 0, the digest is computed as a tree of chunks of this many bytes, hashed in parallel", defaultValue = "0")
+  private long digestChunkSize = 0;
+
   @Schema(description = "Optional S3 configuration parameters to use to push stale partitions to")
   private S3Config s3Config;
 
@@ -53,6 +56,7 @@ public class DeferredConfig {
     this.idleTime = lhs.idleTime;
     this.migrationDestination = lhs.migrationDestination;
     this.digestName = lhs.digestName;
+    this.digestChunkSize = lhs.digestChunkSize;
 
     if(lhs.s3Config != null){
       s3Config = new S3Config(lhs.s3Config);
@@ -73,6 +77,9 @@ public class DeferredConfig {
     if (properties.containsKey("digestName")) {
       digestName = properties.get("digestName");
     }
+    if (properties.containsKey("digestChunkSize")) {
+      digestChunkSize = Long.parseLong(properties.get("digestChunkSize"));
+    }
 
     migrationDestination = properties.get("migrationPath");
 
@@ -25,6 +25,9 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 @EqualsAndHashCode(callSuper = false)
@@ -35,6 +38,9 @@ public class PartitionStorageConfig extends StorageConfig {
   private static final int ITEM_COUNT = 524_288;
   private static final long MAXIMUM_DATA_SIZE = 1L << 32; // 4GB
   private static final int EXPIRED_EVENT_MONITOR_TIME = 1;
+  private static final int INDEX_WINDOW_COUNT = 4;
+  private static final long APPEND_LINGER_TIME = 5;
+  private static final long MAPPED_READ_IDLE_TIME = 60000;
 
   @Schema(description = "Storage file name (typically derived from the logical name)")
   private String fileName;
@@ -54,6 +60,69 @@ public class PartitionStorageConfig extends StorageConfig {
   @Schema(description = "Polling interval (in seconds) for expired events", defaultValue = "1")
   private int expiredEventPoll;
 
+  @Schema(description = "Number of index slots mapped per window, 0 maps the entire index", defaultValue = "0")
+  private int indexWindowSize;
+
+  @Schema(description = "Maximum number of index windows kept mapped at any one time", defaultValue = "4")
+  private int indexWindowCount;
+
+  @Schema(description = "Index record format, standard uses 24 byte slots and compact uses 12 byte slots", defaultValue = "standard")
+  private String indexFormat;
+
+  @Schema(description = "Records that pack to this many bytes or fewer are stored within the index slot, 0 disables inline storage. Every slot costs 24 + this value bytes whether used or not, so each partition's index is ItemCount x (24 + this value) bytes. Capped at 256", defaultValue = "0")
+  private int inlineThreshold;
+
+  @Schema(description = "Size in bytes of the per partition buffer used to coalesce small record writes, 0 disables it", defaultValue = "0")
+  private int appendBufferSize;
+
+  @Schema(description = "Maximum time in milliseconds a record is held in the append buffer before being flushed", defaultValue = "5")
+  private long appendLingerTime;
+
+  @Schema(description = "Read full partitions through read only memory mappings of their data files", defaultValue = "false")
+  private boolean mappedReads;
+
+  @Schema(description = "Time in milliseconds a full partition can be idle before its read mappings are released", defaultValue = "60000")
+  private long mappedReadIdleTime;
+
+  @Schema(description = "Size in bytes of the window mapped over the end of the data file for appends, 0 writes through the file channel", defaultValue = "0")
+  private int appendWindowSize;
+
+  @Schema(description = "Records whose packed size is at least this many bytes are deflated before being written, 0 disables it", defaultValue = "0")
+  private int compressionThreshold;
+
+  @Schema(description = "Open data files with O_DIRECT, bypassing the page cache. Only supported on some platforms and file systems. Can not be combined with AsyncIO, AppendBufferSize, MappedReads, AppendWindowSize or CompressionThreshold", defaultValue = "false")
+  private boolean directIO;
+
+  @Schema(description = "Drive data files through an AsynchronousFileChannel, keeping many reads and writes in flight per partition. Can not be combined with DirectIO, AppendBufferSize, MappedReads, AppendWindowSize or CompressionThreshold", defaultValue = "false")
+  private boolean asyncIO;
+
+  @Schema(description = "Index partitions through a hashed key table with ItemCount slots rather than one slot per key, for sparse key spaces", defaultValue = "false")
+  private boolean sparseIndex;
+
+  @Schema(description = "When greater than 0 every record is stored in a slot of this many bytes addressed by its key, with no index file", defaultValue = "0")
+  private int fixedRecordSize;
+
+  @Schema(description = "Comma separated list of directories to spread index files across, defaults to the store directory")
+  private String indexDirectories;
+
+  @Schema(description = "Comma separated list of directories to spread data files across, defaults to the store directory")
+  private String dataDirectories;
+
+  @Schema(description = "How new partitions pick a directory, roundRobin or leastUsed", defaultValue = "roundRobin")
+  private String directoryPlacement;
+
+  @Schema(description = "Number of independent partition stores the keys are spread across, each written by its own thread", defaultValue = "1")
+  private int shardCount;
+
+  @Schema(description = "How keys are routed to a shard, modulo or range", defaultValue = "modulo")
+  private String shardRouting;
+
+  @Schema(description = "Number of consecutive keys routed to the same shard when using range routing", defaultValue = "1024")
+  private long shardRangeSize;
+
+  @Schema(description = "When set, payloads are written once to a reference counted content store in this directory, shared by every store using it")
+  private String sharedPayloadDirectory;
+
   @Schema(description = "Task queue identifier used for expired message handling")
   private TaskQueue taskQueue;
 
@@ -76,6 +145,27 @@ public class PartitionStorageConfig extends StorageConfig {
     this.itemCount = lhs.itemCount;
     this.maxPartitionSize = lhs.maxPartitionSize;
     this.expiredEventPoll = lhs.expiredEventPoll;
+    this.indexWindowSize = lhs.indexWindowSize;
+    this.indexWindowCount = lhs.indexWindowCount;
+    this.indexFormat = lhs.indexFormat;
+    this.inlineThreshold = lhs.inlineThreshold;
+    this.appendBufferSize = lhs.appendBufferSize;
+    this.appendLingerTime = lhs.appendLingerTime;
+    this.mappedReads = lhs.mappedReads;
+    this.mappedReadIdleTime = lhs.mappedReadIdleTime;
+    this.appendWindowSize = lhs.appendWindowSize;
+    this.compressionThreshold = lhs.compressionThreshold;
+    this.directIO = lhs.directIO;
+    this.asyncIO = lhs.asyncIO;
+    this.sparseIndex = lhs.sparseIndex;
+    this.fixedRecordSize = lhs.fixedRecordSize;
+    this.indexDirectories = lhs.indexDirectories;
+    this.dataDirectories = lhs.dataDirectories;
+    this.directoryPlacement = lhs.directoryPlacement;
+    this.shardCount = lhs.shardCount;
+    this.shardRouting = lhs.shardRouting;
+    this.shardRangeSize = lhs.shardRangeSize;
+    this.sharedPayloadDirectory = lhs.sharedPayloadDirectory;
     this.taskQueue = lhs.taskQueue;
     if(lhs.getDeferredConfig() != null) {
       this.deferredConfig = new DeferredConfig(lhs.deferredConfig);
@@ -95,9 +185,55 @@ public class PartitionStorageConfig extends StorageConfig {
     capacity = Integer.parseInt(properties.getOrDefault("Capacity", "-1"));
     maxPartitionSize = Long.parseLong(properties.getOrDefault("MaxPartitionSize", String.valueOf(MAXIMUM_DATA_SIZE)));
     expiredEventPoll = Integer.parseInt(properties.getOrDefault("ExpiredEventPoll", String.valueOf(EXPIRED_EVENT_MONITOR_TIME)));
+    indexWindowSize = Integer.parseInt(properties.getOrDefault("IndexWindowSize", "0"));
+    indexWindowCount = Integer.parseInt(properties.getOrDefault("IndexWindowCount", String.valueOf(INDEX_WINDOW_COUNT)));
+    indexFormat = properties.getOrDefault("IndexFormat", "standard");
+    inlineThreshold = Integer.parseInt(properties.getOrDefault("InlineThreshold", "0"));
+    appendBufferSize = Integer.parseInt(properties.getOrDefault("AppendBufferSize", "0"));
+    appendLingerTime = Long.parseLong(properties.getOrDefault("AppendLingerTime", String.valueOf(APPEND_LINGER_TIME)));
+    mappedReads = Boolean.parseBoolean(properties.getOrDefault("MappedReads", "false"));
+    mappedReadIdleTime = Long.parseLong(properties.getOrDefault("MappedReadIdleTime", String.valueOf(MAPPED_READ_IDLE_TIME)));
+    appendWindowSize = Integer.parseInt(properties.getOrDefault("AppendWindowSize", "0"));
+    compressionThreshold = Integer.parseInt(properties.getOrDefault("CompressionThreshold", "0"));
+    directIO = Boolean.parseBoolean(properties.getOrDefault("DirectIO", "false"));
+    asyncIO = Boolean.parseBoolean(properties.getOrDefault("AsyncIO", "false"));
+    sparseIndex = Boolean.parseBoolean(properties.getOrDefault("SparseIndex", "false"));
+    fixedRecordSize = Integer.parseInt(properties.getOrDefault("FixedRecordSize", "0"));
+    indexDirectories = properties.getOrDefault("IndexDirectories", "");
+    dataDirectories = properties.getOrDefault("DataDirectories", "");
+    directoryPlacement = properties.getOrDefault("DirectoryPlacement", "roundRobin");
+    shardCount = Integer.parseInt(properties.getOrDefault("ShardCount", "1"));
+    shardRouting = properties.getOrDefault("ShardRouting", "modulo");
+    shardRangeSize = Long.parseLong(properties.getOrDefault("ShardRangeSize", "1024"));
+    sharedPayloadDirectory = properties.get("SharedPayloadDirectory");
     deferredConfig = new DeferredConfig();
     deferredConfig.fromMap(properties);
     setTaskQueue(taskQueue); // Note: taskQueue remains null unless set elsewhere
 
   }
+
+  // DirectIO and AsyncIO data files have their own write paths, so the options of the standard data file do not apply
+  public void validate() throws IOException {
+    if (directIO && asyncIO) {
+      throw new IOException("DirectIO and AsyncIO can not be used together");
+    }
+    if (directIO || asyncIO) {
+      List<String> unsupported = new ArrayList<>();
+      if (appendBufferSize > 0) {
+        unsupported.add("AppendBufferSize");
+      }
+      if (mappedReads) {
+        unsupported.add("MappedReads");
+      }
+      if (appendWindowSize > 0) {
+        unsupported.add("AppendWindowSize");
+      }
+      if (compressionThreshold > 0) {
+        unsupported.add("CompressionThreshold");
+      }
+      if (!unsupported.isEmpty()) {
+        throw new IOException((directIO ? "DirectIO" : "AsyncIO") + " does not support " + String.join(", ", unsupported));
+      }
+    }
+  }
 }
@@ -0,0 +1,407 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl.file.partition;
+
+import io.mapsmessaging.storage.Storable;
+import io.mapsmessaging.storage.StorableFactory;
+import io.mapsmessaging.storage.impl.file.FileHelper;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Data file driven through an AsynchronousFileChannel so a partition can keep many positional reads and writes in
+ * flight rather than one per calling thread. Appends reserve their range and return once the write is issued, or once
+ * it has landed when the store is synchronous. The record is held in memory until the write lands and the flushed
+ * position only moves past it once every earlier write has completed. Reads complete their futures from the channel's
+ * completion handlers. The file layout is the same as DataStorageImpl, so a store can be switched between the two.
+ * <p>
+ * A failed write fails the data file closed, every later call throws the failure and the flushed position never moves
+ * past the record that was lost.
+ */
+public class AsyncDataStorage<T extends Storable> implements DataStorage<T> {
+
+  private static final int MAX_IN_FLIGHT = 256;
+
+  private final long maxPartitionSize;
+  private final StorableFactory<T> objectStorableFactory;
+  private final String fileName;
+  private final boolean sync;
+  private final AsynchronousFileChannel channel;
+
+  // Every read and write holds a permit until its completion handler runs, taking them all waits for the queue to drain
+  private final Semaphore inFlight;
+
+  // Records whose writes have not yet completed, keyed by file position. Reads of these are served from memory
+  private final ConcurrentSkipListMap<Long, ByteBuffer> pendingWrites;
+
+  // Notified as writes complete, flush waits on it for the writes issued before it was called
+  private final Object writeMonitor;
+  private long tail;
+  private long failedPosition;
+  private volatile IOException writeFailure;
+
+  private volatile boolean closed;
+
+  @Getter
+  private boolean validationRequired;
+
+  @Getter
+  private volatile boolean full;
+
+  public AsyncDataStorage(String fileName, StorableFactory<T> storableFactory, boolean sync, long maxPartitionSize) throws IOException {
+    objectStorableFactory = storableFactory;
+    this.fileName = fileName;
+    this.maxPartitionSize = maxPartitionSize;
+    this.sync = sync;
+    Path path = new File(fileName).toPath();
+    try (FileChannel setup = FileChannel.open(path, CREATE, READ, WRITE)) {
+      tail = setup.size() == 0 ? initialise(setup) : reload(setup);
+    }
+    if (sync) {
+      channel = AsynchronousFileChannel.open(path, READ, WRITE, DSYNC);
+    } else {
+      channel = AsynchronousFileChannel.open(path, READ, WRITE);
+    }
+    inFlight = new Semaphore(MAX_IN_FLIGHT);
+    pendingWrites = new ConcurrentSkipListMap<>();
+    writeMonitor = new Object();
+    failedPosition = Long.MAX_VALUE;
+    full = tail > maxPartitionSize;
+    closed = false;
+  }
+
+  @Override
+  public void close() throws IOException {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+    }
+    inFlight.acquireUninterruptibly(MAX_IN_FLIGHT);
+    try {
+      // If a write failed the file is left marked open, so the next open walks the records to find the real tail
+      if (writeFailure == null) {
+        ByteBuffer header = ByteBuffer.allocate(8);
+        header.putLong(0, DataStorageImpl.CLOSE_STATE);
+        complete(channel.write(header, 0));
+      }
+      channel.force(true);
+      channel.close();
+    } finally {
+      inFlight.release(MAX_IN_FLIGHT);
+    }
+  }
+
+  private long initialise(FileChannel setup) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(DataStorageImpl.HEADER_SIZE);
+    header.putLong(DataStorageImpl.OPEN_STATE);
+    header.putLong(DataStorageImpl.UNIQUE_ID);
+    header.putLong(Double.doubleToLongBits(DataStorageImpl.VERSION));
+    header.flip();
+    setup.write(header, 0);
+    setup.force(false);
+    validationRequired = false;
+    return DataStorageImpl.HEADER_SIZE;
+  }
+
+  private long reload(FileChannel setup) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(DataStorageImpl.HEADER_SIZE);
+    setup.read(header, 0);
+    validationRequired = header.getLong(0) != DataStorageImpl.CLOSE_STATE;
+    if (header.getLong(8) != DataStorageImpl.UNIQUE_ID) {
+      throw new IOException("Unexpected file identifier located");
+    }
+    if (Double.longBitsToDouble(header.getLong(16)) != DataStorageImpl.VERSION) {
+      throw new IOException("Unexpected file version");
+    }
+    long size = setup.size();
+    if (validationRequired) {
+      // Writes complete out of order, so after a crash there may be a hole before records that did land
+      size = DataStorageImpl.walkRecords(setup, size);
+      setup.truncate(size);
+    }
+    header.putLong(0, DataStorageImpl.OPEN_STATE);
+    setup.write(header.clear().limit(8), 0);
+    setup.force(false);
+    return size;
+  }
+
+  @Override
+  public String getName() {
+    return fileName;
+  }
+
+  @Override
+  public void delete() throws IOException {
+    close();
+    FileHelper.delete(fileName);
+  }
+
+  @Override
+  public IndexRecord add(@NotNull T object) throws IOException {
+    return add(object, objectStorableFactory.pack(object));
+  }
+
+  @Override
+  public IndexRecord add(@NotNull T object, @NotNull ByteBuffer[] buffers) throws IOException {
+    checkState();
+    int len = 4;
+    for (ByteBuffer buffer : buffers) {
+      len += buffer.limit();
+    }
+    int length = 8 + (4 * buffers.length) + (len - 4);
+    ByteBuffer record = ByteBuffer.allocate(length);
+    record.putInt(len);
+    record.putInt(buffers.length);
+    for (ByteBuffer buffer : buffers) {
+      record.putInt(buffer.limit());
+    }
+    for (ByteBuffer buffer : buffers) {
+      record.put(buffer.duplicate());
+    }
+    record.flip();
+
+    inFlight.acquireUninterruptibly();
+    long position;
+    synchronized (this) {
+      position = tail;
+      tail += length;
+      pendingWrites.put(position, record);
+    }
+    full = position + length > maxPartitionSize;
+    ByteBuffer toWrite = record.duplicate();
+    WriteCompletion completion = new WriteCompletion(position);
+    channel.write(toWrite, position, toWrite, completion);
+    if (sync) {
+      completion.await();
+    }
+    return new IndexRecord(object.getKey(), 0, position, object.getExpiry(), length);
+  }
+
+  @Override
+  public @Nullable T get(IndexRecord item) throws IOException {
+    try {
+      return getAsync(item).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted waiting for read", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  @Override
+  public CompletableFuture<T> getAsync(IndexRecord item) throws IOException {
+    if (item == null || item.getPosition() < 0 || item.getLength() < 8) {
+      return CompletableFuture.completedFuture(null);
+    }
+    ByteBuffer pending = pendingWrites.get(item.getPosition());
+    if (pending != null) {
+      return CompletableFuture.completedFuture(unpack(pending));
+    }
+    checkState();
+    CompletableFuture<T> future = new CompletableFuture<>();
+    ByteBuffer record = ByteBuffer.allocate(item.getLength());
+    inFlight.acquireUninterruptibly();
+    channel.read(record, item.getPosition(), record, new ReadCompletion(item.getPosition(), future));
+    return future;
+  }
+
+  @Override
+  public void force() throws IOException {
+    flush();
+    channel.force(false);
+  }
+
+  // Waits for the writes issued before the call to land, writes issued while waiting do not hold it up
+  @Override
+  public void flush() throws IOException {
+    long target;
+    synchronized (this) {
+      target = tail;
+    }
+    synchronized (writeMonitor) {
+      while (writeFailure == null && getFlushedPosition() < target) {
+        try {
+          writeMonitor.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted waiting for writes to complete", e);
+        }
+      }
+    }
+    if (writeFailure != null) {
+      throw writeFailure;
+    }
+  }
+
+  // Everything before the oldest write still in flight, or the first one that failed, is on disk
+  @Override
+  public synchronized long getFlushedPosition() {
+    Map.Entry<Long, ByteBuffer> oldest = pendingWrites.firstEntry();
+    return Math.min(oldest != null ? oldest.getKey() : tail, failedPosition);
+  }
+
+  @Override
+  public synchronized long length() {
+    return tail;
+  }
+
+  private @Nullable T unpack(ByteBuffer record) throws IOException {
+    ByteBuffer[] data = DataStorageImpl.split(record);
+    if (data == null) {
+      return null;
+    }
+    return objectStorableFactory.unpack(data);
+  }
+
+  private void checkState() throws IOException {
+    if (closed) {
+      throw new IOException("Data file " + fileName + " has been closed");
+    }
+    if (writeFailure != null) {
+      throw writeFailure;
+    }
+  }
+
+  private static void complete(Future<Integer> future) throws IOException {
+    try {
+      future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted waiting for write", e);
+    } catch (ExecutionException e) {
+      throw new IOException(e.getCause());
+    }
+  }
+
+  private final class WriteCompletion implements CompletionHandler<Integer, ByteBuffer> {
+
+    private final long position;
+    private final CompletableFuture<Void> done;
+
+    WriteCompletion(long position) {
+      this.position = position;
+      done = new CompletableFuture<>();
+    }
+
+    void await() throws IOException {
+      try {
+        done.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted waiting for write", e);
+      } catch (ExecutionException e) {
+        throw (IOException) e.getCause();
+      }
+    }
+
+    @Override
+    public void completed(Integer result, ByteBuffer buffer) {
+      if (buffer.hasRemaining()) {
+        channel.write(buffer, position + buffer.position(), buffer, this);
+        return;
+      }
+      pendingWrites.remove(position);
+      inFlight.release();
+      signal();
+      done.complete(null);
+    }
+
+    // The data file is failed closed, the flushed position is held at the lost record so nothing after it is published
+    @Override
+    public void failed(Throwable exc, ByteBuffer buffer) {
+      IOException failure = new IOException("Write failed at " + position + " in " + fileName, exc);
+      synchronized (AsyncDataStorage.this) {
+        if (writeFailure == null) {
+          writeFailure = failure;
+        }
+        failedPosition = Math.min(failedPosition, position);
+      }
+      pendingWrites.remove(position);
+      inFlight.release();
+      signal();
+      done.completeExceptionally(failure);
+    }
+
+    private void signal() {
+      synchronized (writeMonitor) {
+        writeMonitor.notifyAll();
+      }
+    }
+  }
+
+  private final class ReadCompletion implements CompletionHandler<Integer, ByteBuffer> {
+
+    private final long position;
+    private final CompletableFuture<T> future;
+
+    ReadCompletion(long position, CompletableFuture<T> future) {
+      this.position = position;
+      this.future = future;
+    }
+
+    @Override
+    public void completed(Integer result, ByteBuffer buffer) {
+      if (result >= 0 && buffer.hasRemaining()) {
+        channel.read(buffer, position + buffer.position(), buffer, this);
+        return;
+      }
+      inFlight.release();
+      if (result < 0) {
+        future.completeExceptionally(new EOFException("Unexpected end of file reading at " + position));
+        return;
+      }
+      try {
+        future.complete(unpack(buffer));
+      } catch (IOException | RuntimeException e) {
+        future.completeExceptionally(e);
+      }
+    }
+
+    @Override
+    public void failed(Throwable exc, ByteBuffer buffer) {
+      inFlight.release();
+      future.completeExceptionally(exc);
+    }
+  }
+}
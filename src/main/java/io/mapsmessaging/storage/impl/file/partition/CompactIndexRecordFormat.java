@@ -0,0 +1,103 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl.file.partition;
+
+import lombok.Getter;
+
+import java.io.IOException;
+
+/**
+ * A 12 byte slot. The first 8 bytes hold a 36 bit data file position and a 28 bit length, the final 4 bytes hold the
+ * expiry as an unsigned number of seconds after the index base time, with 0 meaning no expiry. Expiry is rounded up to
+ * the next second so an entry never expires early. Positions are limited to 64GB and lengths to 256MB.
+ */
+public class CompactIndexRecordFormat implements IndexRecordFormat {
+
+  public static final int SLOT_SIZE = 12;
+
+  static final long MAX_POSITION = (1L << 36) - 1;
+  static final int MAX_LENGTH = (1 << 28) - 1;
+
+  private static final int LENGTH_BITS = 28;
+  private static final long LENGTH_MASK = MAX_LENGTH;
+  private static final long SECONDS_MASK = 0xFFFFFFFFL;
+  private static final int EXPIRY_OFFSET = 8;
+
+  @Getter
+  private final long baseTime;
+
+  public CompactIndexRecordFormat(long baseTime) {
+    this.baseTime = baseTime;
+  }
+
+  @Override
+  public int getId() {
+    return COMPACT;
+  }
+
+  @Override
+  public int getSlotSize() {
+    return SLOT_SIZE;
+  }
+
+  @Override
+  public long readPosition(IndexMap map, long offset) {
+    return map.getLong(offset) >>> LENGTH_BITS;
+  }
+
+  @Override
+  public long readExpiry(IndexMap map, long offset) {
+    long seconds = map.getInt(offset + EXPIRY_OFFSET) & SECONDS_MASK;
+    if (seconds == 0) {
+      return 0;
+    }
+    return baseTime + seconds * 1000L;
+  }
+
+  @Override
+  public int readLength(IndexMap map, long offset) {
+    return (int) (map.getLong(offset) & LENGTH_MASK);
+  }
+
+  @Override
+  public IndexRecord read(long key, IndexMap map, long offset) {
+    return new IndexRecord(key, 0, readPosition(map, offset), readExpiry(map, offset), readLength(map, offset));
+  }
+
+  @Override
+  public void write(IndexRecord indexRecord, IndexMap map, long offset) throws IOException {
+    if (indexRecord.getPosition() < 0 || indexRecord.getPosition() > MAX_POSITION || indexRecord.getLength() > MAX_LENGTH) {
+      throw new IOException("Record at " + indexRecord.getPosition() + " of " + indexRecord.getLength() + " bytes exceeds the compact index format");
+    }
+    map.putLong(offset, (indexRecord.getPosition() << LENGTH_BITS) | (indexRecord.getLength() & LENGTH_MASK));
+    map.putInt(offset + EXPIRY_OFFSET, (int) encodeExpiry(indexRecord.getExpiry()));
+  }
+
+  private long encodeExpiry(long expiry) {
+    if (expiry <= 0) {
+      return 0;
+    }
+    long seconds = (expiry - baseTime + 999) / 1000;
+    if (seconds < 1) {
+      return 1; // Already expired, but must still be recorded as having an expiry
+    }
+    return Math.min(seconds, SECONDS_MASK);
+  }
+}
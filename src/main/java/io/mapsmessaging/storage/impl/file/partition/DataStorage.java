@@ -19,10 +19,13 @@
 
 package io.mapsmessaging.storage.impl.file.partition;
 
+import io.mapsmessaging.storage.RawRecord;
 import io.mapsmessaging.storage.Storable;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
 
 public interface DataStorage<T extends Storable> extends Closeable {
 
@@ -35,8 +38,45 @@ public interface DataStorage<T extends Storable> extends Closeable {
 
   IndexRecord add(T object) throws IOException;
 
+  // Adds an object that has already been packed by the storable factory, avoiding a second pack
+  default IndexRecord add(T object, ByteBuffer[] packed) throws IOException {
+    return add(object);
+  }
+
   T get(IndexRecord item) throws IOException;
 
+  default T get(IndexRecord item, long bufferMask) throws IOException {
+    return get(item);
+  }
+
+  // Stores that issue their reads asynchronously complete the future from the I/O completion handler
+  default CompletableFuture<T> getAsync(IndexRecord item) throws IOException {
+    return CompletableFuture.completedFuture(get(item));
+  }
+
+  // Returns the record as packed, without passing it through the storable factory, or null if not supported
+  default RawRecord getRaw(IndexRecord item) throws IOException {
+    return null;
+  }
+
+  // Writes out any records still held in an append buffer
+  default void flush() throws IOException {
+  }
+
+  // Writes out any buffered records and forces them to disk
+  default void force() throws IOException {
+    flush();
+  }
+
+  // Records ending at or before this position are on disk and may be published to the index
+  default long getFlushedPosition() {
+    return Long.MAX_VALUE;
+  }
+
+  // Drops any read only mappings held over the data file, they are recreated on the next read
+  default void releaseMappings() {
+  }
+
   long length() throws IOException;
 
   boolean isValidationRequired();
@@ -19,9 +19,13 @@
 
 package io.mapsmessaging.storage.impl.file.partition;
 
+import io.mapsmessaging.storage.PackSink;
+import io.mapsmessaging.storage.RawRecord;
 import io.mapsmessaging.storage.Storable;
 import io.mapsmessaging.storage.StorableFactory;
+import io.mapsmessaging.storage.Storage;
 import io.mapsmessaging.storage.impl.file.FileHelper;
+import io.mapsmessaging.utilities.collections.MappedBufferHelper;
 import lombok.Getter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -29,26 +33,73 @@ import org.jetbrains.annotations.Nullable;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 import static java.nio.file.StandardOpenOption.*;
 
 public class DataStorageImpl<T extends Storable> implements DataStorage<T> {
-  private static final int HEADER_SIZE = 24;
+  static final int HEADER_SIZE = 24;
+  private static final long READ_MAP_CHUNK = 1L << 30;
+  private static final int SELECTIVE_READ_SIZE = 8192;
 
-  private static final double VERSION = 1.0;
+  // Set in the buffer count of the meta header when the payload has been deflated, the lengths remain the originals
+  private static final int COMPRESSED_RECORD = 0x40000000;
+  private static final int BUFFER_COUNT_MASK = COMPRESSED_RECORD - 1;
+  private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(() -> new Inflater(true));
+
+  static final double VERSION = 1.0;
   public static final long UNIQUE_ID = 0xf00d0000d00f0000L;
   public static final long OPEN_STATE = 0xEFFFFFFFFFFFFFFFL;
   public static final long CLOSE_STATE = 0x0000000000000000L;
 
   private final long maxPartitionSize;
+  private final boolean sync;
   private final StorableFactory<T> objectStorableFactory;
   private final String fileName;
   private final FileChannel readChannel;
   private final FileChannel writeChannel;
-  private final ByteBuffer lengthBuffer;
+
+  // Appends are serialised by the owning partition, so the tail and the header buffers are reused across adds
+  private long tail;
+  private ByteBuffer meta;
+  private ByteBuffer[] inclusive;
+
+  // Reused for factories that pack straight into a sink, so the add path allocates nothing but the index record
+  private PackSink sink;
+  private final ByteBuffer[] sinkData;
+
+  // Payloads of at least this many bytes are deflated before being written, 0 disables compression
+  private final int compressionThreshold;
+  private Deflater deflater;
+  private byte[] compressed;
+  private final ByteBuffer[] compressedData;
+
+  // Optional buffer that coalesces small records into one write, everything from flushedTail to tail is held here
+  private final ByteBuffer appendBuffer;
+  private volatile long flushedTail;
+
+  // Optional window mapped over the end of the file, appends are copied into it rather than written through the channel.
+  // The file is extended ahead of the records, so it is truncated back to the tail on close.
+  private final int appendWindowSize;
+  private MappedByteBuffer appendWindow;
+  private long windowStart;
+
+  // Once full the data file no longer grows, so it can be read from read only mappings rather than the channel
+  private final boolean mappedReads;
+  private final ReadWriteLock mapLock;
+  private final AtomicInteger leases;
+  private volatile MappedByteBuffer[] readMaps;
+  private long mappedLength;
 
   private volatile boolean closed;
 
@@ -56,13 +107,30 @@ public class DataStorageImpl<T extends Storable> implements DataStorage<T> {
   private boolean validationRequired;
 
   @Getter
-  private boolean full;
+  private volatile boolean full;
 
   public DataStorageImpl(String fileName, StorableFactory<T> storableFactory, boolean sync, long maxPartitionSize) throws IOException {
+    this(fileName, storableFactory, sync, maxPartitionSize, 0);
+  }
+
+  public DataStorageImpl(String fileName, StorableFactory<T> storableFactory, boolean sync, long maxPartitionSize, int appendBufferSize) throws IOException {
+    this(fileName, storableFactory, sync, maxPartitionSize, appendBufferSize, false);
+  }
+
+  public DataStorageImpl(String fileName, StorableFactory<T> storableFactory, boolean sync, long maxPartitionSize, int appendBufferSize, boolean mappedReads) throws IOException {
+    this(fileName, storableFactory, sync, maxPartitionSize, appendBufferSize, mappedReads, 0);
+  }
+
+  public DataStorageImpl(String fileName, StorableFactory<T> storableFactory, boolean sync, long maxPartitionSize, int appendBufferSize, boolean mappedReads, int appendWindowSize) throws IOException {
+    this(fileName, storableFactory, sync, maxPartitionSize, appendBufferSize, mappedReads, appendWindowSize, 0);
+  }
+
+  public DataStorageImpl(String fileName, StorableFactory<T> storableFactory, boolean sync, long maxPartitionSize, int appendBufferSize, boolean mappedReads, int appendWindowSize, int compressionThreshold) throws IOException {
     objectStorableFactory = storableFactory;
     this.fileName = fileName;
     this.maxPartitionSize = maxPartitionSize;
-    lengthBuffer = ByteBuffer.allocate(8);
+    this.sync = sync;
+    this.appendWindowSize = appendWindowSize;
     File file = new File(fileName);
     long length = 0;
     if (file.exists()) {
@@ -86,13 +154,33 @@ public class DataStorageImpl<T extends Storable> implements DataStorage<T> {
     } else {
       initialise();
     }
+    tail = validationRequired ? recoverTail(writeChannel.size()) : writeChannel.size();
+    flushedTail = tail;
+    writeChannel.position(tail);
+    appendBuffer = appendBufferSize > 0 ? ByteBuffer.allocateDirect(appendBufferSize) : null;
+    meta = ByteBuffer.allocateDirect(64);
+    inclusive = new ByteBuffer[0];
+    sinkData = new ByteBuffer[1];
+    this.compressionThreshold = compressionThreshold;
+    compressedData = new ByteBuffer[1];
+    this.mappedReads = mappedReads;
+    mapLock = new ReentrantReadWriteLock();
+    leases = new AtomicInteger(0);
     closed = false;
   }
 
   @Override
   public void close() throws IOException {
     if (!closed) {
+      flush();
       closed = true;
+      releaseMappings();
+      if (appendWindow != null) {
+        appendWindow.force();
+        MappedBufferHelper.closeDirectBuffer(appendWindow);
+        appendWindow = null;
+        writeChannel.truncate(tail);
+      }
       ByteBuffer header = ByteBuffer.allocate(8);
       writeChannel.position(0);
       header.putLong(CLOSE_STATE);
@@ -103,6 +191,9 @@ public class DataStorageImpl<T extends Storable> implements DataStorage<T> {
       readChannel.force(true);
       writeChannel.close();
       readChannel.close();
+      if (deflater != null) {
+        deflater.end();
+      }
     }
   }
 
@@ -136,6 +227,50 @@ public class DataStorageImpl<T extends Storable> implements DataStorage<T> {
     readChannel.force(false);
   }
 
+  // A file appended through the window is extended ahead of its records, so if it was not closed cleanly and ends in
+  // zeros the real tail is found by walking the record headers
+  private long recoverTail(long size) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(8);
+    if (size < HEADER_SIZE + 8L) {
+      return size;
+    }
+    readFully(header, size - 8);
+    if (header.getLong(0) != 0) {
+      return size;
+    }
+    return walkRecords(readChannel, size);
+  }
+
+  // Follows the record headers from the start of the data, returning the end of the last complete record
+  static long walkRecords(FileChannel channel, long size) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(8);
+    long position = HEADER_SIZE;
+    while (position + 8 <= size) {
+      header.clear();
+      readFully(channel, header, position);
+      int len = header.getInt(0);
+      int count = header.getInt(4) & BUFFER_COUNT_MASK;
+      long next = position + 4 + (4L * count) + len;
+      if (len <= 0 || count < 0 || next > size) {
+        break;
+      }
+      position = next;
+    }
+    return position;
+  }
+
+  private void readFully(ByteBuffer buffer, long position) throws IOException {
+    readFully(readChannel, buffer, position);
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new IOException("Unexpected end of file reading at " + position);
+      }
+    }
+  }
+
   public String getName() {
     return fileName;
   }
@@ -146,28 +281,193 @@ public class DataStorageImpl<T extends Storable> implements DataStorage<T> {
   }
 
   public IndexRecord add(@NotNull T object) throws IOException {
-    long eof = writeChannel.size();
-    writeChannel.position(eof);
-    ByteBuffer[] buffers = objectStorableFactory.pack(object);
-    ByteBuffer meta = ByteBuffer.allocate((buffers.length + 2) * 4);
+    if (sink == null) {
+      sink = new PackSink();
+    }
+    sink.reset();
+    if (!objectStorableFactory.pack(object, sink)) {
+      return add(object, objectStorableFactory.pack(object));
+    }
+    sinkData[0] = sink.complete();
+    int count = sink.getBufferCount();
+    int metaSize = startMeta(count);
+    int len = 4; // Initial address
+    for (int x = 0; x < count; x++) {
+      int bufLen = sink.getLength(x);
+      len += bufLen;
+      meta.putInt(bufLen);
+    }
+    return append(object, sinkData, metaSize, len);
+  }
+
+  @Override
+  public IndexRecord add(@NotNull T object, @NotNull ByteBuffer[] buffers) throws IOException {
+    int metaSize = startMeta(buffers.length);
     int len = 4; // Initial address
-    meta.position(4);
-    meta.putInt(buffers.length);
     for (ByteBuffer buffer : buffers) {
       int bufLen = buffer.limit();
       len += bufLen;
       meta.putInt(bufLen);
     }
+    return append(object, buffers, metaSize, len);
+  }
+
+  private int startMeta(int count) {
+    int metaSize = (count + 2) * 4;
+    if (meta.capacity() < metaSize) {
+      meta = ByteBuffer.allocateDirect(metaSize);
+    }
+    meta.clear();
+    meta.position(4);
+    meta.putInt(count);
+    return metaSize;
+  }
+
+  private IndexRecord append(T object, ByteBuffer[] buffers, int metaSize, int len) throws IOException {
+    long eof = tail;
+    if (compressionThreshold > 0 && len - 4 >= compressionThreshold) {
+      int size = compress(buffers, len - 4);
+      if (size > 0) {
+        meta.putInt(4, meta.getInt(4) | COMPRESSED_RECORD);
+        compressedData[0] = ByteBuffer.wrap(compressed, 0, size);
+        buffers = compressedData;
+        len = 4 + size;
+      }
+    }
     meta.putInt(0, len);
     meta.flip();
-    ByteBuffer[] inclusive = new ByteBuffer[buffers.length + 1];
+    long length = metaSize + (long) (len - 4);
+    if (appendBuffer != null && length <= appendBuffer.capacity()) {
+      buffer(buffers, length);
+    } else {
+      flush(); // keep the file in record order
+      write(buffers, length);
+      flushedTail = tail + length;
+    }
+    tail += length;
+    full = tail > maxPartitionSize;
+    return new IndexRecord(object.getKey(), 0, eof, object.getExpiry(), (int) length);
+  }
+
+  // Deflates the payload into the reused compression buffer, returning 0 if it did not get any smaller
+  private int compress(ByteBuffer[] buffers, int length) {
+    if (deflater == null) {
+      deflater = new Deflater(Deflater.BEST_SPEED, true);
+    }
+    if (compressed == null || compressed.length < length) {
+      compressed = new byte[length];
+    }
+    deflater.reset();
+    int size = 0;
+    for (ByteBuffer buffer : buffers) {
+      deflater.setInput(buffer.duplicate());
+      while (!deflater.needsInput()) {
+        size += deflater.deflate(compressed, size, length - size);
+        if (size >= length) {
+          return 0;
+        }
+      }
+    }
+    deflater.finish();
+    while (!deflater.finished()) {
+      size += deflater.deflate(compressed, size, length - size);
+      if (size >= length) {
+        return 0;
+      }
+    }
+    return size;
+  }
+
+  private void write(ByteBuffer[] buffers, long length) throws IOException {
+    if (appendWindowSize > 0) {
+      ByteBuffer window = windowFor(length);
+      window.put(meta);
+      for (ByteBuffer buffer : buffers) {
+        window.put(buffer.duplicate());
+      }
+      forceWindow();
+      return;
+    }
+    if (inclusive.length != buffers.length + 1) {
+      inclusive = new ByteBuffer[buffers.length + 1];
+    }
     System.arraycopy(buffers, 0, inclusive, 1, buffers.length);
     inclusive[0] = meta;
-    writeChannel.write(inclusive);
-    long fileLength = writeChannel.size();
-    long length = fileLength - eof;
-    full = fileLength > maxPartitionSize;
-    return new IndexRecord(object.getKey(), 0, eof, object.getExpiry(), (int) length);
+    try {
+      long written = 0;
+      while (written < length) {
+        written += writeChannel.write(inclusive);
+      }
+    } finally {
+      Arrays.fill(inclusive, null); // do not hold on to the callers buffers
+    }
+  }
+
+  private void buffer(ByteBuffer[] buffers, long length) throws IOException {
+    synchronized (appendBuffer) {
+      if (appendBuffer.remaining() < length) {
+        flush();
+      }
+      appendBuffer.put(meta);
+      for (ByteBuffer buffer : buffers) {
+        appendBuffer.put(buffer.duplicate());
+      }
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    if (appendBuffer != null) {
+      synchronized (appendBuffer) {
+        if (appendBuffer.position() > 0) {
+          appendBuffer.flip();
+          if (appendWindowSize > 0) {
+            windowFor(appendBuffer.remaining()).put(appendBuffer);
+            forceWindow();
+          } else {
+            while (appendBuffer.hasRemaining()) {
+              writeChannel.write(appendBuffer);
+            }
+          }
+          appendBuffer.clear();
+          flushedTail = tail;
+        }
+      }
+    }
+  }
+
+  @Override
+  public void force() throws IOException {
+    flush();
+    if (appendWindow != null) {
+      appendWindow.force();
+    }
+    writeChannel.force(false);
+  }
+
+  private ByteBuffer windowFor(long length) throws IOException {
+    if (appendWindow == null || appendWindow.remaining() < length) {
+      long start = flushedTail;
+      if (appendWindow != null) {
+        start = windowStart + appendWindow.position();
+        appendWindow.force();
+        MappedBufferHelper.closeDirectBuffer(appendWindow);
+      }
+      appendWindow = readChannel.map(FileChannel.MapMode.READ_WRITE, start, Math.max(appendWindowSize, length));
+      windowStart = start;
+    }
+    return appendWindow;
+  }
+
+  private void forceWindow() {
+    if (sync) {
+      appendWindow.force();
+    }
+  }
+
+  @Override
+  public long getFlushedPosition() {
+    return flushedTail;
   }
 
   public @Nullable T get(IndexRecord item) throws IOException {
@@ -175,37 +475,261 @@ public class DataStorageImpl<T extends Storable> implements DataStorage<T> {
     if (item != null) {
       long pos = item.getPosition();
       if (pos >= 0) {
-        obj = reloadMessage(pos);
+        obj = reloadMessage(pos, item.getLength());
       }
     }
     return obj;
   }
 
-  private T reloadMessage(long filePosition) throws IOException {
-    readChannel.position(filePosition);
-    lengthBuffer.clear();
-    readChannel.read(lengthBuffer);
-    int len = lengthBuffer.getInt(0);
-    T obj = null;
-    if (len > 0) {
-      int bufferCount = lengthBuffer.getInt(4);
-      ByteBuffer bufferInfo = ByteBuffer.allocate((bufferCount) * 4);
-      readChannel.read(bufferInfo);
-      bufferInfo.flip();
-      ByteBuffer[] data = new ByteBuffer[bufferCount];
-      for (int x = 0; x < bufferCount; x++) {
-        data[x] = ByteBuffer.allocate(bufferInfo.getInt());
-      }
-      readChannel.read(data);
-      for (ByteBuffer buffer : data) {
+  // Reads the header and whatever follows it in one read, then fetches only the requested buffers that lie beyond it.
+  // Small records, and records served from memory, are simply read in full.
+  @Override
+  public @Nullable T get(IndexRecord item, long bufferMask) throws IOException {
+    if (item == null || item.getPosition() < 0) {
+      return null;
+    }
+    long filePosition = item.getPosition();
+    int recordLength = item.getLength();
+    if (bufferMask == Storage.ALL_BUFFERS || recordLength <= SELECTIVE_READ_SIZE || filePosition >= flushedTail || (full && mappedReads)) {
+      return reloadMessage(filePosition, recordLength);
+    }
+    ByteBuffer prefix = ByteBuffer.allocate(SELECTIVE_READ_SIZE);
+    readFully(prefix, filePosition);
+    int count = prefix.getInt(4);
+    int headerSize = 8 + (count * 4);
+    if (prefix.getInt(0) <= 0 || (count & COMPRESSED_RECORD) != 0 || count < 0 || headerSize > SELECTIVE_READ_SIZE) {
+      return reloadMessage(filePosition, recordLength);
+    }
+    ByteBuffer[] data = new ByteBuffer[count];
+    int offset = headerSize;
+    for (int x = 0; x < count; x++) {
+      int bufLen = prefix.getInt(8 + (x * 4));
+      if (x < 64 && (bufferMask & (1L << x)) == 0) {
+        data[x] = ByteBuffer.allocate(0);
+      } else if (offset + bufLen <= SELECTIVE_READ_SIZE) {
+        data[x] = prefix.slice(offset, bufLen);
+      } else {
+        ByteBuffer buffer = ByteBuffer.allocate(bufLen);
+        readFully(buffer, filePosition + offset);
         buffer.flip();
+        data[x] = buffer;
       }
-      obj = objectStorableFactory.unpack(data);
+      offset += bufLen;
+    }
+    return objectStorableFactory.unpack(data);
+  }
+
+  // The index holds the full record length, so the record is fetched with one positional read that leaves the shared
+  // channel position alone. The buffers passed to unpack are views over that single allocation, it is not pooled
+  // since the factory is free to hold on to them.
+  private T reloadMessage(long filePosition, int recordLength) throws IOException {
+    if (recordLength < 8) {
+      return null;
+    }
+    ByteBuffer[] data = split(readRecord(filePosition, recordLength));
+    if (data == null) {
+      return null;
+    }
+    return objectStorableFactory.unpack(data);
+  }
+
+  private ByteBuffer readRecord(long filePosition, int recordLength) throws IOException {
+    ByteBuffer record = ByteBuffer.allocate(recordLength);
+    if (filePosition >= flushedTail && readBuffered(record, filePosition)) {
+      return record;
+    }
+    if (full && mappedReads && readMapped(record, filePosition)) {
+      return record;
+    }
+    readFully(record, filePosition);
+    return record;
+  }
+
+  // Full partitions hand out slices of the read mapping, anything else is read into a buffer owned by the lease. While
+  // a mapped lease is outstanding the mapping is left for the GC to unmap rather than being released under the reader.
+  @Override
+  public @Nullable RawRecord getRaw(IndexRecord item) throws IOException {
+    if (item == null || item.getPosition() < 0 || item.getLength() < 8) {
+      return null;
+    }
+    RawRecord leased = leaseMapped(item);
+    if (leased != null) {
+      return leased;
+    }
+    return toRaw(item, readRecord(item.getPosition(), item.getLength()), null);
+  }
+
+  private @Nullable RawRecord leaseMapped(IndexRecord item) throws IOException {
+    if (!full || !mappedReads || (readMaps == null && !mapForRead())) {
+      return null;
+    }
+    ByteBuffer record;
+    mapLock.readLock().lock();
+    try {
+      long filePosition = item.getPosition();
+      long end = filePosition + item.getLength();
+      int index = (int) (filePosition / READ_MAP_CHUNK);
+      if (readMaps == null || end > mappedLength || index != (int) ((end - 1) / READ_MAP_CHUNK)) {
+        return null;
+      }
+      record = readMaps[index].slice((int) (filePosition - (index * READ_MAP_CHUNK)), item.getLength());
+      leases.incrementAndGet();
+    } finally {
+      mapLock.readLock().unlock();
+    }
+    RawRecord raw = null;
+    try {
+      raw = toRaw(item, record, leases::decrementAndGet);
+    } finally {
+      if (raw == null) {
+        leases.decrementAndGet();
+      }
+    }
+    return raw;
+  }
+
+  private @Nullable RawRecord toRaw(IndexRecord item, ByteBuffer record, @Nullable Runnable onRelease) throws IOException {
+    ByteBuffer[] views = split(record);
+    if (views == null) {
+      return null;
+    }
+    for (int x = 0; x < views.length; x++) {
+      views[x] = views[x].asReadOnlyBuffer();
+    }
+    return new RawRecord(item.getKey(), item.getExpiry(), views, onRelease);
+  }
+
+  private boolean readBuffered(ByteBuffer record, long filePosition) {
+    if (appendBuffer == null) {
+      return false;
+    }
+    synchronized (appendBuffer) {
+      long offset = filePosition - flushedTail;
+      if (offset < 0 || offset + record.capacity() > appendBuffer.position()) {
+        return false; // flushed since the check, read it from the file
+      }
+      appendBuffer.get((int) offset, record.array());
+      return true;
+    }
+  }
+
+  private boolean readMapped(ByteBuffer record, long filePosition) throws IOException {
+    if (readMaps == null && !mapForRead()) {
+      return false;
+    }
+    mapLock.readLock().lock();
+    try {
+      long end = filePosition + record.capacity();
+      if (readMaps == null || end > mappedLength) {
+        return false; // released since the check, or written after the file was mapped
+      }
+      int index = (int) (filePosition / READ_MAP_CHUNK);
+      if (index != (int) ((end - 1) / READ_MAP_CHUNK)) {
+        return false; // spans two chunks, simpler to read it from the file
+      }
+      readMaps[index].get((int) (filePosition - (index * READ_MAP_CHUNK)), record.array());
+      return true;
+    } finally {
+      mapLock.readLock().unlock();
     }
-    return obj;
+  }
+
+  private boolean mapForRead() throws IOException {
+    mapLock.writeLock().lock();
+    try {
+      if (readMaps == null && !closed && flushedTail == tail) {
+        long length = flushedTail;
+        int chunks = (int) ((length + READ_MAP_CHUNK - 1) / READ_MAP_CHUNK);
+        MappedByteBuffer[] maps = new MappedByteBuffer[chunks];
+        for (int x = 0; x < chunks; x++) {
+          long start = x * READ_MAP_CHUNK;
+          maps[x] = readChannel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(READ_MAP_CHUNK, length - start));
+        }
+        mappedLength = length;
+        readMaps = maps;
+      }
+      return readMaps != null;
+    } finally {
+      mapLock.writeLock().unlock();
+    }
+  }
+
+  private static ByteBuffer[] inflate(ByteBuffer record, int bufferCount, int compressedLength) throws IOException {
+    int offset = 8 + (bufferCount * 4);
+    int total = 0;
+    for (int x = 0; x < bufferCount; x++) {
+      total += record.getInt(8 + (x * 4));
+    }
+    byte[] payload = new byte[total];
+    Inflater inflater = INFLATER.get();
+    inflater.reset();
+    inflater.setInput(record.slice(offset, compressedLength));
+    try {
+      int size = 0;
+      while (size < total && !inflater.finished()) {
+        int read = inflater.inflate(payload, size, total - size);
+        if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+        size += read;
+      }
+      if (size != total) {
+        throw new IOException("Compressed record is truncated, expected " + total + " bytes but found " + size);
+      }
+    } catch (DataFormatException e) {
+      throw new IOException("Compressed record is corrupt", e);
+    }
+    ByteBuffer[] data = new ByteBuffer[bufferCount];
+    int position = 0;
+    for (int x = 0; x < bufferCount; x++) {
+      int bufLen = record.getInt(8 + (x * 4));
+      data[x] = ByteBuffer.wrap(payload, position, bufLen).slice();
+      position += bufLen;
+    }
+    return data;
+  }
+
+  @Override
+  public void releaseMappings() {
+    mapLock.writeLock().lock();
+    try {
+      if (readMaps != null) {
+        if (leases.get() == 0) {
+          for (MappedByteBuffer map : readMaps) {
+            MappedBufferHelper.closeDirectBuffer(map);
+          }
+        }
+        readMaps = null;
+        mappedLength = 0;
+      }
+    } finally {
+      mapLock.writeLock().unlock();
+    }
+  }
+
+  static @Nullable ByteBuffer[] split(ByteBuffer record) throws IOException {
+    int len = record.getInt(0);
+    if (len <= 0) {
+      return null;
+    }
+    int bufferCount = record.getInt(4);
+    if ((bufferCount & COMPRESSED_RECORD) != 0) {
+      return inflate(record, bufferCount & BUFFER_COUNT_MASK, len - 4);
+    }
+    ByteBuffer[] data = new ByteBuffer[bufferCount];
+    int offset = 8 + (bufferCount * 4);
+    for (int x = 0; x < bufferCount; x++) {
+      int bufLen = record.getInt(8 + (x * 4));
+      data[x] = record.slice(offset, bufLen);
+      offset += bufLen;
+    }
+    return data;
   }
 
   public long length() throws IOException {
+    if (appendWindowSize > 0) {
+      return tail;
+    }
     return readChannel.size();
   }
 }
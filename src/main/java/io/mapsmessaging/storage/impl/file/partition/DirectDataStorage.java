@@ -0,0 +1,353 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl.file.partition;
+
+import com.sun.nio.file.ExtendedOpenOption;
+import io.mapsmessaging.storage.Storable;
+import io.mapsmessaging.storage.StorableFactory;
+import io.mapsmessaging.storage.impl.file.FileHelper;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Data file opened with O_DIRECT so that large stores do not push other processes out of the page cache. All I/O is in
+ * whole, aligned blocks: appends go through an aligned buffer that holds the partially filled last block and is
+ * rewritten as it fills, and reads of sealed blocks are served through a small block cache. The first block holds the
+ * header, which also records the tail since the file is always padded out to a whole block.
+ */
+public class DirectDataStorage<T extends Storable> implements DataStorage<T> {
+
+  private static final double VERSION = 2.0;
+  private static final int WRITE_BUFFER_BLOCKS = 64;
+  private static final int READ_CACHE_BLOCKS = 64;
+  private static final int CACHED_READ_BLOCKS = 4;
+
+  private final long maxPartitionSize;
+  private final StorableFactory<T> objectStorableFactory;
+  private final String fileName;
+  private final FileChannel channel;
+  private final int blockSize;
+
+  // Holds the file from bufferStart up to the tail, always starting on a block boundary
+  private ByteBuffer writeBuffer;
+  private long bufferStart;
+  private long tail;
+
+  // Blocks before bufferStart are never written again, so they can be cached without invalidation
+  private final Map<Long, ByteBuffer> readCache;
+
+  private boolean closed;
+
+  @Getter
+  private boolean validationRequired;
+
+  @Getter
+  private volatile boolean full;
+
+  public static boolean isSupported(@NotNull String directory) {
+    try {
+      Path probe = Files.createTempFile(new File(directory).toPath(), "direct", ".probe");
+      try (FileChannel test = FileChannel.open(probe, StandardOpenOption.WRITE, ExtendedOpenOption.DIRECT)) {
+        int size = (int) Files.getFileStore(probe).getBlockSize();
+        test.write(ByteBuffer.allocateDirect(size * 2).alignedSlice(size).limit(size), 0);
+        return true;
+      } finally {
+        Files.deleteIfExists(probe);
+      }
+    } catch (IOException | UnsupportedOperationException e) {
+      return false;
+    }
+  }
+
+  public DirectDataStorage(String fileName, StorableFactory<T> storableFactory, boolean sync, long maxPartitionSize) throws IOException {
+    objectStorableFactory = storableFactory;
+    this.fileName = fileName;
+    this.maxPartitionSize = maxPartitionSize;
+    File file = new File(fileName);
+    boolean exists = file.exists() && file.length() > 0;
+    OpenOption[] options;
+    if (sync) {
+      options = new OpenOption[]{StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DSYNC, ExtendedOpenOption.DIRECT};
+    } else {
+      options = new OpenOption[]{StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, ExtendedOpenOption.DIRECT};
+    }
+    channel = FileChannel.open(file.toPath(), options);
+    blockSize = (int) Files.getFileStore(file.toPath()).getBlockSize();
+    readCache = new LinkedHashMap<>(READ_CACHE_BLOCKS, 0.75f, true);
+    writeBuffer = allocate(WRITE_BUFFER_BLOCKS * blockSize);
+    if (exists) {
+      reload();
+    } else {
+      validationRequired = false;
+      tail = blockSize;
+      bufferStart = blockSize;
+    }
+    writeHeader(DataStorageImpl.OPEN_STATE);
+    full = tail > maxPartitionSize;
+    closed = false;
+  }
+
+  @Override
+  public synchronized void force() throws IOException {
+    channel.force(false);
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (!closed) {
+      closed = true;
+      writeHeader(DataStorageImpl.CLOSE_STATE);
+      channel.force(true);
+      channel.close();
+      readCache.clear();
+    }
+  }
+
+  private void reload() throws IOException {
+    ByteBuffer header = allocate(blockSize);
+    readAligned(header, 0);
+    validationRequired = header.getLong(0) != DataStorageImpl.CLOSE_STATE;
+    if (header.getLong(8) != DataStorageImpl.UNIQUE_ID) {
+      throw new IOException("Unexpected file identifier located");
+    }
+    if (Double.longBitsToDouble(header.getLong(16)) != VERSION) {
+      throw new IOException("Unexpected file version");
+    }
+    if (validationRequired) {
+      bufferStart = Long.MAX_VALUE; // nothing is buffered yet, read everything from the file
+      tail = recoverTail();
+      readCache.clear();
+    } else {
+      tail = header.getLong(24);
+    }
+    bufferStart = alignDown(tail);
+    int partial = (int) (tail - bufferStart);
+    if (partial > 0) {
+      ByteBuffer block = allocate(blockSize);
+      readAligned(block, bufferStart);
+      writeBuffer.put(block.limit(partial));
+    }
+  }
+
+  // After a crash the header tail is stale, the padding after the last record is zero so walk the record headers
+  private long recoverTail() throws IOException {
+    long size = channel.size();
+    long position = blockSize;
+    while (position + 8 <= size) {
+      ByteBuffer header = read(position, 8);
+      int len = header.getInt(0);
+      int count = header.getInt(4);
+      long next = position + 4 + (4L * count) + len;
+      if (len <= 0 || count < 0 || next > size) {
+        break;
+      }
+      position = next;
+    }
+    return position;
+  }
+
+  private void writeHeader(long state) throws IOException {
+    ByteBuffer header = allocate(blockSize);
+    header.putLong(0, state);
+    header.putLong(8, DataStorageImpl.UNIQUE_ID);
+    header.putLong(16, Double.doubleToLongBits(VERSION));
+    header.putLong(24, tail);
+    writeAligned(header, 0);
+  }
+
+  @Override
+  public String getName() {
+    return fileName;
+  }
+
+  @Override
+  public void delete() throws IOException {
+    close();
+    FileHelper.delete(fileName);
+  }
+
+  @Override
+  public IndexRecord add(@NotNull T object) throws IOException {
+    return add(object, objectStorableFactory.pack(object));
+  }
+
+  @Override
+  public synchronized IndexRecord add(@NotNull T object, @NotNull ByteBuffer[] buffers) throws IOException {
+    int len = 4;
+    for (ByteBuffer buffer : buffers) {
+      len += buffer.limit();
+    }
+    long length = 8 + (4L * buffers.length) + (len - 4);
+    ensureRoom(length);
+    int recordStart = writeBuffer.position();
+    writeBuffer.putInt(len);
+    writeBuffer.putInt(buffers.length);
+    for (ByteBuffer buffer : buffers) {
+      writeBuffer.putInt(buffer.limit());
+    }
+    for (ByteBuffer buffer : buffers) {
+      writeBuffer.put(buffer.duplicate());
+    }
+    long eof = tail;
+    tail += length;
+    writeBlocks(recordStart, writeBuffer.position());
+    full = tail > maxPartitionSize;
+    return new IndexRecord(object.getKey(), 0, eof, object.getExpiry(), (int) length);
+  }
+
+  // Drops the sealed blocks from the front of the buffer, keeping the partial last block, and grows it for large records
+  private void ensureRoom(long length) {
+    if (writeBuffer.remaining() >= length) {
+      return;
+    }
+    int keepFrom = (int) alignDown(writeBuffer.position());
+    int partial = writeBuffer.position() - keepFrom;
+    int required = (int) alignUp(partial + length);
+    ByteBuffer target = writeBuffer;
+    if (required > writeBuffer.capacity()) {
+      target = allocate(required);
+    }
+    ByteBuffer kept = writeBuffer.duplicate().position(keepFrom).limit(keepFrom + partial);
+    target.clear();
+    target.put(kept);
+    writeBuffer = target;
+    bufferStart += keepFrom;
+  }
+
+  private void writeBlocks(int from, int to) throws IOException {
+    int start = (int) alignDown(from);
+    int end = (int) alignUp(to);
+    for (int x = to; x < end; x++) {
+      writeBuffer.put(x, (byte) 0);
+    }
+    writeAligned(writeBuffer.duplicate().limit(end).position(start), bufferStart + start);
+  }
+
+  @Override
+  public synchronized @Nullable T get(IndexRecord item) throws IOException {
+    if (item == null || item.getPosition() < 0 || item.getLength() < 8) {
+      return null;
+    }
+    ByteBuffer record = read(item.getPosition(), item.getLength());
+    int len = record.getInt(0);
+    if (len <= 0) {
+      return null;
+    }
+    int bufferCount = record.getInt(4);
+    ByteBuffer[] data = new ByteBuffer[bufferCount];
+    int offset = 8 + (bufferCount * 4);
+    for (int x = 0; x < bufferCount; x++) {
+      int bufLen = record.getInt(8 + (x * 4));
+      data[x] = record.slice(offset, bufLen);
+      offset += bufLen;
+    }
+    return objectStorableFactory.unpack(data);
+  }
+
+  // Returns a heap copy of the range, the aligned buffers are reused
+  private ByteBuffer read(long position, int length) throws IOException {
+    byte[] data = new byte[length];
+    long end = position + length;
+    if (position >= bufferStart) {
+      writeBuffer.get((int) (position - bufferStart), data);
+      return ByteBuffer.wrap(data);
+    }
+    long firstBlock = alignDown(position);
+    long lastBlock = alignDown(end - 1);
+    if (end <= bufferStart && (lastBlock - firstBlock) / blockSize < CACHED_READ_BLOCKS) {
+      int copied = 0;
+      for (long block = firstBlock; block <= lastBlock; block += blockSize) {
+        ByteBuffer cached = cachedBlock(block);
+        int offset = (int) (Math.max(position, block) - block);
+        int count = (int) Math.min(blockSize - offset, length - (long) copied);
+        cached.get(offset, data, copied, count);
+        copied += count;
+      }
+      return ByteBuffer.wrap(data);
+    }
+    ByteBuffer span = allocate((int) (lastBlock - firstBlock) + blockSize);
+    readAligned(span, firstBlock);
+    span.get((int) (position - firstBlock), data);
+    return ByteBuffer.wrap(data);
+  }
+
+  private ByteBuffer cachedBlock(long block) throws IOException {
+    ByteBuffer cached = readCache.get(block);
+    if (cached == null) {
+      if (readCache.size() >= READ_CACHE_BLOCKS) {
+        Map.Entry<Long, ByteBuffer> eldest = readCache.entrySet().iterator().next();
+        cached = eldest.getValue();
+        readCache.remove(eldest.getKey());
+      } else {
+        cached = allocate(blockSize);
+      }
+      cached.clear();
+      readAligned(cached, block);
+      readCache.put(block, cached);
+    }
+    return cached;
+  }
+
+  private void readAligned(ByteBuffer buffer, long position) throws IOException {
+    buffer.clear();
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        break; // past the end of the file, the rest of the block is padding
+      }
+    }
+    buffer.clear();
+  }
+
+  private void writeAligned(ByteBuffer buffer, long position) throws IOException {
+    long offset = position - buffer.position();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer, offset + buffer.position());
+    }
+  }
+
+  private ByteBuffer allocate(int size) {
+    return ByteBuffer.allocateDirect(size + blockSize).alignedSlice(blockSize).limit(size).slice();
+  }
+
+  private long alignDown(long value) {
+    return value - (value % blockSize);
+  }
+
+  private long alignUp(long value) {
+    return alignDown(value + blockSize - 1);
+  }
+
+  @Override
+  public long length() {
+    return tail;
+  }
+}
@@ -20,7 +20,6 @@
 package io.mapsmessaging.storage.impl.file.partition;
 
 import io.mapsmessaging.storage.impl.file.tasks.MemoryMapLoadTask;
-import io.mapsmessaging.utilities.collections.MappedBufferHelper;
 import io.mapsmessaging.utilities.collections.NaturalOrderedLongList;
 import lombok.Getter;
 import lombok.ToString;
@@ -29,11 +28,11 @@ import org.jetbrains.annotations.Nullable;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
-import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
-import java.nio.channels.FileChannel.MapMode;
 import java.util.*;
+import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.LockSupport;
@@ -57,10 +56,23 @@ public class IndexManager implements Closeable {
   private final FileChannel channel;
   private final long position;
   private final long localEnd;
+  @Getter
+  private final IndexRecordFormat format;
+  private final int windowSlots;
+  private final int maxWindows;
 
   private final LongAdder counter;
   private final LongAdder emptySpace;
-  private MappedByteBuffer index;
+  // One bit per slot, set while the slot holds a live record, so key enumeration and lookups avoid the mapping
+  private final BitSet liveSlots;
+  private volatile IndexMap index;
+
+  // Sparse indexes have a fixed number of slots covering an open key range, keys are placed through the key table
+  @Getter
+  private final int capacity;
+  private final boolean sparse;
+  private SparseKeyTable keyTable;
+  private final NavigableSet<Long> liveKeys;
 
   private volatile long maxKey;
   private volatile boolean closed;
@@ -70,36 +82,67 @@ public class IndexManager implements Closeable {
 
 
   public IndexManager(FileChannel channel) throws IOException {
+    this(channel, StandardIndexRecordFormat.INSTANCE, 0, 0);
+  }
+
+  public IndexManager(FileChannel channel, IndexRecordFormat format, int windowSlots, int maxWindows) throws IOException {
+    this(channel, format, windowSlots, maxWindows, 0);
+  }
+
+  public IndexManager(FileChannel channel, IndexRecordFormat format, int windowSlots, int maxWindows, int sparseCapacity) throws IOException {
     loaded = new AtomicBoolean(false);
     this.channel = channel;
+    this.format = format;
+    this.windowSlots = windowSlots;
+    this.maxWindows = maxWindows;
     position = channel.position();
     ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
     channel.read(header);
     header.flip();
     start = header.getLong();
     end = header.getLong();
-    localEnd = end;
+    localEnd = sparseCapacity > 0 ? Long.MAX_VALUE : end;
+    sparse = sparseCapacity > 0;
+    capacity = sparse ? sparseCapacity : (int) ((end - start) + 1);
+    liveKeys = sparse ? new ConcurrentSkipListSet<>() : null;
 
-    int totalSize = (int) ((end - start) + 1) * IndexRecord.HEADER_SIZE;
+    long totalSize = capacity * (long) format.getSlotSize();
     closed = false;
     counter = new LongAdder();
     emptySpace = new LongAdder();
+    liveSlots = new BitSet(capacity);
     expiryIndex = new NaturalOrderedLongList();
     maxKey = 0;
     paused = false;
-    index = channel.map(MapMode.READ_WRITE, position + HEADER_SIZE, totalSize);
+    index = IndexMap.map(channel, position + HEADER_SIZE, totalSize, format.getSlotSize(), windowSlots, maxWindows);
+    mapKeyTable(channel);
   }
 
   public IndexManager(long start, int itemSize, FileChannel channel) throws IOException {
+    this(start, itemSize, channel, StandardIndexRecordFormat.INSTANCE, 0, 0);
+  }
+
+  public IndexManager(long start, int itemSize, FileChannel channel, IndexRecordFormat format, int windowSlots, int maxWindows) throws IOException {
+    this(start, itemSize, channel, format, windowSlots, maxWindows, false);
+  }
+
+  public IndexManager(long start, int itemSize, FileChannel channel, IndexRecordFormat format, int windowSlots, int maxWindows, boolean sparse) throws IOException {
     loaded = new AtomicBoolean(false);
     this.channel = channel;
+    this.format = format;
+    this.windowSlots = windowSlots;
+    this.maxWindows = maxWindows;
     position = channel.position();
     this.start = start;
-    end = (start + itemSize)-1;
+    this.sparse = sparse;
+    capacity = itemSize;
+    end = sparse ? Long.MAX_VALUE : (start + itemSize) - 1;
+    liveKeys = sparse ? new ConcurrentSkipListSet<>() : null;
 
     localEnd = end;
     counter = new LongAdder();
     emptySpace = new LongAdder();
+    liveSlots = new BitSet(itemSize);
 
     ByteBuffer header = ByteBuffer.allocate(16);
     header.putLong(start);
@@ -107,7 +150,10 @@ public class IndexManager implements Closeable {
     header.flip();
     channel.write(header);
     header.flip();
-    int totalSize = itemSize * IndexRecord.HEADER_SIZE;
+    long totalSize = itemSize * (long) format.getSlotSize();
+    if (sparse) {
+      totalSize += itemSize * (long) SparseKeyTable.ENTRY_SIZE;
+    }
     // This block basically moves to the end of the file -1
     // and writes 1 byte. For a sparse file it will preallocate the file and zero fill for us at no cost
     // for file systems with NO sparse support it will be zero filled and will take some time
@@ -117,7 +163,29 @@ public class IndexManager implements Closeable {
     channel.position(position); // Move back
     expiryIndex = new NaturalOrderedLongList();
     closed = false;
-    index = channel.map(MapMode.READ_WRITE, position + HEADER_SIZE, totalSize);
+    index = IndexMap.map(channel, position + HEADER_SIZE, itemSize * (long) format.getSlotSize(), format.getSlotSize(), windowSlots, maxWindows);
+    mapKeyTable(channel);
+  }
+
+  private void mapKeyTable(FileChannel channel) throws IOException {
+    if (sparse) {
+      long tablePosition = position + HEADER_SIZE + (capacity * (long) format.getSlotSize());
+      keyTable = new SparseKeyTable(IndexMap.map(channel, tablePosition, capacity * (long) SparseKeyTable.ENTRY_SIZE, SparseKeyTable.ENTRY_SIZE), capacity);
+    }
+  }
+
+  public boolean isSparse() {
+    return sparse;
+  }
+
+  // A sparse index closes its key range once most slots are used, the spare slots absorb keys that arrive late
+  public boolean isFull() {
+    return sparse && keyTable.getUsed() >= capacity - (capacity / 4);
+  }
+
+  public boolean hasRoom(long key) {
+    waitForLoad();
+    return !sparse || keyTable.hasRoom(key);
   }
 
   @Override
@@ -126,10 +194,24 @@ public class IndexManager implements Closeable {
       waitForLoad();
       closed = true;
       if(index != null) {
-        index.force();
-        MappedBufferHelper.closeDirectBuffer(index);
+        IndexMap map = index;
         index = null;
+        map.close();
       }
+      if (keyTable != null) {
+        keyTable.close();
+      }
+    }
+  }
+
+  public void force() {
+    waitForLoad();
+    IndexMap map = index;
+    if (map != null) {
+      map.force();
+    }
+    if (keyTable != null) {
+      keyTable.force();
     }
   }
 
@@ -137,9 +219,12 @@ public class IndexManager implements Closeable {
     if (!paused) {
       paused = true;
       waitForLoad();
-      index.force();
-      MappedBufferHelper.closeDirectBuffer(index);
-      index = null; // ensure NPE rather than a full-blown JVM crash!!!
+      IndexMap map = index;
+      index = null;
+      map.close(); // waits for readers still using the mapping
+      if (keyTable != null) {
+        keyTable.close();
+      }
     }
   }
 
@@ -147,9 +232,13 @@ public class IndexManager implements Closeable {
     if (paused) {
       paused = false;
       waitForLoad();
-      int totalSize = (int) ((end - start) + 1) * IndexRecord.HEADER_SIZE;
-      index = channel.map(MapMode.READ_WRITE, position + HEADER_SIZE, totalSize);
-      index.load(); // Ensure the file contents are loaded
+      long totalSize = capacity * (long) format.getSlotSize();
+      index = IndexMap.map(channel, position + HEADER_SIZE, totalSize, format.getSlotSize(), windowSlots, maxWindows);
+      preload();
+      mapKeyTable(channel);
+      if (keyTable != null) {
+        keyTable.load();
+      }
     }
   }
 
@@ -179,6 +268,9 @@ public class IndexManager implements Closeable {
 
   public void setEnd(long key) throws IOException {
     waitForLoad();
+    if (sparse && !liveKeys.isEmpty()) {
+      key = Math.max(key, liveKeys.last()); // keys are not placed in order, so never cut off one already held
+    }
     end = key;
     channel.position(position + 8);
     ByteBuffer header = ByteBuffer.allocate(8);
@@ -194,114 +286,287 @@ public class IndexManager implements Closeable {
     return (int) counter.sum();
   }
 
+  public boolean isEmpty() {
+    waitForLoad();
+    synchronized (liveSlots) {
+      return liveSlots.isEmpty();
+    }
+  }
+
   public long emptySpace() {
     waitForLoad();
     return (int) emptySpace.sum();
   }
 
 
-  public boolean add(long key, @NotNull IndexRecord item) {
+  public boolean add(long key, @NotNull IndexRecord item) throws IOException {
     waitForLoad();
-    if (key >= start && key <= localEnd && !closed && key <= end) {
+    int slot = claimSlot(key);
+    if (slot >= 0) {
       if (item.getExpiry() > 0) {
         expiryIndex.add(key);
       }
-      setMapPosition(key);
-      item.update(index);
+      format.write(item, map(), slotOffset(slot));
+      markLive(key, slot);
       counter.increment();
       return true;
     }
     return false;
   }
 
+  /**
+   * Stores the packed record within the index slot when the format supports it and the record fits, returns null if
+   * the record must be written to the data file instead
+   */
+  public @Nullable IndexRecord addInline(long key, long expiry, ByteBuffer[] buffers) {
+    waitForLoad();
+    if (inRange(key) && format instanceof InlineIndexRecordFormat) {
+      int slot = claimSlot(key);
+      if (slot < 0) {
+        return null;
+      }
+      IndexRecord item = ((InlineIndexRecordFormat) format).writeInline(key, expiry, buffers, map(), slotOffset(slot));
+      if (item != null) {
+        if (expiry > 0) {
+          expiryIndex.add(key);
+        }
+        markLive(key, slot);
+        counter.increment();
+      }
+      return item;
+    }
+    return null;
+  }
+
+  public @Nullable ByteBuffer[] readInline(IndexRecord item) {
+    waitForLoad();
+    int slot = slotOf(item.getKey());
+    if (slot >= 0 && format instanceof InlineIndexRecordFormat && item.getLocationId() == IndexRecord.INLINE_LOCATION) {
+      return ((InlineIndexRecordFormat) format).readInline(map(), slotOffset(slot), item.getLength());
+    }
+    return null;
+  }
+
   public @Nullable IndexRecord get(long key) {
     waitForLoad();
-    IndexRecord item = null;
-    if (key >= start && key <= localEnd && !closed && key <= end) {
-      setMapPosition(key);
-      item = new IndexRecord(key, index);
+    int slot = slotOf(key);
+    if (slot >= 0) {
+      long offset = slotOffset(slot);
+      if (format.readPosition(map(), offset) > 0) {
+        return format.read(key, map(), offset);
+      }
     }
-    return item;
+    return null;
   }
 
   public boolean contains(long key) {
     waitForLoad();
-    if (key >= start && key <= localEnd && !closed && key <= end) {
-      setMapPosition(key);
-      IndexRecord item = new IndexRecord(key, index);
-      return item.getPosition() != 0;
+    int slot = slotOf(key);
+    if (slot >= 0) {
+      synchronized (liveSlots) {
+        return liveSlots.get(slot);
+      }
     }
     return false;
   }
 
+  /**
+   * Returns the next live key at or after the supplied key, or -1 if there are no more live keys in this index
+   */
+  public long nextLiveKey(long key) {
+    waitForLoad();
+    long from = Math.max(key, start);
+    if (from > end || closed) {
+      return -1;
+    }
+    if (sparse) {
+      Long next = liveKeys.ceiling(from);
+      return next == null || next > end ? -1 : next;
+    }
+    int next;
+    synchronized (liveSlots) {
+      next = liveSlots.nextSetBit((int) (from - start));
+    }
+    if (next < 0 || start + next > end) {
+      return -1;
+    }
+    return start + next;
+  }
+
+  //<editor-fold desc="Absolute accessors, these read directly from the mapping with no allocation and do not move the buffer position">
+  public long positionOf(long key) {
+    waitForLoad();
+    int slot = slotOf(key);
+    if (slot >= 0) {
+      return format.readPosition(map(), slotOffset(slot));
+    }
+    return 0;
+  }
+
+  public long expiryOf(long key) {
+    waitForLoad();
+    int slot = slotOf(key);
+    if (slot >= 0) {
+      return format.readExpiry(map(), slotOffset(slot));
+    }
+    return 0;
+  }
+
+  public int lengthOf(long key) {
+    waitForLoad();
+    int slot = slotOf(key);
+    if (slot >= 0) {
+      return format.readLength(map(), slotOffset(slot));
+    }
+    return 0;
+  }
+
+  public boolean isLive(long key) {
+    return positionOf(key) > 0;
+  }
+  //</editor-fold>
+
   public boolean delete(long key) {
     waitForLoad();
     return delete(key, false);
   }
 
   boolean delete(long key, boolean override) {
-    if (key >= start && key <= localEnd && !closed && key <= end) {
-      setMapPosition(key, override);
-      IndexRecord item = new IndexRecord(key, index);
-      if (item.getPosition() > 0) {
+    int slot = slotOf(key);
+    if (slot >= 0) {
+      long offset = slotOffset(slot);
+      if (format.readPosition(map(), offset) > 0) {
+        // Inline records free no space in the data file
+        int length = format.isInline(map(), offset) ? 0 : format.readLength(map(), offset);
+        synchronized (liveSlots) {
+          liveSlots.clear(slot);
+        }
+        if (sparse) {
+          liveKeys.remove(key);
+        }
         expiryIndex.remove(key);
         counter.decrement();
-        emptySpace.add(item.getLength());
-        setMapPosition(key, true);
+        emptySpace.add(length);
         // Mark it as deleted, so on reload we can get the total length and key
-        IndexRecord indexRecord = new IndexRecord(key, 0, 0, 0, item.getLength());
-        indexRecord.update(index);
+        IndexRecord indexRecord = new IndexRecord(key, 0, 0, 0, length);
+        try {
+          format.write(indexRecord, map(), offset);
+        } catch (IOException e) {
+          // A deleted marker only carries a length that was already accepted by the format
+          throw new UncheckedIOException(e);
+        }
         return true;
       }
     }
     return false;
   }
-  void setMapPosition(long key) {
-    setMapPosition(key, false);
+
+  /**
+   * Copies every used slot, live or deleted, into the target index which may be using a different record format.
+   * Inline records the target can not hold inline are handed to the relocator to be written to the data file.
+   */
+  void copyTo(IndexManager target, InlineRelocator relocator) throws IOException {
+    waitForLoad();
+    for (int slot = 0; slot < capacity; slot++) {
+      long key = keyOf(slot);
+      long offset = slotOffset(slot);
+      if (key >= 0 && key <= end && (format.readPosition(map(), offset) != 0 || format.readLength(map(), offset) != 0)) {
+        IndexRecord item = format.read(key, map(), offset);
+        if (format.isInline(map(), offset)) {
+          copyInline(target, item, relocator);
+        } else {
+          target.format.write(item, target.map(), target.slotOffset(target.claimSlot(key)));
+        }
+      }
+    }
+  }
+
+  private void copyInline(IndexManager target, IndexRecord item, InlineRelocator relocator) throws IOException {
+    ByteBuffer[] buffers = readInline(item);
+    long targetOffset = target.slotOffset(target.claimSlot(item.getKey()));
+    if (target.format instanceof InlineIndexRecordFormat &&
+        ((InlineIndexRecordFormat) target.format).writeInline(item.getKey(), item.getExpiry(), buffers, target.map(), targetOffset) != null) {
+      return;
+    }
+    target.format.write(relocator.relocate(item, buffers), target.map(), targetOffset);
+  }
+
+  public interface InlineRelocator {
+    IndexRecord relocate(IndexRecord item, ByteBuffer[] buffers) throws IOException;
+  }
+
+  private boolean inRange(long key) {
+    return key >= start && key <= localEnd && !closed && key <= end;
+  }
+
+  // Returns the slot holding the key, or -1 if the key has no slot in this index
+  private int slotOf(long key) {
+    if (!inRange(key)) {
+      return -1;
+    }
+    return sparse ? keyTable.find(key) : (int) (key - start);
+  }
+
+  private int claimSlot(long key) {
+    if (!inRange(key)) {
+      return -1;
+    }
+    return sparse ? keyTable.insert(key) : (int) (key - start);
+  }
+
+  private long keyOf(int slot) {
+    return sparse ? keyTable.keyAt(slot) : start + slot;
+  }
+
+  private void markLive(long key, int slot) {
+    synchronized (liveSlots) {
+      liveSlots.set(slot);
+    }
+    if (sparse) {
+      liveKeys.add(key);
+    }
   }
 
-  void setMapPosition(long key, boolean override) {
-    if(!override) waitForLoad();
-    int adjusted = (int) (key - start);
-    int pos = adjusted * IndexRecord.HEADER_SIZE;
-    index.position(pos);
+  private long slotOffset(int slot) {
+    return slot * (long) format.getSlotSize();
   }
 
   List<Long> walkIndex() {
     List<Long> expired = new ArrayList<>();
-    index.position(0);
-    int size = (int) (end - start) + 1;
+    int size = sparse ? capacity : (int) (end - start) + 1;
     long now = System.currentTimeMillis();
     for (int x = 0; x < size; x++) {
-      IndexRecord indexRecord = new IndexRecord(start+x, index);
-      validateIndexRecord(x, indexRecord, now, expired);
+      long key = keyOf(x);
+      if (key >= 0) {
+        validateIndexRecord(key, x, slotOffset(x), now, expired);
+      }
     }
     return expired;
   }
 
-  private void validateIndexRecord(int index, IndexRecord indexRecord, long now, List<Long> expired) {
-    long positionIndex = indexRecord.getPosition();
+  private void validateIndexRecord(long key, int slot, long offset, long now, List<Long> expired) {
+    long positionIndex = format.readPosition(map(), offset);
     if (positionIndex != 0) {
-      maxKey = index;
+      maxKey = Math.max(maxKey, key - start);
       if (positionIndex > 0) {
         counter.increment();
-        checkExpiryDetails(indexRecord, now, expired);
+        markLive(key, slot);
+        checkExpiryDetails(key, format.readExpiry(map(), offset), now, expired);
       }
     } else{
-      long indexLength = indexRecord.getLength();
+      long indexLength = format.readLength(map(), offset);
       if (indexLength > 0) {
         emptySpace.add(indexLength);
       }
     }
   }
 
-  private void checkExpiryDetails(IndexRecord indexRecord, long now, List<Long> expired) {
-    long expiry = indexRecord.getExpiry();
+  private void checkExpiryDetails(long key, long expiry, long now, List<Long> expired) {
     if (expiry != 0) {
       if (expiry > now) {
-        expiryIndex.add(indexRecord.getKey());
+        expiryIndex.add(key);
       } else {
-        expired.add(indexRecord.getKey());
+        expired.add(key);
       }
     }
   }
@@ -309,11 +574,11 @@ public class IndexManager implements Closeable {
   public List<Long> keySet() {
     waitForLoad();
     List<Long> keys = new NaturalOrderedLongList();
-    getIterator().forEachRemaining(indexRecord -> {
-      if (indexRecord != null && indexRecord.getLength() != 0 && indexRecord.getPosition() > 0) {
-        keys.add(indexRecord.getKey());
-      }
-    });
+    long key = nextLiveKey(start);
+    while (key >= 0) {
+      keys.add(key);
+      key = nextLiveKey(key + 1);
+    }
     return keys;
   }
 
@@ -329,7 +594,10 @@ public class IndexManager implements Closeable {
 
   public void loadMap(boolean walkIndex){
     try {
-      index.load(); // Ensure the file contents are loaded
+      preload();
+      if (keyTable != null) {
+        keyTable.load();
+      }
       if(walkIndex) {
         List<Long> expired = walkIndex();
         for (Long key : expired) {
@@ -341,6 +609,22 @@ public class IndexManager implements Closeable {
     }
   }
 
+  // The mapping is dropped while paused, access then fails rather than touching an unmapped buffer
+  private IndexMap map() {
+    IndexMap map = index;
+    if (map == null) {
+      throw new IllegalStateException("Index has been paused or closed");
+    }
+    return map;
+  }
+
+  // Inline slots are mostly payload, so they are left to fault in as they are used rather than loaded up front
+  private void preload() {
+    if (format.getInlineCapacity() == 0) {
+      map().load(); // Ensure the file contents are loaded
+    }
+  }
+
   public MemoryMapLoadTask queueTask(boolean walkIndex) {
     return new MemoryMapLoadTask(this, walkIndex);
   }
@@ -364,9 +648,13 @@ public class IndexManager implements Closeable {
 
     private IndexRecord locateNext() {
       IndexRecord item = null;
-      while (key <= end && item == null) {
-        item = get(key);
-        key++;
+      while (item == null) {
+        long test = nextLiveKey(key);
+        if (test < 0) {
+          return null;
+        }
+        key = test + 1;
+        item = get(test);
       }
       return item;
     }
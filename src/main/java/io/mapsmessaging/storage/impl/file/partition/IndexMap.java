@@ -0,0 +1,68 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl.file.partition;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Abstraction over the memory mapped region holding the index slots. All access is absolute, by byte offset from the
+ * start of the first slot, so implementations can be shared between threads without any positional state.
+ */
+public interface IndexMap extends Closeable {
+
+  long getLong(long offset);
+
+  void putLong(long offset, long value);
+
+  int getInt(long offset);
+
+  void putInt(long offset, int value);
+
+  // Bulk access never crosses a slot boundary, so implementations can resolve the region from the starting offset
+  void get(long offset, byte[] destination);
+
+  void put(long offset, ByteBuffer source, int length);
+
+  long size();
+
+  void load();
+
+  void force();
+
+  @Override
+  void close();
+
+  static IndexMap map(FileChannel channel, long position, long size, int slotSize, int windowSlots, int maxWindows) throws IOException {
+    if (windowSlots > 0 && windowSlots * (long) slotSize < size) {
+      return new WindowedIndexMap(channel, position, size, slotSize, windowSlots, maxWindows);
+    }
+    return map(channel, position, size, slotSize);
+  }
+
+  static IndexMap map(FileChannel channel, long position, long size, int slotSize) throws IOException {
+    if (size <= MappedIndexMap.MAX_SIZE) {
+      return new MappedIndexMap(channel, position, size);
+    }
+    return new SegmentedIndexMap(channel, position, size, slotSize, SegmentedIndexMap.segmentSlots(slotSize));
+  }
+}
@@ -29,6 +29,14 @@ public class IndexRecord {
 
   public static final int HEADER_SIZE = 24;
 
+  // Location id used when the record bytes are held within the index slot rather than the data file
+  public static final int INLINE_LOCATION = 1;
+
+  // Offsets of the fields within a slot, used for absolute reads straight from the index mapping
+  static final int POSITION_OFFSET = 0;
+  static final int EXPIRY_OFFSET = 8;
+  static final int DETAILS_OFFSET = 16;
+
   @Getter
   private final long expiry;     // Expiry of this entry in milliseconds
 
@@ -36,7 +44,7 @@ public class IndexRecord {
   private final long position;   // Position within the log file or the index file
 
   @Getter
-  private final int locationId; // If 0 then located within the index file, else is the unique ID of the data file
+  private final int locationId; // 0 when located within the data file, INLINE_LOCATION when held within the index slot
 
   @Getter
   private final int length;     // The number of bytes that the record consumes
@@ -72,6 +80,68 @@ public class IndexRecord {
     length = (int) (tmp2 & INTEGER_MASK);
   }
 
+  public IndexRecord(long key, ByteBuffer buffer, int offset) {
+    this.key = key;
+    position = buffer.getLong(offset + POSITION_OFFSET);
+    expiry = buffer.getLong(offset + EXPIRY_OFFSET);
+    long tmp2 = buffer.getLong(offset + DETAILS_OFFSET);
+
+    locationId = (int) (tmp2 >> 32);
+    length = (int) (tmp2 & INTEGER_MASK);
+  }
+
+  public IndexRecord(long key, IndexMap map, long offset) {
+    this.key = key;
+    position = map.getLong(offset + POSITION_OFFSET);
+    expiry = map.getLong(offset + EXPIRY_OFFSET);
+    long tmp2 = map.getLong(offset + DETAILS_OFFSET);
+
+    locationId = (int) (tmp2 >> 32);
+    length = (int) (tmp2 & INTEGER_MASK);
+  }
+
+  public static long readPosition(IndexMap map, long offset) {
+    return map.getLong(offset + POSITION_OFFSET);
+  }
+
+  public static int readLocationId(IndexMap map, long offset) {
+    return (int) (map.getLong(offset + DETAILS_OFFSET) >> 32);
+  }
+
+  public static long readExpiry(IndexMap map, long offset) {
+    return map.getLong(offset + EXPIRY_OFFSET);
+  }
+
+  public static int readLength(IndexMap map, long offset) {
+    return (int) (map.getLong(offset + DETAILS_OFFSET) & INTEGER_MASK);
+  }
+
+  public void update(IndexMap map, long offset) {
+    long tmp2 = ((locationId & INTEGER_MASK) << 32) | (length & INTEGER_MASK);
+    map.putLong(offset + POSITION_OFFSET, position);
+    map.putLong(offset + EXPIRY_OFFSET, expiry);
+    map.putLong(offset + DETAILS_OFFSET, tmp2);
+  }
+
+  public static long readPosition(ByteBuffer buffer, int offset) {
+    return buffer.getLong(offset + POSITION_OFFSET);
+  }
+
+  public static long readExpiry(ByteBuffer buffer, int offset) {
+    return buffer.getLong(offset + EXPIRY_OFFSET);
+  }
+
+  public static int readLength(ByteBuffer buffer, int offset) {
+    return (int) (buffer.getLong(offset + DETAILS_OFFSET) & INTEGER_MASK);
+  }
+
+  public void update(ByteBuffer buffer, int offset) {
+    long tmp2 = ((locationId & INTEGER_MASK) << 32) | (length & INTEGER_MASK);
+    buffer.putLong(offset + POSITION_OFFSET, position);
+    buffer.putLong(offset + EXPIRY_OFFSET, expiry);
+    buffer.putLong(offset + DETAILS_OFFSET, tmp2);
+  }
+
   public void update(ByteBuffer buffer) {
     long tmp2 = ((locationId & INTEGER_MASK) << 32) | (length & INTEGER_MASK);
     buffer.putLong(position);
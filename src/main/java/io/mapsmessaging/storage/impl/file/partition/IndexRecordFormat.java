@@ -0,0 +1,78 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl.file.partition;
+
+import java.io.IOException;
+
+/**
+ * Describes how an index slot is laid out within the index map. The format in use is recorded in the index file
+ * header so that a file is always read back with the layout it was written with.
+ */
+public interface IndexRecordFormat {
+
+  int STANDARD = 0;
+  int COMPACT = 1;
+  int INLINE = 2;
+
+  int getId();
+
+  int getSlotSize();
+
+  long readPosition(IndexMap map, long offset);
+
+  long readExpiry(IndexMap map, long offset);
+
+  int readLength(IndexMap map, long offset);
+
+  IndexRecord read(long key, IndexMap map, long offset);
+
+  void write(IndexRecord indexRecord, IndexMap map, long offset) throws IOException;
+
+  default int getInlineCapacity() {
+    return 0;
+  }
+
+  default boolean isInline(IndexMap map, long offset) {
+    return false;
+  }
+
+  static IndexRecordFormat create(int id, long baseTime, int inlineSize) throws IOException {
+    switch (id) {
+      case STANDARD:
+        return StandardIndexRecordFormat.INSTANCE;
+      case COMPACT:
+        return new CompactIndexRecordFormat(baseTime);
+      case INLINE:
+        return new InlineIndexRecordFormat(inlineSize);
+      default:
+        throw new IOException("Unknown index record format " + id);
+    }
+  }
+
+  static int getId(String name) throws IOException {
+    if (name == null || name.isEmpty() || name.equalsIgnoreCase("standard")) {
+      return STANDARD;
+    }
+    if (name.equalsIgnoreCase("compact")) {
+      return COMPACT;
+    }
+    throw new IOException("Unknown index format " + name + ", expected standard or compact");
+  }
+}
@@ -21,10 +21,15 @@ package io.mapsmessaging.storage.impl.file.partition;
 
 import io.mapsmessaging.logging.Logger;
 import io.mapsmessaging.logging.LoggerFactory;
+import io.mapsmessaging.storage.RawRecord;
 import io.mapsmessaging.storage.Storable;
+import io.mapsmessaging.storage.StorableFactory;
+import io.mapsmessaging.storage.Storage;
 import io.mapsmessaging.storage.impl.file.TaskQueue;
 import io.mapsmessaging.storage.impl.file.config.PartitionStorageConfig;
 import io.mapsmessaging.storage.impl.file.tasks.CompactIndexTask;
+import io.mapsmessaging.storage.impl.file.tasks.FileTask;
+import io.mapsmessaging.storage.impl.file.tasks.FlushAppendBufferTask;
 import lombok.Getter;
 import lombok.ToString;
 import org.jetbrains.annotations.NotNull;
@@ -37,10 +42,10 @@ import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
-import java.util.Queue;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static io.mapsmessaging.storage.impl.file.partition.PartitionDataManagerFactory.getInstance;
 import static io.mapsmessaging.storage.logging.StorageLogMessages.*;
@@ -53,13 +58,28 @@ public class IndexStorage<T extends Storable> {
   private static final int HEADER_SIZE = 32;
 
   private static final double VERSION = 1.0;
+  private static final double EXTENDED_VERSION = 2.0; // Header is followed by the record format extension
+  private static final int EXTENDED_HEADER_SIZE = 32;
   private static final long UNIQUE_ID = 0xf00d0000d00f0000L;
   private static final long OPEN_STATE = 0xEFFFFFFFFFFFFFFFL;
   private static final long CLOSE_STATE = 0x0000000000000000L;
+  private static final long SPARSE_INDEX = 0x1L; // Extended header flag, the index holds a key table after the slots
 
   private final Logger logger = LoggerFactory.getLogger(IndexStorage.class);
   private int itemCount;
   private final boolean sync;
+  private final int indexWindowSize;
+  private final int indexWindowCount;
+  private final int indexFormat;
+  private final int inlineThreshold;
+  private final boolean sparseIndex;
+  private final StorableFactory<T> storableFactory;
+  private final long appendLingerTime;
+  // Records sitting in the data storage append buffer, they are published to the index once flushed
+  private final Map<Long, IndexRecord> pendingRecords;
+  private final AtomicBoolean flushScheduled;
+  private IndexRecordFormat recordFormat;
+  private boolean sparse;
   private final String fileName;
   private final TaskQueue scheduler;
   private final DeferredDataStorage<T> dataStorage;
@@ -78,8 +98,24 @@ public class IndexStorage<T extends Storable> {
   private boolean requiresValidation;
 
   public IndexStorage(PartitionStorageConfig config, String name, long start, TaskQueue taskScheduler) throws IOException {
+    this(config, name, name + "_index", start, taskScheduler);
+  }
+
+  public IndexStorage(PartitionStorageConfig config, String name, String dataName, long start, TaskQueue taskScheduler) throws IOException {
     this.itemCount = config.getItemCount();
     this.sync = config.isSync();
+    this.indexWindowSize = config.getIndexWindowSize();
+    this.indexWindowCount = config.getIndexWindowCount();
+    this.inlineThreshold = Math.min(config.getInlineThreshold(), InlineIndexRecordFormat.MAX_INLINE_SIZE);
+    this.sparseIndex = config.isSparseIndex();
+    this.indexFormat = inlineThreshold > 0 ? IndexRecordFormat.INLINE : IndexRecordFormat.getId(config.getIndexFormat());
+    if (inlineThreshold > 0 && IndexRecordFormat.getId(config.getIndexFormat()) != IndexRecordFormat.STANDARD) {
+      throw new IOException("Inline records require the standard index format");
+    }
+    this.storableFactory = config.getStorableFactory();
+    this.appendLingerTime = config.getAppendLingerTime();
+    pendingRecords = new LinkedHashMap<>();
+    flushScheduled = new AtomicBoolean(false);
 
     this.fileName = name + "_index";
     File file = new File(this.fileName);
@@ -97,7 +133,7 @@ public class IndexStorage<T extends Storable> {
       indexManager = initialise(start);
     }
     PartitionStorageConfig partitionConfig = new PartitionStorageConfig(config);
-    partitionConfig.setFileName(this.fileName);
+    partitionConfig.setFileName(dataName);
     PartitionDataManagerFactory<T> partitionDataManagerFactory = getInstance();
     dataStorage = partitionDataManagerFactory.create(partitionConfig);
     if (dataStorage.isValidationRequired() || requiresValidation) {
@@ -111,6 +147,7 @@ public class IndexStorage<T extends Storable> {
 
   public void close() throws IOException {
     if (!closed) {
+      flush();
       closed = true;
       ByteBuffer header = ByteBuffer.allocate(8);
       header.putLong(CLOSE_STATE);
@@ -127,6 +164,9 @@ public class IndexStorage<T extends Storable> {
   public void delete() throws IOException {
     closed = true;
     deleted = true;
+    synchronized (pendingRecords) {
+      pendingRecords.clear();
+    }
     indexManager.close();
     if(!paused){
       mapChannel.close();
@@ -138,6 +178,7 @@ public class IndexStorage<T extends Storable> {
 
   public void pause() throws IOException {
     if (!paused) {
+      flush();
       paused = true;
       indexManager.pause();
       mapChannel.force(true);
@@ -167,9 +208,16 @@ public class IndexStorage<T extends Storable> {
   }
 
   public void archive() throws IOException {
+    flush();
     dataStorage.archive();
   }
 
+  public void releaseMappings() {
+    if (!paused) {
+      dataStorage.releaseMappings();
+    }
+  }
+
   public void restore() throws IOException{
     if(dataStorage.isArchived()) {
       dataStorage.restore();
@@ -184,20 +232,34 @@ public class IndexStorage<T extends Storable> {
   }
 
   private IndexManager initialise(long start) throws IOException {
-    ByteBuffer headerValidation = ByteBuffer.allocate(HEADER_SIZE);
-    headerValidation.putLong(OPEN_STATE);
+    recordFormat = IndexRecordFormat.create(indexFormat, System.currentTimeMillis(), inlineThreshold);
+    sparse = sparseIndex;
+    writeHeader(mapChannel, recordFormat, OPEN_STATE);
+    IndexManager idx = new IndexManager(start, itemCount, mapChannel, recordFormat, indexWindowSize, indexWindowCount, sparse);
+    scheduler.scheduleNow(idx.queueTask(false));
+    mapChannel.force(false);
+    requiresValidation = false;
+    return idx;
+  }
+
+  private void writeHeader(FileChannel channel, IndexRecordFormat format, long state) throws IOException {
+    boolean extended = format.getId() != IndexRecordFormat.STANDARD || sparse;
+    int size = extended ? HEADER_SIZE + EXTENDED_HEADER_SIZE : HEADER_SIZE;
+    ByteBuffer headerValidation = ByteBuffer.allocate(size);
+    headerValidation.putLong(state);
     headerValidation.putLong(UNIQUE_ID);
-    headerValidation.putLong(Double.doubleToLongBits(VERSION));
+    headerValidation.putLong(Double.doubleToLongBits(extended ? EXTENDED_VERSION : VERSION));
     headerValidation.putLong(itemCount);
+    if (extended) {
+      headerValidation.putLong(format.getId());
+      headerValidation.putLong(format instanceof CompactIndexRecordFormat ? ((CompactIndexRecordFormat) format).getBaseTime() : 0);
+      headerValidation.putLong(format.getInlineCapacity());
+      headerValidation.putLong(sparse ? SPARSE_INDEX : 0);
+    }
     headerValidation.flip();
-    if(mapChannel.write(headerValidation) != HEADER_SIZE) {
+    if(channel.write(headerValidation) != size) {
       throw new IOException("Failed to write header");
     }
-    IndexManager idx = new IndexManager(start, itemCount, mapChannel);
-    scheduler.scheduleNow(idx.queueTask(false));
-    mapChannel.force(false);
-    requiresValidation = false;
-    return idx;
   }
 
   private IndexManager reload() throws IOException {
@@ -212,13 +274,28 @@ public class IndexStorage<T extends Storable> {
     if (headerValidation.getLong() != UNIQUE_ID) {
       throw new IOException("Unexpected file identifier located");
     }
-    if (Double.longBitsToDouble(headerValidation.getLong()) != VERSION) {
+    double version = Double.longBitsToDouble(headerValidation.getLong());
+    if (version != VERSION && version != EXTENDED_VERSION) {
       throw new IOException("Unexpected file version");
     }
-    if (headerValidation.getLong() != itemCount) {
-      itemCount = (int)(headerValidation.getLong() & 0x7fffffffL);
+    long count = headerValidation.getLong();
+    if (count != itemCount) {
+      itemCount = (int)(count & 0x7fffffffL);
     }
-    IndexManager idx = new IndexManager(mapChannel);
+    recordFormat = StandardIndexRecordFormat.INSTANCE;
+    sparse = false;
+    if (version == EXTENDED_VERSION) {
+      ByteBuffer extension = ByteBuffer.allocate(EXTENDED_HEADER_SIZE);
+      if (mapChannel.read(extension) != EXTENDED_HEADER_SIZE) {
+        throw new IOException("Unable to read index format header");
+      }
+      extension.flip();
+      int formatId = (int) extension.getLong();
+      long baseTime = extension.getLong();
+      recordFormat = IndexRecordFormat.create(formatId, baseTime, (int) extension.getLong());
+      sparse = (extension.getLong() & SPARSE_INDEX) != 0;
+    }
+    IndexManager idx = new IndexManager(mapChannel, recordFormat, indexWindowSize, indexWindowCount, sparse ? itemCount : 0);
     idx.loadMap(true);
     headerValidation.flip();
     headerValidation.putLong(0, OPEN_STATE);
@@ -232,7 +309,16 @@ public class IndexStorage<T extends Storable> {
     if(paused){
       resume();
     }
-    long size = ((indexManager.getEnd() - indexManager.getStart() + 2) * IndexRecord.HEADER_SIZE) + 24 + 16;
+    flush();
+    if (recordFormat.getId() != indexFormat || recordFormat.getInlineCapacity() != IndexRecordFormat.create(indexFormat, 0, inlineThreshold).getInlineCapacity()) {
+      rewriteIndex();
+      return;
+    }
+    if (sparse) {
+      return; // The slots and key table are a fixed size, there is nothing to trim
+    }
+    int headerSize = recordFormat.getId() == IndexRecordFormat.STANDARD ? HEADER_SIZE : HEADER_SIZE + EXTENDED_HEADER_SIZE;
+    long size = ((indexManager.getEnd() - indexManager.getStart() + 2) * recordFormat.getSlotSize()) + headerSize + 16;
     long mapSize = mapChannel.size();
     if (size <mapSize) {
       File currentIndex = new File(fileName);
@@ -257,16 +343,66 @@ public class IndexStorage<T extends Storable> {
     }
   }
 
+  // Rewrites the index using the configured record format, used to upgrade or downgrade an existing index file
+  private void rewriteIndex() throws IOException {
+    File currentIndex = new File(fileName);
+    File tmpIndex = new File(fileName + "_tmp");
+    IndexRecordFormat targetFormat = IndexRecordFormat.create(indexFormat, System.currentTimeMillis(), inlineThreshold);
+    try (FileChannel tmp = (FileChannel) Files.newByteChannel(tmpIndex.toPath(), CREATE_NEW, READ, WRITE, SPARSE)) {
+      writeHeader(tmp, targetFormat, CLOSE_STATE);
+      IndexManager upgraded;
+      if (sparse) {
+        upgraded = new IndexManager(indexManager.getStart(), indexManager.getCapacity(), tmp, targetFormat, 0, 0, true);
+      } else {
+        int slots = (int) (indexManager.getEnd() - indexManager.getStart() + 1);
+        upgraded = new IndexManager(indexManager.getStart(), slots, tmp, targetFormat, 0, 0);
+      }
+      upgraded.loadMap(false);
+      if (sparse && indexManager.getEnd() != Long.MAX_VALUE) {
+        upgraded.setEnd(indexManager.getEnd());
+      }
+      indexManager.copyTo(upgraded, this::relocateInline);
+      upgraded.close();
+      tmp.force(true);
+    } catch (IOException e) {
+      Files.deleteIfExists(tmpIndex.toPath());
+      throw e;
+    }
+    indexManager.close();
+    mapChannel.force(true);
+    mapChannel.close();
+
+    Files.move(tmpIndex.toPath(), currentIndex.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    mapChannel = openChannel(currentIndex);
+    indexManager = reload();
+  }
+
+  private IndexRecord relocateInline(IndexRecord item, ByteBuffer[] buffers) throws IOException {
+    T object = storableFactory.unpack(buffers);
+    IndexRecord stored = dataStorage.add(object, storableFactory.pack(object));
+    return new IndexRecord(item.getKey(), 0, stored.getPosition(), item.getExpiry(), stored.getLength());
+  }
+
   public boolean hasExpired() {
     return !indexManager.getExpiryIndex().isEmpty();
   }
 
   public List<Long> getKeys() {
-    return indexManager.keySet();
+    synchronized (pendingRecords) {
+      List<Long> keys = indexManager.keySet();
+      keys.addAll(pendingRecords.keySet());
+      return keys;
+    }
   }
 
   public long getLastKey() {
-    return getStart() + indexManager.getMaxKey();
+    synchronized (pendingRecords) {
+      long last = getStart() + indexManager.getMaxKey();
+      for (Long key : pendingRecords.keySet()) {
+        last = Math.max(last, key);
+      }
+      return last;
+    }
   }
 
   public void scanForExpired(Queue<Long> expiredList) {
@@ -292,21 +428,100 @@ public class IndexStorage<T extends Storable> {
   }
 
   public IndexRecord add(@NotNull T object) throws IOException {
+    return add(object, null);
+  }
+
+  // Packed may be supplied when the caller has already packed the object, otherwise it is packed here
+  public IndexRecord add(@NotNull T object, @Nullable ByteBuffer[] packed) throws IOException {
     if(paused){
       resume();
     }
 
-    if (indexManager.contains(object.getKey())) {
+    if (contains(object.getKey())) {
       throw new IOException("Key already exists");
     }
-    IndexRecord item = dataStorage.add(object);
-    indexManager.add(object.getKey(), item);
+    if (!indexManager.hasRoom(object.getKey())) {
+      throw new IOException("Sparse index " + fileName + " has no free slots");
+    }
+    IndexRecord item = null;
+    if (inlineThreshold > 0) {
+      if (packed == null) {
+        packed = storableFactory.pack(object);
+      }
+      item = indexManager.addInline(object.getKey(), object.getExpiry(), packed);
+      if (item == null) {
+        item = dataStorage.add(object, packed);
+        publish(item);
+      }
+    } else {
+      item = packed != null ? dataStorage.add(object, packed) : dataStorage.add(object);
+      publish(item);
+    }
     lastAccess = System.currentTimeMillis();
     return item;
   }
 
+  // pendingRecords is only read or changed under its own lock, so a record is always either pending or indexed
+  private void publish(IndexRecord item) throws IOException {
+    long flushed = dataStorage.getFlushedPosition();
+    boolean pending;
+    synchronized (pendingRecords) {
+      if (pendingRecords.isEmpty() && item.getPosition() + item.getLength() <= flushed) {
+        indexManager.add(item.getKey(), item);
+        return;
+      }
+      pendingRecords.put(item.getKey(), item);
+      publishPending(flushed);
+      pending = !pendingRecords.isEmpty();
+    }
+    if (pending && flushScheduled.compareAndSet(false, true)) {
+      scheduler.schedule(new SubmitFlushTask(), appendLingerTime, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  // Moves any pending records that are now on disk into the index, in the order they were written
+  private void publishPending(long flushed) throws IOException {
+    synchronized (pendingRecords) {
+      Iterator<IndexRecord> iterator = pendingRecords.values().iterator();
+      while (iterator.hasNext()) {
+        IndexRecord pending = iterator.next();
+        if (pending.getPosition() + pending.getLength() > flushed) {
+          break;
+        }
+        indexManager.add(pending.getKey(), pending);
+        iterator.remove();
+      }
+    }
+  }
+
+  // Forces the data and index to disk, so changes made so far survive a crash
+  public void force() throws IOException {
+    if (closed || paused) {
+      return;
+    }
+    dataStorage.force();
+    publishPending(dataStorage.getFlushedPosition());
+    indexManager.force();
+  }
+
+  public void flush() throws IOException {
+    flushScheduled.set(false);
+    if (!closed && !paused && hasPending()) {
+      dataStorage.flush();
+      publishPending(dataStorage.getFlushedPosition());
+    }
+  }
+
+  private @Nullable T readInline(IndexRecord item) throws IOException {
+    ByteBuffer[] buffers = indexManager.readInline(item);
+    if (buffers == null) {
+      return null;
+    }
+    return storableFactory.unpack(buffers);
+  }
+
   public boolean isFull() {
-    return dataStorage.isFull();
+    return dataStorage.isFull() || indexManager.isFull();
   }
 
   public boolean remove(long key) throws IOException {
@@ -319,16 +534,28 @@ public class IndexStorage<T extends Storable> {
       }
     }
     lastAccess = System.currentTimeMillis();
+    flush();
     return indexManager.delete(key);
   }
 
   public @Nullable IndexGet<T> get(long key) throws IOException {
+    return get(key, Storage.ALL_BUFFERS);
+  }
+
+  public @Nullable IndexGet<T> get(long key, long bufferMask) throws IOException {
     T obj = null;
     IndexRecord item = null;
     if (key >= 0) {
-      item = indexManager.get(key);
+      item = getPending(key);
+      if (item == null) {
+        item = indexManager.get(key);
+      }
       if (item != null) {
-        obj = dataStorage.get(item);
+        if (item.getLocationId() == IndexRecord.INLINE_LOCATION) {
+          obj = readInline(item);
+        } else {
+          obj = dataStorage.get(item, bufferMask);
+        }
       }
     }
     if (item != null) {
@@ -338,6 +565,63 @@ public class IndexStorage<T extends Storable> {
     return null;
   }
 
+  // Returns null if the key is not held in this partition, otherwise a future completed once the record has been read
+  public @Nullable CompletableFuture<IndexGet<T>> getAsync(long key) throws IOException {
+    if (key < 0) {
+      return null;
+    }
+    IndexRecord item = getPending(key);
+    if (item == null) {
+      item = indexManager.get(key);
+    }
+    if (item == null) {
+      return null;
+    }
+    lastAccess = System.currentTimeMillis();
+    IndexRecord located = item;
+    if (item.getLocationId() == IndexRecord.INLINE_LOCATION) {
+      return CompletableFuture.completedFuture(new IndexGet<>(located, readInline(located)));
+    }
+    return dataStorage.getAsync(located).thenApply(obj -> new IndexGet<>(located, obj));
+  }
+
+  public @Nullable RawRecord getRaw(long key) throws IOException {
+    if (key < 0) {
+      return null;
+    }
+    IndexRecord item = getPending(key);
+    if (item == null) {
+      item = indexManager.get(key);
+    }
+    if (item == null) {
+      return null;
+    }
+    lastAccess = System.currentTimeMillis();
+    if (item.getLocationId() == IndexRecord.INLINE_LOCATION) {
+      ByteBuffer[] buffers = indexManager.readInline(item);
+      if (buffers == null) {
+        return null;
+      }
+      for (int x = 0; x < buffers.length; x++) {
+        buffers[x] = buffers[x].asReadOnlyBuffer();
+      }
+      return new RawRecord(key, item.getExpiry(), buffers, null);
+    }
+    return dataStorage.getRaw(item);
+  }
+
+  private @Nullable IndexRecord getPending(long key) {
+    synchronized (pendingRecords) {
+      return pendingRecords.get(key);
+    }
+  }
+
+  private boolean hasPending() {
+    synchronized (pendingRecords) {
+      return !pendingRecords.isEmpty();
+    }
+  }
+
   public long length() throws IOException {
     return mapChannel.size() + dataStorage.length();
   }
@@ -350,15 +634,20 @@ public class IndexStorage<T extends Storable> {
   }
 
   public long size() {
-    return indexManager.size();
+    synchronized (pendingRecords) {
+      return indexManager.size() + (long) pendingRecords.size();
+    }
   }
 
   public boolean isEmpty() {
-    return indexManager.size() == 0;
+    synchronized (pendingRecords) {
+      return pendingRecords.isEmpty() && indexManager.isEmpty();
+    }
   }
 
   public @NotNull Collection<Long> keepOnly(@NotNull Collection<Long> listToKeep) throws IOException {
     lastAccess = System.currentTimeMillis();
+    flush();
     List<Long> itemsToRemove = indexManager.keySet();
     itemsToRemove.removeIf(listToKeep::contains);
     if (!itemsToRemove.isEmpty()) {
@@ -400,6 +689,18 @@ public class IndexStorage<T extends Storable> {
   }
 
   public boolean contains(long key) {
-    return indexManager.contains(key);
+    return getPending(key) != null || indexManager.contains(key);
+  }
+
+  // Runs on the shared scheduler once the linger time expires and hands the flush to the storage task queue
+  private final class SubmitFlushTask implements FileTask<Boolean> {
+
+    @Override
+    public Boolean call() throws Exception {
+      if (!closed) {
+        scheduler.submit(new FlushAppendBufferTask<>(IndexStorage.this));
+      }
+      return true;
+    }
   }
 }
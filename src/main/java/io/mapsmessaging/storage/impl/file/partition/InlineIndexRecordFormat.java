@@ -0,0 +1,139 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl.file.partition;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The standard 24 byte slot followed by an inline area. Records whose packed form fits the inline area are written
+ * into the slot itself, with the location id set to INLINE_LOCATION and the position pointing at the inline area, so
+ * reading them back is a single read of the index map. The inline area holds the buffer count, the buffer lengths and
+ * then the buffer contents, and the record length is the number of bytes used.
+ * <p>
+ * Every slot carries the full inline area whether it is used or not, so each slot costs 24 + the inline size rounded
+ * up to 8 bytes and a partition's index takes ItemCount times that, against ItemCount x 24 for the standard format.
+ * The inline size is capped at {@link #MAX_INLINE_SIZE}, 280 byte slots or about 140MB of sparse index per partition
+ * at the default ItemCount, and the map is not preloaded, so untouched slots are not resident.
+ */
+public class InlineIndexRecordFormat implements IndexRecordFormat {
+
+  public static final int MAX_INLINE_SIZE = 256;
+
+  private final int inlineCapacity;
+
+  public InlineIndexRecordFormat(int inlineSize) {
+    inlineCapacity = (inlineSize + 7) & ~7; // keep every slot 8 byte aligned
+  }
+
+  @Override
+  public int getId() {
+    return INLINE;
+  }
+
+  @Override
+  public int getSlotSize() {
+    return IndexRecord.HEADER_SIZE + inlineCapacity;
+  }
+
+  @Override
+  public int getInlineCapacity() {
+    return inlineCapacity;
+  }
+
+  @Override
+  public long readPosition(IndexMap map, long offset) {
+    return IndexRecord.readPosition(map, offset);
+  }
+
+  @Override
+  public long readExpiry(IndexMap map, long offset) {
+    return IndexRecord.readExpiry(map, offset);
+  }
+
+  @Override
+  public int readLength(IndexMap map, long offset) {
+    return IndexRecord.readLength(map, offset);
+  }
+
+  @Override
+  public IndexRecord read(long key, IndexMap map, long offset) {
+    return new IndexRecord(key, map, offset);
+  }
+
+  @Override
+  public void write(IndexRecord indexRecord, IndexMap map, long offset) {
+    indexRecord.update(map, offset);
+  }
+
+  @Override
+  public boolean isInline(IndexMap map, long offset) {
+    return IndexRecord.readPosition(map, offset) > 0 && IndexRecord.readLocationId(map, offset) == IndexRecord.INLINE_LOCATION;
+  }
+
+  public static int inlineLength(ByteBuffer[] buffers) {
+    long length = 4L + buffers.length * 4L;
+    for (ByteBuffer buffer : buffers) {
+      length += buffer.limit();
+    }
+    return (int) Math.min(length, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Writes the packed buffers into the slot if they fit, returning the index record or null if they do not
+   */
+  public @Nullable IndexRecord writeInline(long key, long expiry, ByteBuffer[] buffers, IndexMap map, long offset) {
+    int length = inlineLength(buffers);
+    if (length > inlineCapacity) {
+      return null;
+    }
+    long inlineOffset = offset + IndexRecord.HEADER_SIZE;
+    map.putInt(inlineOffset, buffers.length);
+    long pos = inlineOffset + 4;
+    for (ByteBuffer buffer : buffers) {
+      map.putInt(pos, buffer.limit());
+      pos += 4;
+    }
+    for (ByteBuffer buffer : buffers) {
+      map.put(pos, buffer, buffer.limit());
+      pos += buffer.limit();
+    }
+    // The inline area is written before the header so the slot only becomes live once its contents are in place
+    IndexRecord indexRecord = new IndexRecord(key, IndexRecord.INLINE_LOCATION, inlineOffset, expiry, length);
+    indexRecord.update(map, offset);
+    return indexRecord;
+  }
+
+  public ByteBuffer[] readInline(IndexMap map, long offset, int length) {
+    byte[] data = new byte[length];
+    map.get(offset + IndexRecord.HEADER_SIZE, data);
+    ByteBuffer inline = ByteBuffer.wrap(data);
+    int count = inline.getInt();
+    ByteBuffer[] buffers = new ByteBuffer[count];
+    int pos = 4 + count * 4;
+    for (int x = 0; x < count; x++) {
+      int len = inline.getInt();
+      buffers[x] = ByteBuffer.wrap(data, pos, len).slice();
+      pos += len;
+    }
+    return buffers;
+  }
+}
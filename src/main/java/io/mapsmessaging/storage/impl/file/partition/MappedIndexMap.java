@@ -0,0 +1,158 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl.file.partition;
+
+import io.mapsmessaging.utilities.collections.MappedBufferHelper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Index held in a single mapped buffer, limited to what an int sized mapping can address. Every access holds the read
+ * lock and close takes the write lock, so the buffer is never unmapped under a reader and later access fails cleanly.
+ */
+public class MappedIndexMap implements IndexMap {
+
+  static final long MAX_SIZE = Integer.MAX_VALUE;
+
+  private final ReadWriteLock lock;
+  private final long size;
+  private MappedByteBuffer buffer;
+
+  public MappedIndexMap(FileChannel channel, long position, long size) throws IOException {
+    if (size > MAX_SIZE) {
+      throw new IOException("Index size of " + size + " exceeds a single mapping");
+    }
+    lock = new ReentrantReadWriteLock();
+    this.size = size;
+    buffer = channel.map(MapMode.READ_WRITE, position, size);
+  }
+
+  @Override
+  public long getLong(long offset) {
+    lock.readLock().lock();
+    try {
+      return mapped().getLong((int) offset);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public void putLong(long offset, long value) {
+    lock.readLock().lock();
+    try {
+      mapped().putLong((int) offset, value);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public int getInt(long offset) {
+    lock.readLock().lock();
+    try {
+      return mapped().getInt((int) offset);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public void putInt(long offset, int value) {
+    lock.readLock().lock();
+    try {
+      mapped().putInt((int) offset, value);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public void get(long offset, byte[] destination) {
+    lock.readLock().lock();
+    try {
+      mapped().get((int) offset, destination);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public void put(long offset, ByteBuffer source, int length) {
+    lock.readLock().lock();
+    try {
+      mapped().put((int) offset, source, 0, length);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public long size() {
+    return size;
+  }
+
+  @Override
+  public void load() {
+    lock.readLock().lock();
+    try {
+      mapped().load();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public void force() {
+    lock.readLock().lock();
+    try {
+      mapped().force();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public void close() {
+    lock.writeLock().lock();
+    try {
+      if (buffer != null) {
+        buffer.force();
+        MappedBufferHelper.closeDirectBuffer(buffer);
+        buffer = null;
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private MappedByteBuffer mapped() {
+    if (buffer == null) {
+      throw new IllegalStateException("Index map has been closed");
+    }
+    return buffer;
+  }
+}
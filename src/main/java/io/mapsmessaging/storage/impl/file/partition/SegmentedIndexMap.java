@@ -0,0 +1,195 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl.file.partition;
+
+import io.mapsmessaging.utilities.collections.MappedBufferHelper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Index spread over a number of mapped segments, used when the index is larger than a single mapping can address.
+ * Each segment holds a whole number of slots so no record ever straddles two segments. As with MappedIndexMap, access
+ * holds the read lock and close unmaps the segments under the write lock.
+ */
+public class SegmentedIndexMap implements IndexMap {
+
+  static final int SEGMENT_SLOTS = 1 << 25; // 32M slots, 768MB per segment for the standard format
+
+  // Wide slots, such as those holding inline records, get fewer slots per segment so a segment still fits one mapping
+  static int segmentSlots(int slotSize) {
+    return Math.min(SEGMENT_SLOTS, Integer.highestOneBit((int) (MappedIndexMap.MAX_SIZE / slotSize)));
+  }
+
+  private final ReadWriteLock lock;
+  private final long segmentSize;
+  private final long size;
+  private MappedByteBuffer[] segments;
+
+  public SegmentedIndexMap(FileChannel channel, long position, long size, int slotSize, int segmentSlots) throws IOException {
+    segmentSize = (long) slotSize * segmentSlots;
+    if (segmentSize <= 0 || segmentSize > MappedIndexMap.MAX_SIZE) {
+      throw new IOException("Segment size must be a positive number of index slots within a single mapping");
+    }
+    this.size = size;
+    lock = new ReentrantReadWriteLock();
+    int count = (int) ((size + segmentSize - 1) / segmentSize);
+    MappedByteBuffer[] mapped = new MappedByteBuffer[count];
+    try {
+      for (int x = 0; x < count; x++) {
+        long offset = x * segmentSize;
+        mapped[x] = channel.map(MapMode.READ_WRITE, position + offset, Math.min(segmentSize, size - offset));
+      }
+    } catch (IOException e) {
+      unmap(mapped);
+      throw e;
+    }
+    segments = mapped;
+  }
+
+  @Override
+  public long getLong(long offset) {
+    lock.readLock().lock();
+    try {
+      return segment(offset).getLong((int) (offset % segmentSize));
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public void putLong(long offset, long value) {
+    lock.readLock().lock();
+    try {
+      segment(offset).putLong((int) (offset % segmentSize), value);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public int getInt(long offset) {
+    lock.readLock().lock();
+    try {
+      return segment(offset).getInt((int) (offset % segmentSize));
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public void putInt(long offset, int value) {
+    lock.readLock().lock();
+    try {
+      segment(offset).putInt((int) (offset % segmentSize), value);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public void get(long offset, byte[] destination) {
+    lock.readLock().lock();
+    try {
+      segment(offset).get((int) (offset % segmentSize), destination);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public void put(long offset, ByteBuffer source, int length) {
+    lock.readLock().lock();
+    try {
+      segment(offset).put((int) (offset % segmentSize), source, 0, length);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public long size() {
+    return size;
+  }
+
+  @Override
+  public void load() {
+    lock.readLock().lock();
+    try {
+      for (MappedByteBuffer segment : mapped()) {
+        segment.load();
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public void force() {
+    lock.readLock().lock();
+    try {
+      for (MappedByteBuffer segment : mapped()) {
+        segment.force();
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public void close() {
+    lock.writeLock().lock();
+    try {
+      if (segments != null) {
+        for (MappedByteBuffer segment : segments) {
+          segment.force();
+        }
+        unmap(segments);
+        segments = null;
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private MappedByteBuffer segment(long offset) {
+    return mapped()[(int) (offset / segmentSize)];
+  }
+
+  private MappedByteBuffer[] mapped() {
+    if (segments == null) {
+      throw new IllegalStateException("Index map has been closed");
+    }
+    return segments;
+  }
+
+  private static void unmap(MappedByteBuffer[] mapped) {
+    for (MappedByteBuffer segment : mapped) {
+      if (segment != null) {
+        MappedBufferHelper.closeDirectBuffer(segment);
+      }
+    }
+  }
+}
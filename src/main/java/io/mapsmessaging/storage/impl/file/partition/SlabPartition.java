@@ -0,0 +1,324 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl.file.partition;
+
+import io.mapsmessaging.storage.Storable;
+import io.mapsmessaging.storage.StorableFactory;
+import io.mapsmessaging.utilities.collections.MappedBufferHelper;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Partition of fixed size records addressed directly by key, so there is no index file. The record for a key lives at
+ * (key - start) * recordSize within the slot area and a bitmap after the header marks which slots are live. The whole
+ * file is mapped, so a get, add or remove is a single access to the slot and its bitmap word.
+ */
+public class SlabPartition<T extends Storable> implements Closeable {
+
+  private static final int HEADER_SIZE = 64;
+  private static final long UNIQUE_ID = 0x51ab000000000051L;
+  private static final double VERSION = 1.0;
+
+  // Each slot starts with the expiry, the buffer count and the buffer lengths, the packed buffers follow
+  private static final int SLOT_HEADER_SIZE = 12;
+
+  private final String fileName;
+  private final StorableFactory<T> storableFactory;
+  private final boolean sync;
+  private final int itemCount;
+  private final int recordSize;
+  private final int slotOffset;
+  private final FileChannel channel;
+  private MappedByteBuffer map;
+  private int live;
+  private boolean closed;
+
+  @Getter
+  private final long start;
+
+  @Getter
+  private long lastAccess;
+
+  public SlabPartition(String fileName, StorableFactory<T> storableFactory, long start, int itemCount, int recordSize, boolean sync) throws IOException {
+    this.fileName = fileName;
+    this.storableFactory = storableFactory;
+    this.start = start;
+    this.itemCount = itemCount;
+    this.recordSize = recordSize;
+    this.sync = sync;
+    slotOffset = HEADER_SIZE + (((itemCount + 63) / 64) * 8);
+    long size = slotOffset + ((long) itemCount * recordSize);
+    if (size > Integer.MAX_VALUE) {
+      throw new IOException("Fixed record partition of " + size + " bytes is too large, reduce the ItemCount or FixedRecordSize");
+    }
+    File file = new File(fileName);
+    boolean exists = file.exists() && file.length() > 0;
+    channel = FileChannel.open(file.toPath(), CREATE, READ, WRITE, SPARSE);
+    if (exists) {
+      validateHeader();
+    } else {
+      writeHeader();
+    }
+    map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    for (int x = HEADER_SIZE; x < slotOffset; x += 8) {
+      live += Long.bitCount(map.getLong(x));
+    }
+    lastAccess = System.currentTimeMillis();
+    closed = false;
+  }
+
+  private void writeHeader() throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    header.putLong(UNIQUE_ID);
+    header.putLong(Double.doubleToLongBits(VERSION));
+    header.putLong(start);
+    header.putInt(itemCount);
+    header.putInt(recordSize);
+    header.clear();
+    channel.write(header, 0);
+    channel.force(false);
+  }
+
+  private void validateHeader() throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    channel.read(header, 0);
+    if (header.getLong(0) != UNIQUE_ID) {
+      throw new IOException("Unexpected file identifier located");
+    }
+    if (Double.longBitsToDouble(header.getLong(8)) != VERSION) {
+      throw new IOException("Unexpected file version");
+    }
+    if (header.getLong(16) != start || header.getInt(24) != itemCount || header.getInt(28) != recordSize) {
+      throw new IOException("Fixed record partition " + fileName + " was created with a different layout");
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!closed) {
+      closed = true;
+      map.force();
+      MappedBufferHelper.closeDirectBuffer(map);
+      map = null;
+      channel.close();
+    }
+  }
+
+  public void delete() throws IOException {
+    close();
+    Files.deleteIfExists(new File(fileName).toPath());
+  }
+
+  public String getName() {
+    return fileName;
+  }
+
+  public long getEnd() {
+    return start + itemCount - 1;
+  }
+
+  public int add(@NotNull T object) throws IOException {
+    int slot = slot(object.getKey());
+    if (isLive(slot)) {
+      throw new IOException("Key already exists");
+    }
+    ByteBuffer[] buffers = storableFactory.pack(object);
+    int length = SLOT_HEADER_SIZE + (4 * buffers.length);
+    for (ByteBuffer buffer : buffers) {
+      length += buffer.remaining();
+    }
+    if (length > recordSize) {
+      throw new IOException("Record of " + length + " bytes does not fit the fixed record size of " + recordSize);
+    }
+    int position = slotOffset + (slot * recordSize);
+    ByteBuffer target = map.duplicate().position(position);
+    target.putLong(object.getExpiry());
+    target.putInt(buffers.length);
+    for (ByteBuffer buffer : buffers) {
+      target.putInt(buffer.remaining());
+    }
+    for (ByteBuffer buffer : buffers) {
+      target.put(buffer.duplicate());
+    }
+    if (sync) {
+      map.force(position, length);
+    }
+    setLive(slot, true);
+    live++;
+    lastAccess = System.currentTimeMillis();
+    return length;
+  }
+
+  public @Nullable T get(long key) throws IOException {
+    ByteBuffer[] buffers = read(key);
+    if (buffers == null) {
+      return null;
+    }
+    return storableFactory.unpack(buffers);
+  }
+
+  // Copies the slot out of the mapping, so the buffers stay valid if the slot is reused or the partition closed
+  private @Nullable ByteBuffer[] read(long key) {
+    if (!contains(key)) {
+      return null;
+    }
+    lastAccess = System.currentTimeMillis();
+    int position = slotOffset + (slot(key) * recordSize);
+    int count = map.getInt(position + 8);
+    int payload = 0;
+    for (int x = 0; x < count; x++) {
+      payload += map.getInt(position + SLOT_HEADER_SIZE + (x * 4));
+    }
+    byte[] data = new byte[payload];
+    map.get(position + SLOT_HEADER_SIZE + (count * 4), data);
+    ByteBuffer[] buffers = new ByteBuffer[count];
+    int offset = 0;
+    for (int x = 0; x < count; x++) {
+      int len = map.getInt(position + SLOT_HEADER_SIZE + (x * 4));
+      buffers[x] = ByteBuffer.wrap(data, offset, len).slice();
+      offset += len;
+    }
+    return buffers;
+  }
+
+  public int getLength(long key) {
+    return contains(key) ? recordSize : 0;
+  }
+
+  public boolean remove(long key) {
+    if (!contains(key)) {
+      return false;
+    }
+    setLive(slot(key), false);
+    live--;
+    lastAccess = System.currentTimeMillis();
+    return true;
+  }
+
+  public boolean contains(long key) {
+    return key >= start && key <= getEnd() && isLive(slot(key));
+  }
+
+  public List<Long> getKeys() {
+    List<Long> keys = new ArrayList<>(live);
+    for (int slot = nextLive(0); slot >= 0; slot = nextLive(slot + 1)) {
+      keys.add(start + slot);
+    }
+    return keys;
+  }
+
+  public long getLastKey() {
+    for (int slot = itemCount - 1; slot >= 0; slot--) {
+      if (isLive(slot)) {
+        return start + slot;
+      }
+    }
+    return start - 1;
+  }
+
+  public void scanForExpired(Queue<Long> expiredList) {
+    long now = System.currentTimeMillis();
+    for (int slot = nextLive(0); slot >= 0; slot = nextLive(slot + 1)) {
+      long expiry = map.getLong(slotOffset + (slot * recordSize));
+      if (expiry != 0 && expiry < now) {
+        expiredList.add(start + slot);
+      }
+    }
+  }
+
+  public void keepOnly(@NotNull Set<Long> listToKeep) {
+    for (Long key : getKeys()) {
+      if (!listToKeep.contains(key)) {
+        remove(key);
+      }
+    }
+  }
+
+  public int removeAll(@NotNull Collection<Long> listToRemove) {
+    int removed = 0;
+    for (Long key : listToRemove) {
+      if (remove(key)) {
+        removed++;
+      }
+    }
+    return removed;
+  }
+
+  public long size() {
+    return live;
+  }
+
+  public boolean isEmpty() {
+    return live == 0;
+  }
+
+  public long length() {
+    return slotOffset + ((long) itemCount * recordSize);
+  }
+
+  public long emptySpace() {
+    return (long) (itemCount - live) * recordSize;
+  }
+
+  private int slot(long key) {
+    return (int) (key - start);
+  }
+
+  private boolean isLive(int slot) {
+    return (map.getLong(HEADER_SIZE + ((slot >>> 6) * 8)) & (1L << (slot & 63))) != 0;
+  }
+
+  private void setLive(int slot, boolean set) {
+    int offset = HEADER_SIZE + ((slot >>> 6) * 8);
+    long word = map.getLong(offset);
+    word = set ? word | (1L << (slot & 63)) : word & ~(1L << (slot & 63));
+    map.putLong(offset, word);
+    if (sync) {
+      map.force(offset, 8);
+    }
+  }
+
+  private int nextLive(int from) {
+    for (int slot = from; slot < itemCount; ) {
+      long word = map.getLong(HEADER_SIZE + ((slot >>> 6) * 8)) >>> (slot & 63);
+      if (word != 0) {
+        return slot + Long.numberOfTrailingZeros(word);
+      }
+      slot = (slot | 63) + 1;
+    }
+    return -1;
+  }
+}
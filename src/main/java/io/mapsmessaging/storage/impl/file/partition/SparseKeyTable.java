@@ -0,0 +1,112 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl.file.partition;
+
+import java.io.Closeable;
+
+/**
+ * Open addressing table, held in the index file after the slots, that maps a key to the slot holding its record. Entry
+ * n belongs to slot n and holds the key plus one, so zero marks a free slot. A deleted key keeps its entry, so probes
+ * carry on past it and a later add of the same key reuses the slot.
+ */
+class SparseKeyTable implements Closeable {
+
+  static final int ENTRY_SIZE = 8;
+
+  private final IndexMap table;
+  private final int capacity;
+  private int used;
+
+  SparseKeyTable(IndexMap table, int capacity) {
+    this.table = table;
+    this.capacity = capacity;
+  }
+
+  // Counts the used entries, the mapping must be loaded first
+  void load() {
+    table.load();
+    used = 0;
+    for (int slot = 0; slot < capacity; slot++) {
+      if (table.getLong(slot * (long) ENTRY_SIZE) != 0) {
+        used++;
+      }
+    }
+  }
+
+  int find(long key) {
+    int slot = home(key);
+    for (int probe = 0; probe < capacity; probe++) {
+      long entry = table.getLong(slot * (long) ENTRY_SIZE);
+      if (entry == 0) {
+        return -1;
+      }
+      if (entry == key + 1) {
+        return slot;
+      }
+      slot = slot + 1 == capacity ? 0 : slot + 1;
+    }
+    return -1;
+  }
+
+  // Returns the slot for the key, claiming a free one if it has none, or -1 if the table is full
+  synchronized int insert(long key) {
+    int slot = home(key);
+    for (int probe = 0; probe < capacity; probe++) {
+      long entry = table.getLong(slot * (long) ENTRY_SIZE);
+      if (entry == key + 1) {
+        return slot;
+      }
+      if (entry == 0) {
+        table.putLong(slot * (long) ENTRY_SIZE, key + 1);
+        used++;
+        return slot;
+      }
+      slot = slot + 1 == capacity ? 0 : slot + 1;
+    }
+    return -1;
+  }
+
+  // Returns the key that owns the slot, or -1 if the slot is free
+  long keyAt(int slot) {
+    return table.getLong(slot * (long) ENTRY_SIZE) - 1;
+  }
+
+  boolean hasRoom(long key) {
+    return used < capacity || find(key) >= 0;
+  }
+
+  int getUsed() {
+    return used;
+  }
+
+  private int home(long key) {
+    long hash = key * 0x9E3779B97F4A7C15L;
+    return (int) Long.remainderUnsigned(hash ^ (hash >>> 32), capacity);
+  }
+
+  void force() {
+    table.force();
+  }
+
+  @Override
+  public void close() {
+    table.close();
+  }
+}
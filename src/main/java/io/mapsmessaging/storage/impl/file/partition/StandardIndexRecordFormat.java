@@ -0,0 +1,66 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl.file.partition;
+
+/**
+ * The original 24 byte slot, 8 byte position, 8 byte absolute expiry and the location id and length packed into 8 bytes
+ */
+public class StandardIndexRecordFormat implements IndexRecordFormat {
+
+  public static final StandardIndexRecordFormat INSTANCE = new StandardIndexRecordFormat();
+
+  private StandardIndexRecordFormat() {
+  }
+
+  @Override
+  public int getId() {
+    return STANDARD;
+  }
+
+  @Override
+  public int getSlotSize() {
+    return IndexRecord.HEADER_SIZE;
+  }
+
+  @Override
+  public long readPosition(IndexMap map, long offset) {
+    return IndexRecord.readPosition(map, offset);
+  }
+
+  @Override
+  public long readExpiry(IndexMap map, long offset) {
+    return IndexRecord.readExpiry(map, offset);
+  }
+
+  @Override
+  public int readLength(IndexMap map, long offset) {
+    return IndexRecord.readLength(map, offset);
+  }
+
+  @Override
+  public IndexRecord read(long key, IndexMap map, long offset) {
+    return new IndexRecord(key, map, offset);
+  }
+
+  @Override
+  public void write(IndexRecord indexRecord, IndexMap map, long offset) {
+    indexRecord.update(map, offset);
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl.file.partition;
+
+import io.mapsmessaging.utilities.collections.MappedBufferHelper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Index that only maps fixed size windows of slots as they are touched, keeping at most a configured number of
+ * windows mapped and unmapping the least recently used. This keeps resident memory proportional to the active keys
+ * rather than the configured item count, at the cost of serialising access to the windows.
+ */
+public class WindowedIndexMap implements IndexMap {
+
+  private final FileChannel channel;
+  private final long position;
+  private final long size;
+  private final long windowSize;
+  private final int maxWindows;
+  private final LinkedHashMap<Long, MappedByteBuffer> windows;
+  private boolean closed;
+
+  public WindowedIndexMap(FileChannel channel, long position, long size, int slotSize, int windowSlots, int maxWindows) throws IOException {
+    if (windowSlots <= 0 || maxWindows <= 0) {
+      throw new IOException("Index window size and count must be positive");
+    }
+    this.channel = channel;
+    this.position = position;
+    this.size = size;
+    this.windowSize = Math.min(windowSlots, MappedIndexMap.MAX_SIZE / slotSize) * slotSize;
+    this.maxWindows = maxWindows;
+    windows = new LinkedHashMap<>(maxWindows + 1, 0.75f, true);
+    closed = false;
+  }
+
+  @Override
+  public synchronized long getLong(long offset) {
+    return window(offset / windowSize).getLong((int) (offset % windowSize));
+  }
+
+  @Override
+  public synchronized void putLong(long offset, long value) {
+    window(offset / windowSize).putLong((int) (offset % windowSize), value);
+  }
+
+  @Override
+  public synchronized int getInt(long offset) {
+    return window(offset / windowSize).getInt((int) (offset % windowSize));
+  }
+
+  @Override
+  public synchronized void putInt(long offset, int value) {
+    window(offset / windowSize).putInt((int) (offset % windowSize), value);
+  }
+
+  @Override
+  public synchronized void get(long offset, byte[] destination) {
+    window(offset / windowSize).get((int) (offset % windowSize), destination);
+  }
+
+  @Override
+  public synchronized void put(long offset, ByteBuffer source, int length) {
+    window(offset / windowSize).put((int) (offset % windowSize), source, 0, length);
+  }
+
+  @Override
+  public long size() {
+    return size;
+  }
+
+  @Override
+  public void load() {
+    // Windows are mapped on demand, so there is nothing to fault in up front
+  }
+
+  @Override
+  public synchronized void force() {
+    for (MappedByteBuffer window : windows.values()) {
+      window.force();
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    if (!closed) {
+      closed = true;
+      for (MappedByteBuffer window : windows.values()) {
+        window.force();
+        MappedBufferHelper.closeDirectBuffer(window);
+      }
+      windows.clear();
+    }
+  }
+
+  synchronized int mappedWindows() {
+    return windows.size();
+  }
+
+  private MappedByteBuffer window(long id) {
+    if (closed) {
+      throw new IllegalStateException("Index map has been closed");
+    }
+    MappedByteBuffer window = windows.get(id);
+    if (window == null) {
+      window = mapWindow(id);
+      windows.put(id, window);
+      if (windows.size() > maxWindows) {
+        evictOldest();
+      }
+    }
+    return window;
+  }
+
+  private MappedByteBuffer mapWindow(long id) {
+    long offset = id * windowSize;
+    try {
+      return channel.map(MapMode.READ_WRITE, position + offset, Math.min(windowSize, size - offset));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void evictOldest() {
+    Iterator<Map.Entry<Long, MappedByteBuffer>> iterator = windows.entrySet().iterator();
+    MappedByteBuffer oldest = iterator.next().getValue();
+    iterator.remove();
+    MappedBufferHelper.closeDirectBuffer(oldest);
+  }
+}
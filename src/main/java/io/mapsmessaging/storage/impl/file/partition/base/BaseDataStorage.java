@@ -19,15 +19,20 @@
 
 package io.mapsmessaging.storage.impl.file.partition.base;
 
+import io.mapsmessaging.storage.RawRecord;
 import io.mapsmessaging.storage.Storable;
 import io.mapsmessaging.storage.StorableFactory;
 import io.mapsmessaging.storage.impl.file.config.PartitionStorageConfig;
 import io.mapsmessaging.storage.impl.file.partition.DataStorage;
 import io.mapsmessaging.storage.impl.file.partition.DataStorageImpl;
 import io.mapsmessaging.storage.impl.file.partition.DeferredDataStorage;
+import io.mapsmessaging.storage.impl.file.partition.AsyncDataStorage;
+import io.mapsmessaging.storage.impl.file.partition.DirectDataStorage;
 import io.mapsmessaging.storage.impl.file.partition.IndexRecord;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
 
 public class BaseDataStorage <T extends Storable> implements DeferredDataStorage<T> {
 
@@ -35,6 +40,12 @@ public class BaseDataStorage <T extends Storable> implements DeferredDataStorage
   private final StorableFactory<T> storableFactory;
   private final boolean sync;
   private final long maxPartitionSize;
+  private final int appendBufferSize;
+  private final boolean mappedReads;
+  private final int appendWindowSize;
+  private final int compressionThreshold;
+  private final boolean directIO;
+  private final boolean asyncIO;
 
   private DataStorage<T> physicalStore;
 
@@ -43,7 +54,23 @@ public class BaseDataStorage <T extends Storable> implements DeferredDataStorage
     this.storableFactory = config.getStorableFactory();
     this.sync = config.isSync();
     this.maxPartitionSize = config.getMaxPartitionSize();
-    physicalStore = new DataStorageImpl<>(fileName, storableFactory, sync, maxPartitionSize);
+    this.appendBufferSize = config.getAppendBufferSize();
+    this.mappedReads = config.isMappedReads();
+    this.appendWindowSize = config.getAppendWindowSize();
+    this.compressionThreshold = config.getCompressionThreshold();
+    this.directIO = config.isDirectIO();
+    this.asyncIO = config.isAsyncIO();
+    physicalStore = openPhysicalStore();
+  }
+
+  private DataStorage<T> openPhysicalStore() throws IOException {
+    if (directIO) {
+      return new DirectDataStorage<>(fileName, storableFactory, sync, maxPartitionSize);
+    }
+    if (asyncIO) {
+      return new AsyncDataStorage<>(fileName, storableFactory, sync, maxPartitionSize);
+    }
+    return new DataStorageImpl<>(fileName, storableFactory, sync, maxPartitionSize, appendBufferSize, mappedReads, appendWindowSize, compressionThreshold);
   }
 
   @Override
@@ -56,7 +83,7 @@ public class BaseDataStorage <T extends Storable> implements DeferredDataStorage
   }
 
   public void resume() throws IOException {
-    physicalStore = new DataStorageImpl<>(fileName, storableFactory, sync, maxPartitionSize);
+    physicalStore = openPhysicalStore();
   }
 
   @Override
@@ -74,11 +101,51 @@ public class BaseDataStorage <T extends Storable> implements DeferredDataStorage
     return physicalStore.add(object);
   }
 
+  @Override
+  public IndexRecord add(T object, ByteBuffer[] packed) throws IOException {
+    return physicalStore.add(object, packed);
+  }
+
+  @Override
+  public void flush() throws IOException {
+    physicalStore.flush();
+  }
+
+  @Override
+  public void force() throws IOException {
+    physicalStore.force();
+  }
+
+  @Override
+  public long getFlushedPosition() {
+    return physicalStore.getFlushedPosition();
+  }
+
   @Override
   public T get(IndexRecord item) throws IOException {
     return physicalStore.get(item);
   }
 
+  @Override
+  public T get(IndexRecord item, long bufferMask) throws IOException {
+    return physicalStore.get(item, bufferMask);
+  }
+
+  @Override
+  public void releaseMappings() {
+    physicalStore.releaseMappings();
+  }
+
+  @Override
+  public CompletableFuture<T> getAsync(IndexRecord item) throws IOException {
+    return physicalStore.getAsync(item);
+  }
+
+  @Override
+  public RawRecord getRaw(IndexRecord item) throws IOException {
+    return physicalStore.getRaw(item);
+  }
+
   @Override
   public long length() throws IOException {
     return physicalStore.length();
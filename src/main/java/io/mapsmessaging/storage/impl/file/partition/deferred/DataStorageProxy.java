@@ -19,6 +19,7 @@
 
 package io.mapsmessaging.storage.impl.file.partition.deferred;
 
+import io.mapsmessaging.storage.RawRecord;
 import io.mapsmessaging.storage.Storable;
 import io.mapsmessaging.storage.StorableFactory;
 import io.mapsmessaging.storage.impl.file.FileHelper;
@@ -27,22 +28,34 @@ import io.mapsmessaging.storage.impl.file.config.PartitionStorageConfig;
 import io.mapsmessaging.storage.impl.file.partition.DataStorage;
 import io.mapsmessaging.storage.impl.file.partition.DataStorageImpl;
 import io.mapsmessaging.storage.impl.file.partition.DeferredDataStorage;
+import io.mapsmessaging.storage.impl.file.partition.AsyncDataStorage;
+import io.mapsmessaging.storage.impl.file.partition.DirectDataStorage;
 import io.mapsmessaging.storage.impl.file.partition.IndexRecord;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public abstract class DataStorageProxy<T extends Storable> implements DeferredDataStorage<T> {
 
   protected final String digestName;
+  protected final long digestChunkSize;
   protected final String fileName;
   protected final StorableFactory<T> storableFactory;
   protected final boolean sync;
   protected final long maxPartitionSize;
+  protected final int appendBufferSize;
+  protected final boolean mappedReads;
+  protected final int appendWindowSize;
+  protected final int compressionThreshold;
+  protected final boolean directIO;
+  protected final boolean asyncIO;
 
   protected DataStorage<T> physicalStore;
   protected boolean isArchived;
@@ -52,12 +65,19 @@ public abstract class DataStorageProxy<T extends Storable> implements DeferredDa
     fileName = config.getFileName()+ "_data";
     sync = config.isSync();
     maxPartitionSize = config.getMaxPartitionSize();
+    appendBufferSize = config.getAppendBufferSize();
+    mappedReads = config.isMappedReads();
+    appendWindowSize = config.getAppendWindowSize();
+    compressionThreshold = config.getCompressionThreshold();
+    directIO = config.isDirectIO();
+    asyncIO = config.isAsyncIO();
     DeferredConfig aConfig = config.getDeferredConfig();
     digestName = aConfig.getDigestName();
+    digestChunkSize = aConfig.getDigestChunkSize();
     File file = new File(fileName);
     isArchived = false;
     if (!file.exists()) {
-      physicalStore = new DataStorageImpl<>(fileName, storableFactory, sync, maxPartitionSize);
+      physicalStore = openPhysicalStore();
     } else {
       physicalStore = detectAndLoad();
     }
@@ -76,7 +96,7 @@ public abstract class DataStorageProxy<T extends Storable> implements DeferredDa
 
   public void resume() throws IOException {
     if (!isArchived) {
-      physicalStore = new DataStorageImpl<>(fileName, storableFactory, sync, maxPartitionSize);
+      physicalStore = openPhysicalStore();
     }
   }
 
@@ -100,12 +120,62 @@ public abstract class DataStorageProxy<T extends Storable> implements DeferredDa
     return physicalStore.add(object);
   }
 
+  @Override
+  public IndexRecord add(T object, ByteBuffer[] packed) throws IOException {
+    loadIfArchived();
+    return physicalStore.add(object, packed);
+  }
+
+  @Override
+  public void flush() throws IOException {
+    if (!isArchived) {
+      physicalStore.flush();
+    }
+  }
+
+  @Override
+  public void force() throws IOException {
+    if (!isArchived) {
+      physicalStore.force();
+    }
+  }
+
+  @Override
+  public long getFlushedPosition() {
+    return physicalStore.getFlushedPosition();
+  }
+
   @Override
   public T get(IndexRecord item) throws IOException {
     loadIfArchived();
     return physicalStore.get(item);
   }
 
+  @Override
+  public T get(IndexRecord item, long bufferMask) throws IOException {
+    loadIfArchived();
+    return physicalStore.get(item, bufferMask);
+  }
+
+  @Override
+  public void releaseMappings() {
+    if (!isArchived) {
+      physicalStore.releaseMappings();
+    }
+  }
+
+  @Override
+  public CompletableFuture<T> getAsync(IndexRecord item) throws IOException {
+    loadIfArchived();
+    return physicalStore.getAsync(item);
+  }
+
+  @Override
+  public RawRecord getRaw(IndexRecord item) throws IOException {
+    loadIfArchived();
+    return physicalStore.getRaw(item);
+  }
+
   @Override
   public long length() throws IOException {
     return physicalStore.length();
@@ -148,8 +218,67 @@ public abstract class DataStorageProxy<T extends Storable> implements DeferredDa
     return null;
   }
 
+  protected boolean isTreeDigest() throws NoSuchAlgorithmException {
+    return digestChunkSize > 0 && getMessageDigest() != null;
+  }
+
+  protected void computeTreeDigest(File file, DeferredRecord deferredRecord) throws IOException, NoSuchAlgorithmException {
+    TreeDigest treeDigest = new TreeDigest(digestName, digestChunkSize);
+    applyTreeDigest(treeDigest.compute(file), deferredRecord);
+  }
+
+  protected TreeDigest.Hasher createTreeHasher() throws NoSuchAlgorithmException {
+    return new TreeDigest(digestName, digestChunkSize).newHasher();
+  }
+
+  protected TreeDigest.Hasher createTreeHasher(DeferredRecord deferredRecord) throws NoSuchAlgorithmException {
+    return new TreeDigest(deferredRecord.getDigestName(), deferredRecord.getChunkSize()).newHasher();
+  }
+
+  protected void applyTreeDigest(TreeDigest.Result result, DeferredRecord deferredRecord) {
+    deferredRecord.setDigestName(digestName);
+    deferredRecord.setDeferredHash(result.getRoot());
+    deferredRecord.setChunkSize(digestChunkSize);
+    deferredRecord.setChunkHashes(result.getChunkHashes());
+  }
+
+  protected void verifyTreeDigest(File file, DeferredRecord deferredRecord) throws IOException, NoSuchAlgorithmException {
+    TreeDigest treeDigest = checkTreeRoot(deferredRecord);
+    reportTreeFailures(treeDigest.verify(file, deferredRecord.getChunkHashes()), deferredRecord);
+  }
+
+  // Checks hashes that were computed while the file was being restored
+  protected void verifyTreeDigest(TreeDigest.Result computed, DeferredRecord deferredRecord) throws IOException, NoSuchAlgorithmException {
+    TreeDigest treeDigest = checkTreeRoot(deferredRecord);
+    reportTreeFailures(treeDigest.compare(computed.getChunkHashes(), deferredRecord.getChunkHashes()), deferredRecord);
+  }
+
+  private TreeDigest checkTreeRoot(DeferredRecord deferredRecord) throws IOException, NoSuchAlgorithmException {
+    TreeDigest treeDigest = new TreeDigest(deferredRecord.getDigestName(), deferredRecord.getChunkSize());
+    if (!treeDigest.computeRoot(deferredRecord.getChunkHashes()).equals(deferredRecord.getDeferredHash())) {
+      throw new IOException("Archive record chunk hashes do not match the root " + deferredRecord.getDigestName() + " hash");
+    }
+    return treeDigest;
+  }
+
+  private void reportTreeFailures(List<Integer> failed, DeferredRecord deferredRecord) throws IOException {
+    if (!failed.isEmpty()) {
+      throw new IOException("File has been changed, " + deferredRecord.getDigestName() + " hash does not match for chunks " + failed);
+    }
+  }
+
   protected abstract DeferredRecord buildArchiveRecord();
 
+  protected DataStorage<T> openPhysicalStore() throws IOException {
+    if (directIO) {
+      return new DirectDataStorage<>(fileName, storableFactory, sync, maxPartitionSize);
+    }
+    if (asyncIO) {
+      return new AsyncDataStorage<>(fileName, storableFactory, sync, maxPartitionSize);
+    }
+    return new DataStorageImpl<>(fileName, storableFactory, sync, maxPartitionSize, appendBufferSize, mappedReads, appendWindowSize, compressionThreshold);
+  }
+
   private DataStorage<T> detectAndLoad() throws IOException {
     try (FileInputStream fileInputStream = new FileInputStream(fileName)) {
       byte[] tmp = fileInputStream.readNBytes(16);
@@ -157,7 +286,7 @@ public abstract class DataStorageProxy<T extends Storable> implements DeferredDa
       isArchived = (test != 0xEF && test != 0x00);
     }
     if (!isArchived) {
-      return new DataStorageImpl<>(fileName, storableFactory, sync, maxPartitionSize);
+      return openPhysicalStore();
     }
     DeferredRecord deferredRecord = buildArchiveRecord();
     deferredRecord.read(fileName);
@@ -26,6 +26,8 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 
 public abstract class DeferredRecord {
@@ -46,6 +48,14 @@ public abstract class DeferredRecord {
   @Setter
   protected LocalDateTime archivedDate;
 
+  @Getter
+  @Setter
+  protected long chunkSize;       // 0 if the hash is a single digest over the file, else the size of each tree digest chunk
+
+  @Getter
+  @Setter
+  protected List<String> chunkHashes = new ArrayList<>();
+
   protected DeferredRecord(){}
 
   protected DeferredRecord(String digestName, String arcdeferredHash, long length){
@@ -62,6 +72,15 @@ public abstract class DeferredRecord {
     deferredHash = reader.readLine();
     setLength(Long.parseLong(reader.readLine()));
     archivedDate = LocalDateTime.parse(reader.readLine());
+    String chunkLine = reader.readLine(); // Records written prior to tree digests simply end here
+    if (chunkLine != null && !chunkLine.isEmpty()) {
+      chunkSize = Long.parseLong(chunkLine);
+      int count = Integer.parseInt(reader.readLine());
+      chunkHashes = new ArrayList<>(count);
+      for (int x = 0; x < count; x++) {
+        chunkHashes.add(reader.readLine());
+      }
+    }
   }
 
   protected void writeOut(OutputStreamWriter writer) throws IOException{
@@ -69,5 +88,12 @@ public abstract class DeferredRecord {
     writer.write(deferredHash + "\n");
     writer.write(""+getLength()+"\n");
     writer.write(archivedDate.toString() + "\n");
+    if (chunkSize > 0) {
+      writer.write(chunkSize + "\n");
+      writer.write(chunkHashes.size() + "\n");
+      for (String hash : chunkHashes) {
+        writer.write(hash + "\n");
+      }
+    }
   }
 }
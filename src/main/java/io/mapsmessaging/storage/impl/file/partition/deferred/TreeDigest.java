@@ -0,0 +1,325 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl.file.partition.deferred;
+
+import lombok.Getter;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Computes a two level (Merkle style) digest over a file. The file is split into fixed size chunks which are hashed
+ * in parallel, the root is the digest of the concatenated chunk hashes. Since each chunk hash is retained, a restored
+ * file, or a range within it, can be validated chunk by chunk without rehashing the entire file. Files that are being
+ * copied anyway can be hashed as they stream past with a {@link Hasher}, so they are only read once, each completed
+ * chunk is hashed on the pool while the copy carries on.
+ */
+public class TreeDigest {
+
+  private static final int READ_BUFFER_SIZE = 64 * 1024;
+  private static final int HASH_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+  private static final int MAX_PENDING_CHUNKS = HASH_THREADS * 2;
+
+  // The chunk reads block, so they run on their own small pool rather than the common fork join pool
+  private static final ThreadPoolExecutor HASH_EXECUTOR = createExecutor();
+
+  private final String digestName;
+
+  @Getter
+  private final long chunkSize;
+
+  public TreeDigest(String digestName, long chunkSize) throws NoSuchAlgorithmException {
+    if (chunkSize <= 0) {
+      throw new IllegalArgumentException("Chunk size must be greater than 0");
+    }
+    MessageDigest.getInstance(digestName); // Validate the algorithm up front, rather than in a worker thread
+    this.digestName = digestName;
+    this.chunkSize = chunkSize;
+  }
+
+  public Result compute(File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      List<String> hashes = hashChunks(channel);
+      return new Result(computeRoot(hashes), hashes);
+    }
+  }
+
+  public Hasher newHasher() {
+    return new Hasher();
+  }
+
+  /**
+   * Validates the file against the supplied chunk hashes
+   *
+   * @return the list of chunk indexes that do not match, empty if the file is valid
+   */
+  public List<Integer> verify(File file, List<String> expected) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      if (chunkCount(channel.size()) != expected.size()) {
+        return compare(new ArrayList<>(), expected);
+      }
+      return compare(hashChunks(channel), expected);
+    }
+  }
+
+  /**
+   * Compares chunk hashes, computed by a {@link Hasher} or {@link #compute(File)}, against the expected hashes
+   *
+   * @return the list of chunk indexes that do not match, every chunk if the counts differ
+   */
+  public List<Integer> compare(List<String> computed, List<String> expected) {
+    List<Integer> failed = new ArrayList<>();
+    if (computed.size() != expected.size()) {
+      for (int x = 0; x < Math.max(computed.size(), expected.size()); x++) {
+        failed.add(x);
+      }
+      return failed;
+    }
+    for (int x = 0; x < computed.size(); x++) {
+      if (!computed.get(x).equals(expected.get(x))) {
+        failed.add(x);
+      }
+    }
+    return failed;
+  }
+
+  public boolean verifyChunk(FileChannel channel, int index, String expected) throws IOException {
+    return encode(hashChunk(channel, index, channel.size())).equals(expected);
+  }
+
+  public String computeRoot(List<String> hashes) {
+    MessageDigest messageDigest = createDigest();
+    for (String hash : hashes) {
+      messageDigest.update(Base64.getDecoder().decode(hash));
+    }
+    return encode(messageDigest.digest());
+  }
+
+  private int chunkCount(long length) {
+    long count = (length + chunkSize - 1) / chunkSize;
+    if (count > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Chunk size too small for file length " + length);
+    }
+    return (int) Math.max(1, count);
+  }
+
+  private List<String> hashChunks(FileChannel channel) throws IOException {
+    long length = channel.size();
+    int chunks = chunkCount(length);
+    List<Future<byte[]>> pending = new ArrayList<>(chunks);
+    for (int x = 0; x < chunks; x++) {
+      int index = x;
+      pending.add(HASH_EXECUTOR.submit(() -> hashChunk(channel, index, length)));
+    }
+    List<String> hashes = new ArrayList<>(chunks);
+    try {
+      for (Future<byte[]> future : pending) {
+        hashes.add(encode(await(future)));
+      }
+    } finally {
+      for (Future<byte[]> future : pending) {
+        future.cancel(false);
+      }
+    }
+    return hashes;
+  }
+
+  private byte[] hashChunk(FileChannel channel, int index, long length) throws IOException {
+    MessageDigest messageDigest = createDigest();
+    ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(READ_BUFFER_SIZE, chunkSize));
+    long position = index * chunkSize;
+    long end = Math.min(length, position + chunkSize);
+    while (position < end) {
+      buffer.clear();
+      buffer.limit((int) Math.min(buffer.capacity(), end - position));
+      int read = channel.read(buffer, position); // positional read, so chunks can be hashed concurrently
+      if (read < 0) {
+        throw new IOException("Unexpected end of file at " + position);
+      }
+      buffer.flip();
+      messageDigest.update(buffer);
+      position += read;
+    }
+    return messageDigest.digest();
+  }
+
+  private static byte[] await(Future<byte[]> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+    }
+  }
+
+  private static ThreadPoolExecutor createExecutor() {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(HASH_THREADS, HASH_THREADS, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+      Thread thread = new Thread(runnable, "TreeDigest");
+      thread.setDaemon(true);
+      return thread;
+    });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  private MessageDigest createDigest() {
+    try {
+      return MessageDigest.getInstance(digestName);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e); // Validated in the constructor
+    }
+  }
+
+  private static String encode(byte[] hash) {
+    return Base64.getEncoder().encodeToString(hash);
+  }
+
+  // Splits the bytes written through it into chunks as they arrive, giving the same hashes as compute(File). Each
+  // completed chunk is handed to the hash pool and the hashes are collected in chunk order, at most MAX_PENDING_CHUNKS
+  // are held in memory before the copy waits for the oldest
+  public final class Hasher {
+
+    private final List<String> hashes;
+    private final Deque<Future<byte[]>> pending;
+    private List<byte[]> pieces;
+    private long remaining;
+
+    private Hasher() {
+      hashes = new ArrayList<>();
+      pending = new ArrayDeque<>();
+      pieces = new ArrayList<>();
+      remaining = chunkSize;
+    }
+
+    public void update(byte[] buffer, int offset, int length) throws IOException {
+      while (length > 0) {
+        int part = (int) Math.min(length, remaining);
+        pieces.add(Arrays.copyOfRange(buffer, offset, offset + part));
+        offset += part;
+        length -= part;
+        remaining -= part;
+        if (remaining == 0) {
+          submitChunk();
+        }
+      }
+    }
+
+    public Result complete() throws IOException {
+      if (remaining != chunkSize || (hashes.isEmpty() && pending.isEmpty())) {
+        submitChunk();
+      }
+      while (!pending.isEmpty()) {
+        hashes.add(encode(await(pending.poll())));
+      }
+      List<String> chunkHashes = new ArrayList<>(hashes);
+      return new Result(computeRoot(chunkHashes), chunkHashes);
+    }
+
+    private void submitChunk() throws IOException {
+      List<byte[]> chunk = pieces;
+      pieces = new ArrayList<>();
+      remaining = chunkSize;
+      pending.add(HASH_EXECUTOR.submit(() -> {
+        MessageDigest messageDigest = createDigest();
+        for (byte[] piece : chunk) {
+          messageDigest.update(piece);
+        }
+        return messageDigest.digest();
+      }));
+      while (pending.size() > MAX_PENDING_CHUNKS) {
+        hashes.add(encode(await(pending.poll())));
+      }
+    }
+
+    public InputStream wrap(InputStream inputStream) {
+      return new FilterInputStream(inputStream) {
+        @Override
+        public int read() throws IOException {
+          int value = super.read();
+          if (value >= 0) {
+            update(new byte[]{(byte) value}, 0, 1);
+          }
+          return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+          int read = super.read(buffer, offset, length);
+          if (read > 0) {
+            update(buffer, offset, read);
+          }
+          return read;
+        }
+      };
+    }
+
+    public OutputStream wrap(OutputStream outputStream) {
+      return new FilterOutputStream(outputStream) {
+        @Override
+        public void write(int value) throws IOException {
+          out.write(value);
+          update(new byte[]{(byte) value}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+          out.write(buffer, offset, length);
+          update(buffer, offset, length);
+        }
+      };
+    }
+  }
+
+  public static final class Result {
+
+    @Getter
+    private final String root;
+
+    @Getter
+    private final List<String> chunkHashes;
+
+    Result(String root, List<String> chunkHashes) {
+      this.root = root;
+      this.chunkHashes = chunkHashes;
+    }
+  }
+}
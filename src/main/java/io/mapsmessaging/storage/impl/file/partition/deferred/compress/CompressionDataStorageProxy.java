@@ -22,10 +22,10 @@ package io.mapsmessaging.storage.impl.file.partition.deferred.compress;
 import io.mapsmessaging.storage.Storable;
 import io.mapsmessaging.storage.impl.file.FileHelper;
 import io.mapsmessaging.storage.impl.file.config.PartitionStorageConfig;
-import io.mapsmessaging.storage.impl.file.partition.DataStorageImpl;
 import io.mapsmessaging.storage.impl.file.partition.deferred.DataStorageProxy;
 import io.mapsmessaging.storage.impl.file.partition.deferred.DataStorageStub;
 import io.mapsmessaging.storage.impl.file.partition.deferred.DeferredRecord;
+import io.mapsmessaging.storage.impl.file.partition.deferred.TreeDigest;
 
 import java.io.File;
 import java.io.IOException;
@@ -59,13 +59,20 @@ public class CompressionDataStorageProxy<T extends Storable> extends DataStorage
       File zipped = new File(fileName+"_zip");
       CompressionRecord compressionRecord = null;
       try {
-        MessageDigest messageDigest = getMessageDigest();
-        long length = compressionHelper.in(source, zipped, messageDigest);
-        String hash = "";
-        if(messageDigest != null){
-          hash = Base64.getEncoder().encodeToString(messageDigest.digest());
+        if (isTreeDigest()) {
+          compressionRecord = new CompressionRecord(source.length(), "", digestName);
+          TreeDigest.Hasher hasher = createTreeHasher();
+          compressionHelper.in(source, zipped, hasher);
+          applyTreeDigest(hasher.complete(), compressionRecord);
+        } else {
+          MessageDigest messageDigest = getMessageDigest();
+          long length = compressionHelper.in(source, zipped, messageDigest);
+          String hash = "";
+          if (messageDigest != null) {
+            hash = Base64.getEncoder().encodeToString(messageDigest.digest());
+          }
+          compressionRecord = new CompressionRecord(length, hash, digestName);
         }
-        compressionRecord = new CompressionRecord(length, hash, digestName);
         compressionRecord.write(fileName);
       } catch (NoSuchAlgorithmException e) {
         throw new IOException(e);
@@ -82,19 +89,30 @@ public class CompressionDataStorageProxy<T extends Storable> extends DataStorage
     File destination = new File(fileName);
     try {
       CompressionRecord compressionRecord = (CompressionRecord) ((DataStorageStub<T>)physicalStore).getDeferredRecord();
-      MessageDigest messageDigest = getMessageDigest(compressionRecord.getDigestName());
-      compressionHelper.out(zipped, destination, messageDigest);
-      if(messageDigest != null) {
-        String computed = Base64.getEncoder().encodeToString(messageDigest.digest());
-        if (!computed.equals(compressionRecord.getDeferredHash())) {
-          throw new IOException("MD5 hash does not match");
-        }
+      if (compressionRecord.getChunkSize() > 0) {
+        TreeDigest.Hasher hasher = createTreeHasher(compressionRecord);
+        compressionHelper.out(zipped, destination, hasher);
+        verifyTreeDigest(hasher.complete(), compressionRecord);
+      } else {
+        restoreWithDigest(compressionHelper, zipped, destination, compressionRecord);
       }
-      physicalStore = new DataStorageImpl<>(fileName, storableFactory, sync, maxPartitionSize);
+      physicalStore = openPhysicalStore();
       isArchived = false;
     }
     catch (NoSuchAlgorithmException e) {
       throw new IOException(e);
     }
   }
+
+  private void restoreWithDigest(FileCompressionProcessor compressionHelper, File zipped, File destination, CompressionRecord compressionRecord)
+      throws IOException, NoSuchAlgorithmException {
+    MessageDigest messageDigest = getMessageDigest(compressionRecord.getDigestName());
+    compressionHelper.out(zipped, destination, messageDigest);
+    if(messageDigest != null) {
+      String computed = Base64.getEncoder().encodeToString(messageDigest.digest());
+      if (!computed.equals(compressionRecord.getDeferredHash())) {
+        throw new IOException("MD5 hash does not match");
+      }
+    }
+  }
 }
\ No newline at end of file
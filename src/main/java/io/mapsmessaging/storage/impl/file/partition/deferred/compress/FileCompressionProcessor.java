@@ -21,6 +21,7 @@ package io.mapsmessaging.storage.impl.file.partition.deferred.compress;
 
 import io.mapsmessaging.storage.impl.file.FileHelper;
 import io.mapsmessaging.storage.impl.file.partition.deferred.FileProcessor;
+import io.mapsmessaging.storage.impl.file.partition.deferred.TreeDigest;
 import org.jetbrains.annotations.NotNull;
 
 import javax.annotation.Nonnull;
@@ -29,6 +30,8 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.security.MessageDigest;
 
 public class FileCompressionProcessor implements FileProcessor {
@@ -55,4 +58,27 @@ public class FileCompressionProcessor implements FileProcessor {
     FileHelper.delete(in);
     return out.length();
   }
+
+  // Tree digests are built from the bytes as they stream through, rather than by reading the file a second time
+  public long in(@Nonnull File in, @Nonnull File out, @Nonnull TreeDigest.Hasher hasher) throws IOException {
+    long length = in.length();
+    try(FileOutputStream fileOutputStream = new FileOutputStream(out)){
+      try (InputStream inputStream = hasher.wrap(new FileInputStream(in))) {
+        StreamCompressionHelper streamCompressionHelper = new StreamCompressionHelper();
+        streamCompressionHelper.in(inputStream, fileOutputStream, null);
+      }
+    }
+    return length;
+  }
+
+  public long out(@Nonnull File in, @Nonnull File out, @Nonnull TreeDigest.Hasher hasher) throws IOException {
+    try(FileInputStream fileInputStream = new FileInputStream(in)){
+      try (OutputStream outputStream = hasher.wrap(new FileOutputStream(out))) {
+        StreamCompressionHelper streamCompressionHelper = new StreamCompressionHelper();
+        streamCompressionHelper.out(fileInputStream, outputStream, null);
+      }
+    }
+    FileHelper.delete(in);
+    return out.length();
+  }
 }
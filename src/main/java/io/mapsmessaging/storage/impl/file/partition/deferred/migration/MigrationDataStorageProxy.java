@@ -22,10 +22,10 @@ package io.mapsmessaging.storage.impl.file.partition.deferred.migration;
 import io.mapsmessaging.storage.Storable;
 import io.mapsmessaging.storage.impl.file.FileHelper;
 import io.mapsmessaging.storage.impl.file.config.PartitionStorageConfig;
-import io.mapsmessaging.storage.impl.file.partition.DataStorageImpl;
 import io.mapsmessaging.storage.impl.file.partition.deferred.DataStorageProxy;
 import io.mapsmessaging.storage.impl.file.partition.deferred.DataStorageStub;
 import io.mapsmessaging.storage.impl.file.partition.deferred.DeferredRecord;
+import io.mapsmessaging.storage.impl.file.partition.deferred.TreeDigest;
 import io.mapsmessaging.storage.impl.file.partition.deferred.compress.FileCompressionProcessor;
 
 import java.io.File;
@@ -68,15 +68,23 @@ public class MigrationDataStorageProxy<T extends Storable> extends DataStoragePr
       File from = new File(fileName);
       File to = new File(destination+File.separator+fileName+"_zip");
       try {
-        MessageDigest messageDigest = getMessageDigest();
         FileCompressionProcessor compressionHelper = new FileCompressionProcessor();
         Files.createDirectories(to.getParentFile().toPath());
-        long length = compressionHelper.in(from, to, messageDigest);
-        String hash = null;
-        if(messageDigest != null){
-          hash =  Base64.getEncoder().encodeToString(messageDigest.digest());
+        MigrationRecord migrationRecord;
+        if (isTreeDigest()) {
+          migrationRecord = new MigrationRecord(from.length(), null, digestName);
+          TreeDigest.Hasher hasher = createTreeHasher();
+          compressionHelper.in(from, to, hasher);
+          applyTreeDigest(hasher.complete(), migrationRecord);
+        } else {
+          MessageDigest messageDigest = getMessageDigest();
+          long length = compressionHelper.in(from, to, messageDigest);
+          String hash = null;
+          if (messageDigest != null) {
+            hash = Base64.getEncoder().encodeToString(messageDigest.digest());
+          }
+          migrationRecord = new MigrationRecord(length, hash, digestName);
         }
-        MigrationRecord migrationRecord = new MigrationRecord(length, hash, digestName);
         migrationRecord.write(fileName);
         physicalStore = new DataStorageStub<>(migrationRecord);
         isArchived = true;
@@ -93,16 +101,21 @@ public class MigrationDataStorageProxy<T extends Storable> extends DataStoragePr
       FileCompressionProcessor compressionHelper = new FileCompressionProcessor();
       FileHelper.delete(to);
       MigrationRecord migrationRecord = (MigrationRecord) ((DataStorageStub<T>)physicalStore).getDeferredRecord();
-      MessageDigest messageDigest = getMessageDigest(migrationRecord.getDigestName());
-      compressionHelper.out(from, to, messageDigest);
-      String digest = null;
-      if(messageDigest != null) {
-        digest = Base64.getEncoder().encodeToString(messageDigest.digest());
-        if(!digest.equals(migrationRecord.getDeferredHash())){
-          throw new IOException("File has been changed, MD5 hash does not match");
+      if (migrationRecord.getChunkSize() > 0) {
+        TreeDigest.Hasher hasher = createTreeHasher(migrationRecord);
+        compressionHelper.out(from, to, hasher);
+        verifyTreeDigest(hasher.complete(), migrationRecord);
+      } else {
+        MessageDigest messageDigest = getMessageDigest(migrationRecord.getDigestName());
+        compressionHelper.out(from, to, messageDigest);
+        if (messageDigest != null) {
+          String digest = Base64.getEncoder().encodeToString(messageDigest.digest());
+          if (!digest.equals(migrationRecord.getDeferredHash())) {
+            throw new IOException("File has been changed, MD5 hash does not match");
+          }
         }
       }
-      physicalStore = new DataStorageImpl<>(fileName, storableFactory, sync, maxPartitionSize);
+      physicalStore = openPhysicalStore();
       isArchived = false;
     } catch (NoSuchAlgorithmException e) {
       throw new IOException(e);
@@ -21,7 +21,6 @@ package io.mapsmessaging.storage.impl.file.partition.deferred.s3tier;
 
 import io.mapsmessaging.storage.Storable;
 import io.mapsmessaging.storage.impl.file.config.PartitionStorageConfig;
-import io.mapsmessaging.storage.impl.file.partition.DataStorageImpl;
 import io.mapsmessaging.storage.impl.file.partition.deferred.DataStorageProxy;
 import io.mapsmessaging.storage.impl.file.partition.deferred.DataStorageStub;
 import io.mapsmessaging.storage.impl.file.partition.deferred.DeferredRecord;
@@ -61,8 +60,17 @@ public class S3DataStorageProxy<T extends Storable> extends DataStorageProxy<T>
     if(!isArchived){
       File file = new File(fileName);
       try {
-        MessageDigest messageDigest = getMessageDigest();
-        S3Record s3Record = s3TransferApi.archive(file.getParentFile().getPath(), fileName, messageDigest);
+        S3Record s3Record;
+        if (isTreeDigest()) {
+          S3Record treeRecord = new S3Record();
+          computeTreeDigest(file, treeRecord); // Must be computed before the transfer, since the local file is removed
+          s3Record = s3TransferApi.archive(file.getParentFile().getPath(), fileName, null);
+          s3Record.setDeferredHash(treeRecord.getDeferredHash());
+          s3Record.setChunkSize(treeRecord.getChunkSize());
+          s3Record.setChunkHashes(treeRecord.getChunkHashes());
+        } else {
+          s3Record = s3TransferApi.archive(file.getParentFile().getPath(), fileName, getMessageDigest());
+        }
         s3Record.setDigestName(digestName);
         s3Record.write(fileName);
         physicalStore = new DataStorageStub<>(s3Record);
@@ -76,9 +84,15 @@ public class S3DataStorageProxy<T extends Storable> extends DataStorageProxy<T>
   public void restore() throws IOException {
     S3Record s3Record = (S3Record) ((DataStorageStub<T>)physicalStore).getDeferredRecord();
     try {
-      MessageDigest messageDigest = getMessageDigest(s3Record.getDigestName());
-      s3TransferApi.retrieve(fileName, s3Record, messageDigest);
-      physicalStore = new DataStorageImpl<>(fileName, storableFactory, sync, maxPartitionSize);
+      if (s3Record.getChunkSize() > 0) {
+        s3TransferApi.retrieve(fileName, s3Record, null, false);
+        verifyTreeDigest(new File(fileName), s3Record);
+        s3TransferApi.delete(s3Record); // Only remove the remote copy once the local copy has been validated
+      } else {
+        MessageDigest messageDigest = getMessageDigest(s3Record.getDigestName());
+        s3TransferApi.retrieve(fileName, s3Record, messageDigest);
+      }
+      physicalStore = openPhysicalStore();
       isArchived = false;
     } catch (NoSuchAlgorithmException e) {
       throw new IOException(e);
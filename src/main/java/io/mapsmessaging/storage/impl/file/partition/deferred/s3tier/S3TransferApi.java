@@ -60,6 +60,10 @@ public class S3TransferApi {
   }
 
   public void retrieve(String localFileName, S3Record s3Record, MessageDigest messageDigest) throws IOException {
+    retrieve(localFileName, s3Record, messageDigest, true);
+  }
+
+  public void retrieve(String localFileName, S3Record s3Record, MessageDigest messageDigest, boolean deleteEntry) throws IOException {
     File file = new File(localFileName);
     if (!FileHelper.delete(localFileName)) {
       LOGGER.log(S3_FILE_DELETE_FAILED, localFileName);
@@ -88,7 +92,9 @@ public class S3TransferApi {
         }
       }
 
-      delete(s3Record);
+      if (deleteEntry) {
+        delete(s3Record);
+      }
       LOGGER.log(S3_RESTORED_DATA, localFileName, bucketName);
     } catch (S3Exception e) {
       throw new IOException(e);
@@ -0,0 +1,40 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl.journal;
+
+import lombok.Getter;
+
+// Location of a live record in the journal. Entries are immutable and compared by identity, so a relocation only
+// replaces the index entry it copied
+@Getter
+class JournalEntry {
+
+  private final int segment;
+  private final long offset;
+  private final int length;
+  private final long expiry;
+
+  JournalEntry(int segment, long offset, int length, long expiry) {
+    this.segment = segment;
+    this.offset = offset;
+    this.length = length;
+    this.expiry = expiry;
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl.journal;
+
+import lombok.Getter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// One append only file of the journal, with a count of the records and bytes still referenced by a store index
+class JournalSegment {
+
+  @Getter
+  private final int id;
+  private final File file;
+  private final FileChannel channel;
+  private final AtomicInteger liveRecords;
+  private final AtomicLong liveBytes;
+
+  @Getter
+  private long length;
+
+  JournalSegment(File file, int id) throws IOException {
+    this.id = id;
+    this.file = file;
+    channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    length = channel.size();
+    liveRecords = new AtomicInteger();
+    liveBytes = new AtomicLong();
+  }
+
+  long write(ByteBuffer[] buffers, int total) throws IOException {
+    long offset = length;
+    channel.position(offset);
+    long written = 0;
+    while (written < total) {
+      written += channel.write(buffers);
+    }
+    length += total;
+    return offset;
+  }
+
+  ByteBuffer read(long offset, int size) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(size);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, offset + buffer.position()) < 0) {
+        throw new IOException("Journal segment " + file + " ended before the record at " + offset);
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  void truncate(long size) throws IOException {
+    channel.truncate(size);
+    length = size;
+  }
+
+  void force() throws IOException {
+    channel.force(false);
+  }
+
+  void retain(int bytes) {
+    liveRecords.incrementAndGet();
+    liveBytes.addAndGet(bytes);
+  }
+
+  void release(int bytes) {
+    liveRecords.decrementAndGet();
+    liveBytes.addAndGet(-bytes);
+  }
+
+  int getLiveRecords() {
+    return liveRecords.get();
+  }
+
+  long getLiveBytes() {
+    return liveBytes.get();
+  }
+
+  void close() throws IOException {
+    channel.close();
+  }
+
+  void delete() throws IOException {
+    channel.close();
+    Files.deleteIfExists(file.toPath());
+  }
+}
@@ -0,0 +1,432 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl.journal;
+
+import io.mapsmessaging.storage.*;
+import io.mapsmessaging.storage.impl.expired.ExpireStorableTaskManager;
+import io.mapsmessaging.storage.impl.file.TaskQueue;
+import io.mapsmessaging.utilities.collections.NaturalOrderedLongList;
+import io.mapsmessaging.utilities.collections.NaturalOrderedLongQueue;
+import io.mapsmessaging.utilities.collections.bitset.BitSetFactory;
+import io.mapsmessaging.utilities.collections.bitset.BitSetFactoryImpl;
+import io.mapsmessaging.utilities.threads.tasks.TaskScheduler;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A store whose records live in a {@link SharedJournal} alongside the records of other stores, located through an in
+ * memory index of the store's live records. The store holds no files of its own, so many small stores share the
+ * journal's open segments and, when Sync is set, its flushes.
+ */
+public class JournalStorage<T extends Storable> implements Storage<T>, ExpiredMonitor {
+
+  private final ExpiredStorableHandler expiredHandler;
+
+  @Getter
+  private final TaskQueue taskScheduler;
+
+  private final String name;
+  private final boolean sync;
+  private final StorableFactory<T> storableFactory;
+  private final SharedJournal journal;
+  private final int storeId;
+  private final ConcurrentSkipListMap<Long, JournalEntry> index;
+  private final ExpireStorableTaskManager<T> expiredMonitor;
+
+  private final LongAdder reads;
+  private final LongAdder writes;
+  private final LongAdder deletes;
+
+  private final LongAdder readTimes;
+  private final LongAdder writeTimes;
+
+  private final LongAdder byteWrites;
+  private final LongAdder byteReads;
+
+  private boolean shutdown;
+  private boolean closed;
+  private long lastKeyStored;
+  private long lastAccess;
+
+  @SuppressWarnings("unchecked")
+  public JournalStorage(JournalStorageConfig config, ExpiredStorableHandler expiredHandler) throws IOException {
+    this.expiredHandler = Objects.requireNonNullElseGet(expiredHandler, () -> new BaseExpiredHandler<>(this));
+    name = config.getFileName();
+    sync = config.isSync();
+    storableFactory = config.getStorableFactory();
+    taskScheduler = config.getTaskQueue();
+    String directory = config.getJournalDirectory();
+    if (directory == null || directory.isBlank()) {
+      File parent = new File(name).getParentFile();
+      directory = parent != null ? new File(parent, "journal").getPath() : "journal";
+    }
+    journal = SharedJournal.open(directory, config.getSegmentSize(), config.getCompactionThreshold());
+    storeId = journal.register(name);
+    index = journal.getIndex(storeId);
+    expiredMonitor = new ExpireStorableTaskManager<>(this, taskScheduler, config.getExpiredEventPoll());
+    reads = new LongAdder();
+    writes = new LongAdder();
+    readTimes = new LongAdder();
+    writeTimes = new LongAdder();
+    deletes = new LongAdder();
+    byteWrites = new LongAdder();
+    byteReads = new LongAdder();
+    shutdown = false;
+    closed = false;
+    lastKeyStored = -2;
+    lastAccess = System.currentTimeMillis();
+    for (JournalEntry entry : index.values()) {
+      if (entry.getExpiry() > 0) {
+        expiredMonitor.schedulePoll();
+        break;
+      }
+    }
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public void shutdown() throws IOException {
+    shutdown = true;
+    expiredMonitor.close();
+    while (taskScheduler.hasTasks()) {
+      taskScheduler.executeTasks();
+    }
+    taskScheduler.abortAll();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!closed) {
+      closed = true;
+      expiredMonitor.close();
+      SharedJournal.release(journal);
+    }
+  }
+
+  @Override
+  public void delete() throws IOException {
+    if (!shutdown) {
+      shutdown();
+    }
+    if (!closed) {
+      closed = true;
+      journal.drop(name);
+      SharedJournal.release(journal);
+    }
+  }
+
+  @Override
+  public void add(@NotNull T object) throws IOException {
+    lastAccess = System.currentTimeMillis();
+    long time = System.currentTimeMillis();
+    ByteBuffer[] buffers = storableFactory.pack(object);
+    JournalEntry entry;
+    synchronized (index) {
+      if (index.containsKey(object.getKey())) {
+        throw new IOException("Key already exists");
+      }
+      entry = journal.add(storeId, object.getKey(), object.getExpiry(), buffers);
+      index.put(object.getKey(), entry);
+    }
+    if (sync) {
+      journal.commit();
+    }
+    expiredMonitor.added(object);
+    byteWrites.add(entry.getLength());
+    writes.increment();
+    writeTimes.add((System.currentTimeMillis() - time));
+    if (getLastKey() < object.getKey()) {
+      lastKeyStored = object.getKey();
+    }
+  }
+
+  @Override
+  public boolean remove(long key) throws IOException {
+    lastAccess = System.currentTimeMillis();
+    synchronized (index) {
+      JournalEntry entry = index.remove(key);
+      if (entry == null) {
+        return false;
+      }
+      journal.remove(storeId, key);
+      journal.release(entry);
+    }
+    if (sync) {
+      journal.commit();
+    }
+    deletes.increment();
+    byteWrites.add(SharedJournal.HEADER_SIZE);
+    journal.collect();
+    return true;
+  }
+
+  @Override
+  public boolean supportAtomicBatches() {
+    return true;
+  }
+
+  // The batch is written to the journal with its commit record in one write and, when Sync is set, flushed once
+  @Override
+  public void apply(@NotNull Batch<T> batch) throws IOException {
+    if (batch.isEmpty()) {
+      return;
+    }
+    lastAccess = System.currentTimeMillis();
+    long time = System.currentTimeMillis();
+    List<Batch.Operation<T>> operations = batch.getOperations();
+    ByteBuffer[][] packed = new ByteBuffer[operations.size()][];
+    for (int x = 0; x < operations.size(); x++) {
+      Batch.Operation<T> operation = operations.get(x);
+      if (operation.isAdd()) {
+        packed[x] = storableFactory.pack(operation.getObject());
+      }
+    }
+    int added = 0;
+    int removed = 0;
+    long written = 0;
+    synchronized (index) {
+      // An add of a key that exists rejects the whole batch, and a remove of a key that is not present writes
+      // nothing, as they would outside a batch
+      List<Integer> kept = new ArrayList<>();
+      Set<Long> present = new HashSet<>();
+      Set<Long> absent = new HashSet<>();
+      for (int x = 0; x < operations.size(); x++) {
+        long key = operations.get(x).getKey();
+        boolean exists = present.contains(key) || (!absent.contains(key) && index.containsKey(key));
+        if (packed[x] != null) {
+          if (exists) {
+            throw new IOException("Key already exists: " + key);
+          }
+          present.add(key);
+          absent.remove(key);
+          kept.add(x);
+        } else if (exists) {
+          present.remove(key);
+          absent.add(key);
+          kept.add(x);
+        }
+      }
+      if (kept.isEmpty()) {
+        return;
+      }
+      long[] keys = new long[kept.size()];
+      long[] expiries = new long[kept.size()];
+      ByteBuffer[][] buffers = new ByteBuffer[kept.size()][];
+      for (int x = 0; x < kept.size(); x++) {
+        Batch.Operation<T> operation = operations.get(kept.get(x));
+        keys[x] = operation.getKey();
+        buffers[x] = packed[kept.get(x)];
+        expiries[x] = operation.isAdd() ? operation.getObject().getExpiry() : 0;
+      }
+      JournalEntry[] entries = journal.batch(storeId, keys, expiries, buffers);
+      for (int x = 0; x < entries.length; x++) {
+        JournalEntry previous;
+        if (entries[x] != null) {
+          previous = index.put(keys[x], entries[x]);
+          written += entries[x].getLength();
+          added++;
+        } else {
+          previous = index.remove(keys[x]);
+          written += SharedJournal.HEADER_SIZE;
+          removed++;
+        }
+        if (previous != null) {
+          journal.release(previous);
+        }
+      }
+    }
+    if (sync) {
+      journal.commit();
+    }
+    for (Batch.Operation<T> operation : operations) {
+      if (operation.isAdd()) {
+        expiredMonitor.added(operation.getObject());
+        if (getLastKey() < operation.getKey()) {
+          lastKeyStored = operation.getKey();
+        }
+      }
+    }
+    byteWrites.add(written);
+    writes.add(added);
+    deletes.add(removed);
+    writeTimes.add((System.currentTimeMillis() - time));
+    if (removed > 0) {
+      journal.collect();
+    }
+  }
+
+  @Override
+  public @Nullable T get(long key) throws IOException {
+    lastAccess = System.currentTimeMillis();
+    long time = System.currentTimeMillis();
+    try {
+      ByteBuffer[] buffers;
+      int length;
+      synchronized (index) {
+        JournalEntry entry = index.get(key);
+        if (entry == null) {
+          return null;
+        }
+        buffers = journal.read(entry);
+        length = entry.getLength();
+      }
+      reads.increment();
+      byteReads.add(length);
+      return storableFactory.unpack(buffers);
+    } finally {
+      readTimes.add((System.currentTimeMillis() - time));
+    }
+  }
+
+  @Override
+  public boolean contains(long key) {
+    return index.containsKey(key);
+  }
+
+  @Override
+  public @NotNull List<Long> getKeys() {
+    List<Long> keyList = new NaturalOrderedLongList();
+    keyList.addAll(index.keySet());
+    return keyList;
+  }
+
+  @Override
+  public long size() {
+    return index.size();
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return index.isEmpty();
+  }
+
+  @Override
+  public long getLastKey() {
+    if (lastKeyStored == -2) {
+      lastKeyStored = index.isEmpty() ? 0 : index.lastKey();
+    }
+    return lastKeyStored;
+  }
+
+  @Override
+  public long getLastAccess() {
+    return lastAccess;
+  }
+
+  @Override
+  public void updateLastAccess() {
+    lastAccess = System.currentTimeMillis();
+  }
+
+  @Override
+  public @NotNull Collection<Long> keepOnly(@NotNull Collection<Long> listToKeep) throws IOException {
+    Set<Long> keep = new HashSet<>(listToKeep);
+    for (Long key : new ArrayList<>(index.keySet())) {
+      if (!keep.contains(key)) {
+        remove(key);
+      }
+    }
+    List<Long> notFound = new ArrayList<>();
+    for (Long key : listToKeep) {
+      if (!index.containsKey(key)) {
+        notFound.add(key);
+      }
+    }
+    return notFound;
+  }
+
+  @Override
+  public int removeAll(@NotNull Collection<Long> listToRemove) throws IOException {
+    int counter = 0;
+    for (Long key : listToRemove) {
+      if (remove(key)) {
+        counter++;
+      }
+    }
+    return counter;
+  }
+
+  @Override
+  public void scanForExpired() throws IOException {
+    long now = System.currentTimeMillis();
+    try (BitSetFactory bitSetFactory = new BitSetFactoryImpl(8192)) {
+      Queue<Long> expiredList = new NaturalOrderedLongQueue(0, bitSetFactory);
+      boolean pending = false;
+      for (Map.Entry<Long, JournalEntry> entry : index.entrySet()) {
+        long expiry = entry.getValue().getExpiry();
+        if (expiry > 0) {
+          if (expiry < now) {
+            expiredList.add(entry.getKey());
+          } else {
+            pending = true;
+          }
+        }
+      }
+      if (!expiredList.isEmpty()) {
+        expiredHandler.expired(expiredList);
+      }
+      if (pending || !expiredList.isEmpty()) {
+        expiredMonitor.schedulePoll();
+      }
+    }
+  }
+
+  @Override
+  public void setExecutor(TaskScheduler scheduler) {
+    taskScheduler.setTaskScheduler(scheduler);
+  }
+
+  @Override
+  public boolean executeTasks() throws IOException {
+    return taskScheduler.executeTasks();
+  }
+
+  @Override
+  public @NotNull Statistics getStatistics() {
+    long length = 0;
+    for (JournalEntry entry : index.values()) {
+      length += entry.getLength();
+    }
+    return new StorageStatistics(
+        reads.sumThenReset(),
+        writes.sumThenReset(),
+        deletes.sumThenReset(),
+        byteReads.sumThenReset(),
+        byteWrites.sumThenReset(),
+        readTimes.sumThenReset(),
+        writeTimes.sumThenReset(),
+        length,
+        0,
+        journal.getSegmentCount()
+    );
+  }
+}
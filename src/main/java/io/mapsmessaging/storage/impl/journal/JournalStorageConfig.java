@@ -0,0 +1,97 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.mapsmessaging.storage.impl.journal;
+
+import io.mapsmessaging.storage.StorableFactory;
+import io.mapsmessaging.storage.StorageConfig;
+import io.mapsmessaging.storage.impl.file.TaskQueue;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+import java.util.Map;
+
+@EqualsAndHashCode(callSuper = false)
+@Data
+@Schema(description = "Stores that append to a journal of segment files shared with other stores")
+public class JournalStorageConfig extends StorageConfig {
+
+  private static final long SEGMENT_SIZE = 64L * 1024 * 1024;
+  private static final int EXPIRED_EVENT_MONITOR_TIME = 1;
+  private static final int COMPACTION_THRESHOLD = 50;
+
+  @Schema(description = "Logical store name, recorded in the journal catalog")
+  private String fileName;
+
+  @Schema(description = "Directory holding the shared journal, defaults to a journal directory beside the store name")
+  private String journalDirectory;
+
+  @Schema(description = "Force the journal to disk before an add or remove completes, concurrent stores share one flush", defaultValue = "false")
+  private boolean sync;
+
+  @Schema(description = "Size in bytes at which the journal rolls over to a new segment file", defaultValue = "67108864")
+  private long segmentSize;
+
+  @Schema(description = "Percentage of live bytes below which the oldest segment is compacted and removed", defaultValue = "50")
+  private int compactionThreshold;
+
+  @Schema(description = "Polling interval (in seconds) for expired events", defaultValue = "1")
+  private int expiredEventPoll;
+
+  @Schema(description = "Task queue identifier used for expired message handling")
+  private TaskQueue taskQueue;
+
+  @SuppressWarnings("java:S3740") // Unfortunately I can not
+  private StorableFactory storableFactory;
+
+  public JournalStorageConfig() {
+    type = "Journal";
+    segmentSize = SEGMENT_SIZE;
+    compactionThreshold = COMPACTION_THRESHOLD;
+    expiredEventPoll = EXPIRED_EVENT_MONITOR_TIME;
+  }
+
+  public JournalStorageConfig(JournalStorageConfig lhs) {
+    super(lhs);
+    type = "Journal";
+    this.fileName = lhs.fileName;
+    this.journalDirectory = lhs.journalDirectory;
+    this.sync = lhs.sync;
+    this.segmentSize = lhs.segmentSize;
+    this.compactionThreshold = lhs.compactionThreshold;
+    this.expiredEventPoll = lhs.expiredEventPoll;
+    this.taskQueue = lhs.taskQueue;
+    this.storableFactory = lhs.storableFactory;
+  }
+
+  @Override
+  public StorageConfig getCopy() {
+    return new JournalStorageConfig(this);
+  }
+
+  @Override
+  public void fromMap(Map<String, String> properties) {
+    super.fromMap(properties);
+    journalDirectory = properties.get("JournalDirectory");
+    sync = Boolean.parseBoolean(properties.getOrDefault("Sync", "false"));
+    segmentSize = Long.parseLong(properties.getOrDefault("SegmentSize", String.valueOf(SEGMENT_SIZE)));
+    compactionThreshold = Integer.parseInt(properties.getOrDefault("CompactionThreshold", String.valueOf(COMPACTION_THRESHOLD)));
+    expiredEventPoll = Integer.parseInt(properties.getOrDefault("ExpiredEventPoll", String.valueOf(EXPIRED_EVENT_MONITOR_TIME)));
+  }
+}
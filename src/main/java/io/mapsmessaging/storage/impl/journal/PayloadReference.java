@@ -0,0 +1,65 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl.journal;
+
+import io.mapsmessaging.storage.Storable;
+import io.mapsmessaging.storage.StorableFactory;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// What a store keeps for each record when its payloads live in a SharedPayloadStore
+@Getter
+public class PayloadReference implements Storable {
+
+  private static final int PACKED_SIZE = 24;
+
+  private final long key;
+  private final long expiry;
+  private final long contentId;
+
+  public PayloadReference(long key, long expiry, long contentId) {
+    this.key = key;
+    this.expiry = expiry;
+    this.contentId = contentId;
+  }
+
+  public static class Factory implements StorableFactory<PayloadReference> {
+
+    @Override
+    public @NotNull PayloadReference unpack(@NotNull ByteBuffer[] reloadBuffers) throws IOException {
+      ByteBuffer buffer = reloadBuffers[0];
+      if (buffer.remaining() < PACKED_SIZE) {
+        throw new IOException("Payload reference is truncated");
+      }
+      return new PayloadReference(buffer.getLong(buffer.position()), buffer.getLong(buffer.position() + 8), buffer.getLong(buffer.position() + 16));
+    }
+
+    @Override
+    public @NotNull ByteBuffer[] pack(@NotNull PayloadReference object) {
+      ByteBuffer buffer = ByteBuffer.allocate(PACKED_SIZE);
+      buffer.putLong(object.key).putLong(object.expiry).putLong(object.contentId);
+      buffer.flip();
+      return new ByteBuffer[]{buffer};
+    }
+  }
+}
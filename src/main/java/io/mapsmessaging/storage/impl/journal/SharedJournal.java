@@ -0,0 +1,543 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl.journal;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * A journal of segment files that any number of stores append to. Each record carries the id of the store it belongs
+ * to, the catalog file maps store names to ids, and each store keeps an in memory index of its live records that is
+ * rebuilt by replaying the segments when the journal is opened. Stores that sync share one flush of the active
+ * segment, and space is reclaimed a segment at a time from the oldest, once its live records have been removed or
+ * copied forward, so the open files and flushes grow with the journal rather than with the number of stores.
+ * <p>
+ * Record layout: [int length][int crc][byte type][int store][long key][long expiry] followed, for an add, by
+ * [int count][int len_i]... and the packed buffers. The crc covers everything after the crc field. The records of a
+ * batch are flagged and followed by a commit record, all in one write to one segment, and replay drops flagged records
+ * that are not followed by their commit record.
+ */
+public class SharedJournal implements Closeable {
+
+  static final int HEADER_SIZE = 29;
+  static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+  static final int DEFAULT_COMPACTION_THRESHOLD = 50;
+  private static final byte ADD = 1;
+  private static final byte REMOVE = 2;
+  private static final byte COMMIT = 3;
+  private static final byte BATCHED = 0x10;
+  private static final byte TYPE_MASK = 0x0F;
+
+  private static final String SEGMENT_FILE_NAME = "segment_";
+  private static final String CATALOG_FILE_NAME = "catalog";
+
+  private static final Map<String, SharedJournal> OPEN_JOURNALS = new HashMap<>();
+
+  private final String key;
+  private final File directory;
+  private final long segmentSize;
+  private final int compactionThreshold;
+  private final ConcurrentSkipListMap<Integer, JournalSegment> segments;
+  private final Map<String, Integer> catalog;
+  private final Map<Integer, ConcurrentSkipListMap<Long, JournalEntry>> indexes;
+  private final Object commitLock;
+  private final AtomicBoolean collecting;
+
+  // Readers hold the read lock while using a segment's channel, a segment is only closed under the write lock
+  private final ReadWriteLock segmentLock;
+
+  private JournalSegment current;
+  private int nextStoreId;
+  private int references;
+  private long appended;
+  private volatile long committed;
+
+  public static synchronized SharedJournal open(String directory, long segmentSize, int compactionThreshold) throws IOException {
+    String key = new File(directory).getCanonicalPath();
+    SharedJournal journal = OPEN_JOURNALS.get(key);
+    if (journal == null) {
+      journal = new SharedJournal(key, segmentSize, compactionThreshold);
+      OPEN_JOURNALS.put(key, journal);
+    } else if (journal.segmentSize != segmentSize || journal.compactionThreshold != compactionThreshold) {
+      throw new IOException("Journal " + key + " is already open with segment size " + journal.segmentSize +
+          " and compaction threshold " + journal.compactionThreshold + ", not " + segmentSize + " and " + compactionThreshold);
+    }
+    journal.references++;
+    return journal;
+  }
+
+  public static synchronized void release(SharedJournal journal) throws IOException {
+    journal.references--;
+    if (journal.references == 0) {
+      OPEN_JOURNALS.remove(journal.key);
+      journal.close();
+    }
+  }
+
+  private SharedJournal(String key, long segmentSize, int compactionThreshold) throws IOException {
+    this.key = key;
+    this.directory = new File(key);
+    this.segmentSize = segmentSize;
+    this.compactionThreshold = compactionThreshold;
+    segments = new ConcurrentSkipListMap<>();
+    catalog = new LinkedHashMap<>();
+    indexes = new ConcurrentHashMap<>();
+    commitLock = new Object();
+    collecting = new AtomicBoolean(false);
+    segmentLock = new ReentrantReadWriteLock();
+    references = 0;
+    Files.createDirectories(directory.toPath());
+    loadCatalog();
+    replay();
+    committed = appended;
+  }
+
+  //region Store registration
+  public synchronized int register(String name) throws IOException {
+    Integer id = catalog.get(name);
+    if (id == null) {
+      id = nextStoreId++;
+      catalog.put(name, id);
+      saveCatalog();
+    }
+    indexes.computeIfAbsent(id, k -> new ConcurrentSkipListMap<>());
+    return id;
+  }
+
+  // The index of the store's live records, callers hold its monitor while reading or changing it
+  ConcurrentSkipListMap<Long, JournalEntry> getIndex(int storeId) {
+    return indexes.get(storeId);
+  }
+
+  public void drop(String name) throws IOException {
+    Integer id;
+    synchronized (this) {
+      id = catalog.remove(name);
+      if (id == null) {
+        return;
+      }
+      saveCatalog(); // records of an unknown store are skipped on replay
+    }
+    ConcurrentSkipListMap<Long, JournalEntry> index = indexes.remove(id);
+    if (index != null) {
+      synchronized (index) {
+        for (JournalEntry entry : index.values()) {
+          release(entry);
+        }
+        index.clear();
+      }
+    }
+    collect();
+  }
+  //endregion
+
+  //region Record access
+  JournalEntry add(int storeId, long recordKey, long expiry, ByteBuffer[] buffers) throws IOException {
+    ByteBuffer[] record = addRecord(ADD, storeId, recordKey, expiry, buffers);
+    return append(record, record[0].getInt(0), expiry);
+  }
+
+  void remove(int storeId, long recordKey) throws IOException {
+    append(new ByteBuffer[]{headerRecord(REMOVE, storeId, recordKey)}, HEADER_SIZE, 0);
+  }
+
+  // Writes the records of a batch followed by its commit record with a single write, a null buffer list is a remove.
+  // Returns the entries of the adds, in the order given, with null for the removes
+  JournalEntry[] batch(int storeId, long[] keys, long[] expiries, ByteBuffer[][] buffers) throws IOException {
+    List<ByteBuffer> records = new ArrayList<>();
+    int[] totals = new int[keys.length];
+    for (int x = 0; x < keys.length; x++) {
+      ByteBuffer[] record;
+      if (buffers[x] != null) {
+        record = addRecord((byte) (ADD | BATCHED), storeId, keys[x], expiries[x], buffers[x]);
+      } else {
+        record = new ByteBuffer[]{headerRecord((byte) (REMOVE | BATCHED), storeId, keys[x])};
+      }
+      totals[x] = record[0].getInt(0);
+      records.addAll(Arrays.asList(record));
+    }
+    records.add(headerRecord(COMMIT, storeId, keys.length));
+    return appendBatch(records.toArray(new ByteBuffer[0]), totals, expiries, buffers);
+  }
+
+  private static ByteBuffer[] addRecord(byte type, int storeId, long recordKey, long expiry, ByteBuffer[] buffers) {
+    int count = buffers.length;
+    int payload = 0;
+    for (ByteBuffer buffer : buffers) {
+      payload += buffer.remaining();
+    }
+    ByteBuffer meta = ByteBuffer.allocate(HEADER_SIZE + 4 + (count * 4));
+    int total = meta.capacity() + payload;
+    meta.putInt(total).putInt(0).put(type).putInt(storeId).putLong(recordKey).putLong(expiry);
+    meta.putInt(count);
+    for (ByteBuffer buffer : buffers) {
+      meta.putInt(buffer.remaining());
+    }
+    meta.flip();
+    ByteBuffer[] record = new ByteBuffer[count + 1];
+    record[0] = meta;
+    for (int x = 0; x < count; x++) {
+      record[x + 1] = buffers[x].duplicate();
+    }
+    meta.putInt(4, crc(record));
+    return record;
+  }
+
+  private static ByteBuffer headerRecord(byte type, int storeId, long recordKey) {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    header.putInt(HEADER_SIZE).putInt(0).put(type).putInt(storeId).putLong(recordKey).putLong(0);
+    header.flip();
+    header.putInt(4, crc(new ByteBuffer[]{header}));
+    return header;
+  }
+
+  ByteBuffer[] read(JournalEntry entry) throws IOException {
+    ByteBuffer record;
+    segmentLock.readLock().lock();
+    try {
+      JournalSegment segment = segments.get(entry.getSegment());
+      if (segment == null) {
+        throw new IOException("Journal segment " + entry.getSegment() + " has been removed");
+      }
+      record = segment.read(entry.getOffset(), entry.getLength());
+    } finally {
+      segmentLock.readLock().unlock();
+    }
+    record.position(HEADER_SIZE);
+    int count = record.getInt();
+    int[] lengths = new int[count];
+    for (int x = 0; x < count; x++) {
+      lengths[x] = record.getInt();
+    }
+    ByteBuffer[] data = new ByteBuffer[count];
+    for (int x = 0; x < count; x++) {
+      int end = record.position() + lengths[x];
+      data[x] = record.duplicate().limit(end).slice();
+      record.position(end);
+    }
+    return data;
+  }
+
+  void release(JournalEntry entry) {
+    JournalSegment segment = segments.get(entry.getSegment());
+    if (segment != null) {
+      segment.release(entry.getLength());
+    }
+  }
+
+  private synchronized JournalEntry append(ByteBuffer[] record, int total, long expiry) throws IOException {
+    if (current.getLength() > 0 && current.getLength() + total > segmentSize) {
+      roll();
+    }
+    long offset = current.write(record, total);
+    appended += total;
+    JournalEntry entry = new JournalEntry(current.getId(), offset, total, expiry);
+    if (record[0].get(8) == ADD) {
+      current.retain(total);
+    }
+    return entry;
+  }
+
+  // The batch is never split over segments, so its commit record is always in the same segment as its records
+  private synchronized JournalEntry[] appendBatch(ByteBuffer[] records, int[] totals, long[] expiries, ByteBuffer[][] buffers) throws IOException {
+    int total = HEADER_SIZE;
+    for (int length : totals) {
+      total += length;
+    }
+    if (current.getLength() > 0 && current.getLength() + total > segmentSize) {
+      roll();
+    }
+    long offset = current.write(records, total);
+    appended += total;
+    JournalEntry[] entries = new JournalEntry[totals.length];
+    for (int x = 0; x < totals.length; x++) {
+      if (buffers[x] != null) {
+        entries[x] = new JournalEntry(current.getId(), offset, totals[x], expiries[x]);
+        current.retain(totals[x]);
+      }
+      offset += totals[x];
+    }
+    return entries;
+  }
+
+  private void roll() throws IOException {
+    current.force();
+    int id = current.getId() + 1;
+    current = new JournalSegment(new File(directory, SEGMENT_FILE_NAME + id), id);
+    segments.put(id, current);
+  }
+
+  // Group commit, a caller whose append was covered by another caller's flush returns without flushing again
+  void commit() throws IOException {
+    long target;
+    synchronized (this) {
+      target = appended;
+    }
+    if (committed >= target) {
+      return;
+    }
+    synchronized (commitLock) {
+      if (committed >= target) {
+        return;
+      }
+      long covered;
+      JournalSegment active;
+      synchronized (this) {
+        covered = appended;
+        active = current;
+      }
+      active.force();
+      committed = covered;
+    }
+  }
+  //endregion
+
+  //region Segment collection
+  // Reclaims segments from the oldest, deleting a segment once nothing references it and copying the remaining records
+  // of a mostly empty segment forward. Only the oldest segment is ever removed, so a remove record is never lost while
+  // the add it cancels is still on disk
+  public void collect() throws IOException {
+    if (!collecting.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      while (true) {
+        Map.Entry<Integer, JournalSegment> oldest = segments.firstEntry();
+        JournalSegment segment = oldest.getValue();
+        synchronized (this) {
+          if (segment == current) {
+            return;
+          }
+        }
+        if (segment.getLiveRecords() > 0) {
+          if (segment.getLiveBytes() * 100 > segmentSize * compactionThreshold) {
+            return;
+          }
+          relocate(segment);
+          commit(); // the copies must be on disk before the originals are deleted
+        }
+        segmentLock.writeLock().lock();
+        try {
+          segments.remove(segment.getId());
+          segment.delete();
+        } finally {
+          segmentLock.writeLock().unlock();
+        }
+      }
+    } finally {
+      collecting.set(false);
+    }
+  }
+
+  private void relocate(JournalSegment segment) throws IOException {
+    long offset = 0;
+    long end = segment.getLength();
+    while (offset + HEADER_SIZE <= end) {
+      ByteBuffer header = segment.read(offset, HEADER_SIZE);
+      int total = header.getInt(0);
+      if ((header.get(8) & TYPE_MASK) == ADD) {
+        ConcurrentSkipListMap<Long, JournalEntry> index = indexes.get(header.getInt(9));
+        if (index != null) {
+          relocate(index, segment, offset, total, header.getLong(13));
+        }
+      }
+      offset += total;
+    }
+  }
+
+  private void relocate(ConcurrentSkipListMap<Long, JournalEntry> index, JournalSegment segment, long offset, int total, long recordKey) throws IOException {
+    synchronized (index) {
+      JournalEntry entry = index.get(recordKey);
+      if (entry != null && entry.getSegment() == segment.getId() && entry.getOffset() == offset) {
+        ByteBuffer record = segment.read(offset, total);
+        if (record.get(8) != ADD) {
+          // the batch has committed, the copy stands alone so it no longer waits for a commit record
+          record.put(8, ADD);
+          record.putInt(4, crc(new ByteBuffer[]{record}));
+        }
+        JournalEntry moved = append(new ByteBuffer[]{record}, total, entry.getExpiry());
+        index.put(recordKey, moved);
+        segment.release(total);
+      }
+    }
+  }
+  //endregion
+
+  //region Reload
+  private void replay() throws IOException {
+    String[] names = directory.list((dir, name) -> name.startsWith(SEGMENT_FILE_NAME));
+    List<Integer> ids = new ArrayList<>();
+    if (names != null) {
+      for (String name : names) {
+        ids.add(Integer.parseInt(name.substring(SEGMENT_FILE_NAME.length())));
+      }
+    }
+    Collections.sort(ids);
+    for (Integer id : ids) {
+      JournalSegment segment = new JournalSegment(new File(directory, SEGMENT_FILE_NAME + id), id);
+      segments.put(id, segment);
+      replay(segment);
+      appended += segment.getLength();
+    }
+    if (segments.isEmpty()) {
+      segments.put(0, new JournalSegment(new File(directory, SEGMENT_FILE_NAME + 0), 0));
+    }
+    current = segments.lastEntry().getValue();
+  }
+
+  private void replay(JournalSegment segment) throws IOException {
+    long offset = 0;
+    long end = segment.getLength();
+    long batchStart = -1;
+    List<ByteBuffer> pending = new ArrayList<>();
+    List<Long> pendingOffsets = new ArrayList<>();
+    while (offset + HEADER_SIZE <= end) {
+      int total = segment.read(offset, 4).getInt();
+      if (total < HEADER_SIZE || offset + total > end) {
+        break;
+      }
+      ByteBuffer record = segment.read(offset, total);
+      if (record.getInt(4) != crc(new ByteBuffer[]{record})) {
+        break;
+      }
+      byte type = record.get(8);
+      if ((type & BATCHED) != 0) {
+        if (batchStart < 0) {
+          batchStart = offset;
+        }
+        pending.add(record);
+        pendingOffsets.add(offset);
+      } else if (type == COMMIT) {
+        for (int x = 0; x < pending.size(); x++) {
+          ByteBuffer batched = pending.get(x);
+          apply(segment, batched, pendingOffsets.get(x), batched.getInt(0));
+        }
+        pending.clear();
+        pendingOffsets.clear();
+        batchStart = -1;
+      } else {
+        apply(segment, record, offset, total);
+      }
+      offset += total;
+    }
+    if (batchStart >= 0) {
+      offset = batchStart; // the batch never committed, drop it
+    }
+    if (offset != end) {
+      segment.truncate(offset); // torn write at the tail
+    }
+  }
+
+  private void apply(JournalSegment segment, ByteBuffer record, long offset, int total) {
+    ConcurrentSkipListMap<Long, JournalEntry> index = indexes.get(record.getInt(9));
+    if (index == null) {
+      return; // store has been dropped
+    }
+    long recordKey = record.getLong(13);
+    JournalEntry previous;
+    if ((record.get(8) & TYPE_MASK) == ADD) {
+      segment.retain(total);
+      previous = index.put(recordKey, new JournalEntry(segment.getId(), offset, total, record.getLong(21)));
+    } else {
+      previous = index.remove(recordKey);
+    }
+    if (previous != null) {
+      release(previous);
+    }
+  }
+
+  private void loadCatalog() throws IOException {
+    File file = new File(directory, CATALOG_FILE_NAME);
+    nextStoreId = 0;
+    if (!file.exists()) {
+      return;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      nextStoreId = in.readInt();
+      int count = in.readInt();
+      for (int x = 0; x < count; x++) {
+        String name = in.readUTF();
+        int id = in.readInt();
+        catalog.put(name, id);
+        indexes.put(id, new ConcurrentSkipListMap<>());
+      }
+    }
+  }
+
+  // Written to a temporary file and moved over the catalog so a crash leaves either the old or the new catalog
+  private void saveCatalog() throws IOException {
+    File tmp = new File(directory, CATALOG_FILE_NAME + "_tmp");
+    try (FileOutputStream fileOut = new FileOutputStream(tmp);
+         DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut))) {
+      out.writeInt(nextStoreId);
+      out.writeInt(catalog.size());
+      for (Map.Entry<String, Integer> entry : catalog.entrySet()) {
+        out.writeUTF(entry.getKey());
+        out.writeInt(entry.getValue());
+      }
+      out.flush();
+      fileOut.getFD().sync();
+    }
+    Files.move(tmp.toPath(), new File(directory, CATALOG_FILE_NAME).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+  //endregion
+
+  private static int crc(ByteBuffer[] record) {
+    CRC32 crc = new CRC32();
+    ByteBuffer first = record[0].duplicate();
+    first.position(first.position() + 8);
+    crc.update(first);
+    for (int x = 1; x < record.length; x++) {
+      crc.update(record[x].duplicate());
+    }
+    return (int) crc.getValue();
+  }
+
+  public int getSegmentCount() {
+    return segments.size();
+  }
+
+  public File getDirectory() {
+    return directory;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    current.force();
+    segmentLock.writeLock().lock();
+    try {
+      for (JournalSegment segment : segments.values()) {
+        segment.close();
+      }
+      segments.clear();
+    } finally {
+      segmentLock.writeLock().unlock();
+    }
+  }
+}
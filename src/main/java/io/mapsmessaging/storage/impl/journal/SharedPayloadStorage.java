@@ -0,0 +1,257 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl.journal;
+
+import io.mapsmessaging.storage.*;
+import io.mapsmessaging.storage.impl.file.PartitionStorage;
+import io.mapsmessaging.storage.impl.file.TaskQueue;
+import io.mapsmessaging.storage.impl.file.config.PartitionStorageConfig;
+import io.mapsmessaging.utilities.threads.tasks.TaskScheduler;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Partition store whose payloads are held once in a {@link SharedPayloadStore}. The partitions only record a
+ * {@link PayloadReference} per key, so a message fanned out to many stores is packed and written once and its payload
+ * is reclaimed when the last store removes it.
+ */
+public class SharedPayloadStorage<T extends Storable> implements Storage<T> {
+
+  private final Storage<PayloadReference> references;
+  private final SharedPayloadStore payloads;
+  private final StorableFactory<T> storableFactory;
+  private boolean closed;
+
+  @SuppressWarnings("unchecked")
+  public SharedPayloadStorage(PartitionStorageConfig config, @Nullable ExpiredStorableHandler expiredHandler) throws IOException {
+    storableFactory = config.getStorableFactory();
+    PartitionStorageConfig referenceConfig = new PartitionStorageConfig(config);
+    referenceConfig.setSharedPayloadDirectory(null);
+    referenceConfig.setStorableFactory(new PayloadReference.Factory());
+    payloads = SharedPayloadStore.open(config.getSharedPayloadDirectory(), config.isSync());
+    // Expired references are removed through this store so their payloads are released
+    ExpiredStorableHandler handler = Objects.requireNonNullElseGet(expiredHandler, () -> new BaseExpiredHandler<>(this));
+    try {
+      references = new PartitionStorage<>(referenceConfig, handler);
+    } catch (IOException e) {
+      SharedPayloadStore.release(payloads);
+      throw e;
+    }
+    try {
+      attach();
+    } catch (IOException e) {
+      references.close();
+      SharedPayloadStore.release(payloads);
+      throw e;
+    }
+    closed = false;
+  }
+
+  // After a crash the shared store rebuilds its reference counts from what each store reports
+  private void attach() throws IOException {
+    if (payloads.attach(references.getName())) {
+      List<Long> contentIds = new ArrayList<>();
+      for (Long key : references.getKeys()) {
+        PayloadReference reference = references.get(key);
+        if (reference != null) {
+          contentIds.add(reference.getContentId());
+        }
+      }
+      payloads.recount(references.getName(), contentIds);
+    }
+  }
+
+  @Override
+  public String getName() {
+    return references.getName();
+  }
+
+  @Override
+  public void shutdown() throws IOException {
+    references.shutdown();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!closed) {
+      closed = true;
+      try {
+        references.close();
+      } finally {
+        SharedPayloadStore.release(payloads);
+      }
+    }
+  }
+
+  @Override
+  public void delete() throws IOException {
+    for (Long key : references.getKeys()) {
+      PayloadReference reference = references.get(key);
+      if (reference != null) {
+        payloads.release(reference.getContentId());
+      }
+    }
+    references.delete();
+    payloads.detach(references.getName());
+    if (!closed) {
+      closed = true;
+      payloads.collect();
+      SharedPayloadStore.release(payloads);
+    }
+  }
+
+  @Override
+  public boolean supportPause() {
+    return references.supportPause();
+  }
+
+  @Override
+  public void pause() throws IOException {
+    references.pause();
+  }
+
+  @Override
+  public void resume() throws IOException {
+    references.resume();
+  }
+
+  @Override
+  public void add(@NotNull T object) throws IOException {
+    long contentId = payloads.retain(object, storableFactory);
+    try {
+      references.add(new PayloadReference(object.getKey(), object.getExpiry(), contentId));
+    } catch (IOException e) {
+      payloads.release(contentId);
+      throw e;
+    }
+  }
+
+  // The payloads and the references are held in separate stores, so a batch is applied one operation at a time
+  @Override
+  public boolean supportAtomicBatches() {
+    return false;
+  }
+
+  @Override
+  public boolean remove(long key) throws IOException {
+    PayloadReference reference = references.get(key);
+    if (reference != null && references.remove(key)) {
+      payloads.release(reference.getContentId());
+      payloads.collect();
+      return true;
+    }
+    return false;
+  }
+
+  @Override
+  public @Nullable T get(long key) throws IOException {
+    PayloadReference reference = references.get(key);
+    if (reference == null) {
+      return null;
+    }
+    return storableFactory.unpack(payloads.get(reference.getContentId()));
+  }
+
+  @Override
+  public boolean contains(long key) {
+    return references.contains(key);
+  }
+
+  @Override
+  public @NotNull List<Long> getKeys() {
+    return references.getKeys();
+  }
+
+  @Override
+  public long size() throws IOException {
+    return references.size();
+  }
+
+  @Override
+  public long getLastKey() {
+    return references.getLastKey();
+  }
+
+  @Override
+  public long getLastAccess() {
+    return references.getLastAccess();
+  }
+
+  @Override
+  public void updateLastAccess() {
+    references.updateLastAccess();
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return references.isEmpty();
+  }
+
+  @Override
+  public TaskQueue getTaskScheduler() {
+    return references.getTaskScheduler();
+  }
+
+  @Override
+  public @NotNull Collection<Long> keepOnly(@NotNull Collection<Long> listToKeep) throws IOException {
+    Set<Long> keep = new HashSet<>(listToKeep);
+    for (Long key : references.getKeys()) {
+      if (!keep.contains(key)) {
+        remove(key);
+      }
+    }
+    List<Long> notFound = new ArrayList<>();
+    for (Long key : listToKeep) {
+      if (!references.contains(key)) {
+        notFound.add(key);
+      }
+    }
+    return notFound;
+  }
+
+  @Override
+  public int removeAll(@NotNull Collection<Long> listToRemove) throws IOException {
+    int counter = 0;
+    for (Long key : listToRemove) {
+      if (remove(key)) {
+        counter++;
+      }
+    }
+    return counter;
+  }
+
+  @Override
+  public @NotNull Statistics getStatistics() {
+    return references.getStatistics();
+  }
+
+  @Override
+  public void setExecutor(TaskScheduler executor) {
+    references.setExecutor(executor);
+  }
+
+  @Override
+  public boolean executeTasks() throws Exception {
+    return references.executeTasks();
+  }
+}
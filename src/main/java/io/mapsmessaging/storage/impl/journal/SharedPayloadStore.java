@@ -0,0 +1,343 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl.journal;
+
+import io.mapsmessaging.storage.Storable;
+import io.mapsmessaging.storage.StorableFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Content store shared by every store configured with the same SharedPayloadDirectory. Payloads are written once to a
+ * {@link SharedJournal} under a content id and the stores only keep the id. A memory mapped table holds a reference
+ * count per content id, the payload is removed from the journal when its count drops to zero and the id is reused.
+ * <p>
+ * Fan-out adds the same content to many stores, so the digests of the payloads most recently stored are remembered and
+ * adding identical packed bytes again only takes another reference, without writing the payload.
+ * <p>
+ * The stores holding references are recorded in the owners file. The counts are only trusted after a clean close, after
+ * a crash they are rebuilt from the references each owner reports when it is opened again, and no payload is removed
+ * until every owner has reported.
+ */
+public class SharedPayloadStore implements Closeable {
+
+  private static final String PAYLOAD_STORE_NAME = "payloads";
+  private static final String REFERENCE_FILE_NAME = "references";
+  private static final String OWNER_FILE_NAME = "owners";
+  private static final int HEADER_SIZE = 16;
+  private static final int CLEAN = 1;
+  private static final int IDS_PER_CHUNK = 1 << 20;
+  private static final int RECENT_SIZE = 4096;
+
+  private static final Map<String, SharedPayloadStore> OPEN_STORES = new HashMap<>();
+
+  private final String key;
+  private final boolean sync;
+  private final SharedJournal journal;
+  private final int storeId;
+  private final ConcurrentSkipListMap<Long, JournalEntry> payloads;
+  private final FileChannel referenceChannel;
+  private final List<MappedByteBuffer> referenceChunks;
+  private final Deque<Long> freeIds;
+  private final Map<ByteBuffer, Long> recent;
+  private final Map<Long, ByteBuffer> recentIds;
+  private final MessageDigest digest;
+  private final Set<String> owners;
+  private final Set<String> pendingOwners;
+
+  private MappedByteBuffer header;
+  private long nextId;
+  private int references;
+
+  public static synchronized SharedPayloadStore open(String directory, boolean sync) throws IOException {
+    String key = new File(directory).getCanonicalPath();
+    SharedPayloadStore store = OPEN_STORES.get(key);
+    if (store == null) {
+      store = new SharedPayloadStore(key, sync);
+      OPEN_STORES.put(key, store);
+    }
+    store.references++;
+    return store;
+  }
+
+  public static synchronized void release(SharedPayloadStore store) throws IOException {
+    store.references--;
+    if (store.references == 0) {
+      OPEN_STORES.remove(store.key);
+      store.close();
+    }
+  }
+
+  private SharedPayloadStore(String key, boolean sync) throws IOException {
+    this.key = key;
+    this.sync = sync;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException(e);
+    }
+    journal = SharedJournal.open(key, SharedJournal.DEFAULT_SEGMENT_SIZE, SharedJournal.DEFAULT_COMPACTION_THRESHOLD);
+    storeId = journal.register(PAYLOAD_STORE_NAME);
+    payloads = journal.getIndex(storeId);
+    referenceChunks = new ArrayList<>();
+    freeIds = new ArrayDeque<>();
+    recentIds = new HashMap<>();
+    recent = new LinkedHashMap<>(RECENT_SIZE, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Long> eldest) {
+        if (size() > RECENT_SIZE) {
+          recentIds.remove(eldest.getValue());
+          return true;
+        }
+        return false;
+      }
+    };
+    owners = new LinkedHashSet<>();
+    pendingOwners = new HashSet<>();
+    loadOwners();
+    if (owners.removeIf(owner -> !new File(owner).exists())) {
+      saveOwners();
+    }
+
+    referenceChannel = FileChannel.open(new File(key, REFERENCE_FILE_NAME).toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    header = referenceChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+    nextId = header.getLong(0);
+    if (!payloads.isEmpty()) {
+      nextId = Math.max(nextId, payloads.lastKey() + 1); // written before the crash but never counted
+      header.putLong(0, nextId);
+    }
+    boolean clean = header.getInt(8) == CLEAN;
+    header.putInt(8, 0);
+    header.force();
+    if (clean) {
+      reload();
+    } else {
+      for (long id = 0; id < nextId; id++) {
+        setCount(id, 0);
+      }
+      pendingOwners.addAll(owners);
+      if (pendingOwners.isEmpty()) {
+        reload();
+      }
+    }
+  }
+
+  // Ids below the high water mark with no references are free, a payload left behind by a crash is removed
+  private void reload() throws IOException {
+    for (long id = 0; id < nextId; id++) {
+      if (getCount(id) == 0) {
+        synchronized (payloads) {
+          JournalEntry entry = payloads.remove(id);
+          if (entry != null) {
+            journal.remove(storeId, id);
+            journal.release(entry);
+          }
+        }
+        freeIds.add(id);
+      }
+    }
+  }
+
+  /**
+   * Records the store as an owner of references. Returns true if the counts are being rebuilt and the store must
+   * report the content ids it references through {@link #recount(String, Collection)}.
+   */
+  public synchronized boolean attach(String owner) throws IOException {
+    String name = new File(owner).getCanonicalPath();
+    if (owners.add(name)) {
+      saveOwners();
+    }
+    return pendingOwners.contains(name);
+  }
+
+  public synchronized void recount(String owner, Collection<Long> contentIds) throws IOException {
+    if (pendingOwners.remove(new File(owner).getCanonicalPath())) {
+      for (long id : contentIds) {
+        setCount(id, getCount(id) + 1);
+      }
+      if (pendingOwners.isEmpty()) {
+        reload();
+      }
+    }
+  }
+
+  public synchronized void detach(String owner) throws IOException {
+    String name = new File(owner).getCanonicalPath();
+    if (owners.remove(name)) {
+      saveOwners();
+    }
+    if (pendingOwners.remove(name) && pendingOwners.isEmpty()) {
+      reload();
+    }
+  }
+
+  public synchronized <T extends Storable> long retain(T object, StorableFactory<T> factory) throws IOException {
+    ByteBuffer[] buffers = factory.pack(object);
+    ByteBuffer content = digest(buffers);
+    Long hit = recent.get(content);
+    if (hit != null) {
+      setCount(hit, getCount(hit) + 1);
+      return hit;
+    }
+    long id = freeIds.isEmpty() ? nextId : freeIds.peek();
+    synchronized (payloads) {
+      payloads.put(id, journal.add(storeId, id, 0, buffers));
+    }
+    if (sync) {
+      journal.commit();
+    }
+    if (id == nextId) {
+      nextId++;
+      header.putLong(0, nextId);
+    } else {
+      freeIds.poll();
+    }
+    setCount(id, 1);
+    recent.put(content, id);
+    recentIds.put(id, content);
+    return id;
+  }
+
+  public synchronized void release(long id) throws IOException {
+    int count = getCount(id) - 1;
+    if (count < 0) {
+      throw new IOException("Payload " + id + " has no references");
+    }
+    setCount(id, count);
+    if (count == 0 && pendingOwners.isEmpty()) { // an owner yet to report may still reference it
+      synchronized (payloads) {
+        JournalEntry entry = payloads.remove(id);
+        if (entry != null) {
+          journal.remove(storeId, id);
+          journal.release(entry);
+        }
+      }
+      ByteBuffer content = recentIds.remove(id);
+      if (content != null) {
+        recent.remove(content); // the id will be reused for another payload
+      }
+      freeIds.add(id);
+    }
+  }
+
+  public ByteBuffer[] get(long id) throws IOException {
+    synchronized (payloads) {
+      JournalEntry entry = payloads.get(id);
+      if (entry == null) {
+        throw new IOException("Payload " + id + " is not in the shared payload store");
+      }
+      return journal.read(entry);
+    }
+  }
+
+  public synchronized int getReferenceCount(long id) throws IOException {
+    return id < nextId ? getCount(id) : 0;
+  }
+
+  public void collect() throws IOException {
+    journal.collect();
+  }
+
+  // Digest of the packed bytes, so an object changed or re-keyed since it was last stored is never matched
+  private ByteBuffer digest(ByteBuffer[] buffers) {
+    digest.reset();
+    for (ByteBuffer buffer : buffers) {
+      digest.update(ByteBuffer.allocate(4).putInt(0, buffer.remaining()));
+      digest.update(buffer.duplicate());
+    }
+    return ByteBuffer.wrap(digest.digest());
+  }
+
+  private int getCount(long id) throws IOException {
+    return chunk(id).getInt((int) (id % IDS_PER_CHUNK) * 4);
+  }
+
+  private void setCount(long id, int count) throws IOException {
+    MappedByteBuffer chunk = chunk(id);
+    int offset = (int) (id % IDS_PER_CHUNK) * 4;
+    chunk.putInt(offset, count);
+    if (sync) {
+      chunk.force(offset, 4);
+    }
+  }
+
+  private MappedByteBuffer chunk(long id) throws IOException {
+    int index = (int) (id / IDS_PER_CHUNK);
+    while (referenceChunks.size() <= index) {
+      long position = HEADER_SIZE + (long) referenceChunks.size() * IDS_PER_CHUNK * 4;
+      referenceChunks.add(referenceChannel.map(FileChannel.MapMode.READ_WRITE, position, (long) IDS_PER_CHUNK * 4));
+    }
+    return referenceChunks.get(index);
+  }
+
+  private void loadOwners() throws IOException {
+    File file = new File(key, OWNER_FILE_NAME);
+    if (!file.exists()) {
+      return;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      int count = in.readInt();
+      for (int x = 0; x < count; x++) {
+        owners.add(in.readUTF());
+      }
+    }
+  }
+
+  // Written to a temporary file and moved over the owners file so a crash leaves either the old or the new list
+  private void saveOwners() throws IOException {
+    File tmp = new File(key, OWNER_FILE_NAME + "_tmp");
+    try (FileOutputStream fileOut = new FileOutputStream(tmp);
+         DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut))) {
+      out.writeInt(owners.size());
+      for (String owner : owners) {
+        out.writeUTF(owner);
+      }
+      out.flush();
+      fileOut.getFD().sync();
+    }
+    Files.move(tmp.toPath(), new File(key, OWNER_FILE_NAME).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    for (MappedByteBuffer chunk : referenceChunks) {
+      chunk.force();
+    }
+    // Counts still waiting on an owner are incomplete and are rebuilt again on the next open
+    if (pendingOwners.isEmpty()) {
+      header.putInt(8, CLEAN);
+    }
+    header.force();
+    referenceChunks.clear();
+    header = null;
+    referenceChannel.close();
+    SharedJournal.release(journal);
+  }
+}
@@ -19,6 +19,7 @@
 
 package io.mapsmessaging.storage.impl.tier.memory;
 
+import io.mapsmessaging.storage.RawRecord;
 import io.mapsmessaging.storage.Statistics;
 import io.mapsmessaging.storage.Storable;
 import io.mapsmessaging.storage.Storage;
@@ -184,6 +185,30 @@ public class MemoryTierStorage<T extends Storable> implements Storage<T> {
     return secondary.get(key);
   }
 
+  @Override
+  public @Nullable T get(long key, long bufferMask) throws IOException {
+    ObjectMonitor<T> monitor = primary.get(key);
+    if (monitor != null) {
+      monitor.setLastAccess(System.currentTimeMillis());
+      return monitor.getStorable();
+    }
+    return secondary.get(key, bufferMask);
+  }
+
+  @Override
+  public boolean supportRawAccess() {
+    return secondary.supportRawAccess();
+  }
+
+  // Objects still held in the memory tier have never been packed, so only the file tier can lease them out
+  @Override
+  public @Nullable RawRecord getRaw(long key) throws IOException {
+    if (primary.contains(key)) {
+      return null;
+    }
+    return secondary.getRaw(key);
+  }
+
   @Override
   public @NotNull List<Long> getKeys() {
     List<Long> keyList = new NaturalOrderedLongList();
@@ -38,6 +38,7 @@ public enum StorageLogMessages implements LogMessage {
   ASYNC_SIZE_REQUESTED(LEVEL.TRACE, STORAGE_CATEGORY.ASYNC, "Size requested"),
   ASYNC_GET_REQUESTED(LEVEL.TRACE, STORAGE_CATEGORY.ASYNC, "Get for key {} requested"),
   ASYNC_REMOVE_REQUESTED(LEVEL.TRACE, STORAGE_CATEGORY.ASYNC, "Remove for key {} requested"),
+  ASYNC_BATCH_REQUESTED(LEVEL.TRACE, STORAGE_CATEGORY.ASYNC, "Batch of {} operations requested"),
   ASYNC_CLOSE_COMPLETED(LEVEL.TRACE, STORAGE_CATEGORY.ASYNC, "Close request has completed"),
   ASYNC_CLOSE_FAILED(LEVEL.ERROR, STORAGE_CATEGORY.ASYNC, "Close request has raised an exception"),
   ASYNC_ENABLE_AUTO_PAUSE(LEVEL.TRACE, STORAGE_CATEGORY.ASYNC, "Async Auto Pause has been set to {} milliseconds"),
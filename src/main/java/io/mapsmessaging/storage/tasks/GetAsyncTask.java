@@ -0,0 +1,72 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.tasks;
+
+import io.mapsmessaging.storage.Storable;
+import io.mapsmessaging.storage.Storage;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+// Issues the read and returns, the result future and completion are driven from the storage's I/O completion handler
+public class GetAsyncTask<T extends Storable> extends BaseTask<T, Boolean> {
+
+  private final long key;
+  private final CompletableFuture<T> result;
+  private final Completion<T> readCompletion;
+
+  public GetAsyncTask(@NotNull Storage<T> storage, long key, @NotNull CompletableFuture<T> result, Completion<T> completion) {
+    super(storage, null);
+    this.key = key;
+    this.result = result;
+    this.readCompletion = completion;
+  }
+
+  @Override
+  public Boolean execute() throws Exception {
+    CompletableFuture<T> read;
+    try {
+      read = storage.getAsync(key);
+    } catch (Exception e) {
+      read = CompletableFuture.failedFuture(e);
+    }
+    read.whenComplete((obj, error) -> {
+      if (error != null) {
+        Exception exception = unwrap(error);
+        if (readCompletion != null) {
+          readCompletion.onException(exception);
+        }
+        result.completeExceptionally(exception);
+      } else {
+        if (readCompletion != null && obj != null) {
+          readCompletion.onCompletion(obj);
+        }
+        result.complete(obj);
+      }
+    });
+    return true;
+  }
+
+  private static Exception unwrap(Throwable error) {
+    Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    return cause instanceof Exception ? (Exception) cause : new CompletionException(cause);
+  }
+}
@@ -26,14 +26,23 @@ import org.jetbrains.annotations.NotNull;
 public class GetTask<T extends Storable> extends BaseTask<T, T> {
 
   private final long key;
+  private final long bufferMask;
 
   public GetTask(@NotNull Storage<T> storage, long key, Completion<T> completion) {
+    this(storage, key, Storage.ALL_BUFFERS, completion);
+  }
+
+  public GetTask(@NotNull Storage<T> storage, long key, long bufferMask, Completion<T> completion) {
     super(storage, completion);
     this.key = key;
+    this.bufferMask = bufferMask;
   }
 
   @Override
   public T execute() throws Exception {
-    return storage.get(key);
+    if (bufferMask == Storage.ALL_BUFFERS) {
+      return storage.get(key);
+    }
+    return storage.get(key, bufferMask);
   }
 }
\ No newline at end of file
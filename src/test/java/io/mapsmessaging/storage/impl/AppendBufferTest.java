@@ -0,0 +1,69 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl;
+
+import io.mapsmessaging.storage.Storage;
+import io.mapsmessaging.storage.StorageBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+class AppendBufferTest extends BaseTest {
+
+  @Test
+  void appendBufferedWrites() throws IOException, InterruptedException {
+    Map<String, String> properties = partitionProperties(1_000);
+    properties.put("AppendBufferSize", "" + (16 * 1024));
+    properties.put("AppendLingerTime", "" + 50);
+    StorageBuilder<MappedData> storageBuilder = partitionBuilder("appendBuffer", properties);
+    Storage<MappedData> storage = storageBuilder.build();
+    try {
+      for (int x = 0; x < 500; x++) {
+        storage.add(createMessageBuilder(x));
+        // Served from the append buffer until it is flushed
+        validateMessage(storage.get(x), x);
+        Assertions.assertTrue(storage.contains(x));
+      }
+      Assertions.assertEquals(500, storage.size());
+      Assertions.assertEquals(500, storage.getKeys().size());
+      for (int x = 0; x < 500; x += 2) {
+        Assertions.assertTrue(storage.remove(x));
+      }
+      TimeUnit.MILLISECONDS.sleep(200);
+      storage.close();
+
+      storage = storageBuilder.build();
+      Assertions.assertEquals(250, storage.size());
+      for (int x = 0; x < 500; x++) {
+        MappedData lookup = storage.get(x);
+        if (x % 2 == 0) {
+          Assertions.assertNull(lookup);
+        } else {
+          validateMessage(lookup, x);
+        }
+      }
+    } finally {
+      storage.delete();
+    }
+  }
+}
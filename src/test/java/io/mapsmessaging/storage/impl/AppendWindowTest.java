@@ -0,0 +1,93 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl;
+
+import io.mapsmessaging.storage.Storage;
+import io.mapsmessaging.storage.StorageBuilder;
+import io.mapsmessaging.storage.impl.file.partition.DataStorageImpl;
+import io.mapsmessaging.storage.impl.file.partition.IndexRecord;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+class AppendWindowTest extends BaseTest {
+
+  @Test
+  void appendWindowWrites() throws IOException {
+    Map<String, String> properties = partitionProperties(1_000);
+    properties.put("AppendWindowSize", "" + (64 * 1024));
+    StorageBuilder<MappedData> storageBuilder = partitionBuilder("appendWindow", properties);
+    Storage<MappedData> storage = storageBuilder.build();
+    try {
+      // Each record is over 1KB so the window is remapped a number of times
+      for (int x = 0; x < 500; x++) {
+        storage.add(createMessageBuilder(x));
+        validateMessage(storage.get(x), x);
+      }
+      storage.close();
+
+      storage = storageBuilder.build();
+      Assertions.assertEquals(500, storage.size());
+      for (int x = 500; x < 1000; x++) {
+        storage.add(createMessageBuilder(x));
+      }
+      for (int x = 0; x < 1000; x++) {
+        validateMessage(storage.get(x), x);
+      }
+    } finally {
+      storage.delete();
+    }
+  }
+
+  @Test
+  void appendWindowTailRecovery() throws IOException {
+    String fileName = "test_file" + File.separator + "appendWindowRecovery_data";
+    new File("test_file").mkdirs();
+    Files.deleteIfExists(new File(fileName).toPath());
+    DataStorageImpl<MappedData> crashed = new DataStorageImpl<>(fileName, getFactory(), false, 1024L * 1024L, 0, false, 64 * 1024);
+    List<IndexRecord> records = new ArrayList<>();
+    for (int x = 0; x < 10; x++) {
+      records.add(crashed.add(createMessageBuilder(x)));
+    }
+
+    // Not closed, so the file still carries the zero filled window slack beyond the last record
+    DataStorageImpl<MappedData> recovered = new DataStorageImpl<>(fileName, getFactory(), false, 1024L * 1024L, 0, false, 64 * 1024);
+    try {
+      Assertions.assertTrue(recovered.isValidationRequired());
+      IndexRecord last = records.get(records.size() - 1);
+      Assertions.assertEquals(last.getPosition() + last.getLength(), recovered.length());
+      IndexRecord next = recovered.add(createMessageBuilder(10));
+      Assertions.assertEquals(recovered.length() - next.getLength(), next.getPosition());
+      for (int x = 0; x < 10; x++) {
+        validateMessage(recovered.get(records.get(x)), x);
+      }
+      validateMessage(recovered.get(next), 10);
+    } finally {
+      crashed.close();
+      recovered.delete();
+    }
+  }
+}
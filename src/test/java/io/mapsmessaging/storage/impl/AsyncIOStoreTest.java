@@ -0,0 +1,125 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl;
+
+import io.mapsmessaging.storage.AsyncStorage;
+import io.mapsmessaging.storage.Storage;
+import io.mapsmessaging.storage.StorageBuilder;
+import io.mapsmessaging.storage.tasks.Completion;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+class AsyncIOStoreTest extends BaseTest {
+
+  @Test
+  void asyncIOStore() throws IOException, ExecutionException, InterruptedException {
+    Map<String, String> properties = partitionProperties(1_000);
+    properties.put("AsyncIO", "" + true);
+    StorageBuilder<MappedData> storageBuilder = partitionBuilder("asyncIO", properties);
+    Storage<MappedData> storage = storageBuilder.build();
+    Assertions.assertTrue(storage.supportAsyncReads());
+    AsyncStorage<MappedData> async = new AsyncStorage<>(storage);
+    try {
+      List<Future<MappedData>> futures = new ArrayList<>();
+      for (int x = 0; x < 1_500; x++) {
+        futures.add(async.add(createMessageBuilder(x)));
+      }
+      for (Future<MappedData> future : futures) {
+        future.get();
+      }
+
+      // Every read is issued before any is waited on, so many are in flight across the partitions at once
+      futures.clear();
+      AtomicLong completed = new AtomicLong();
+      for (int x = 0; x < 1_500; x++) {
+        futures.add(async.get(x, new Completion<>() {
+          @Override
+          public void onCompletion(MappedData result) {
+            completed.incrementAndGet();
+          }
+
+          @Override
+          public void onException(Exception exception) {
+            Assertions.fail(exception);
+          }
+        }));
+      }
+      for (int x = 0; x < 1_500; x++) {
+        validateMessage(futures.get(x).get(), x);
+      }
+      Assertions.assertEquals(1_500, completed.get());
+      Assertions.assertNull(async.get(5_000).get());
+      async.close();
+
+      storage = storageBuilder.build();
+      Assertions.assertEquals(1_500, storage.size());
+      for (int x = 0; x < 1_500; x += 7) {
+        validateMessage(storage.getAsync(x).get(), x);
+      }
+    } finally {
+      storage.delete();
+    }
+  }
+
+  @Test
+  void syncAddWaitsForTheWrite() throws IOException {
+    Map<String, String> properties = partitionProperties(1_000);
+    properties.put("AsyncIO", "" + true);
+    properties.put("Sync", "" + true);
+    Storage<MappedData> storage = partitionBuilder("asyncIOSync", properties).build();
+    File dataFile = new File("test_file" + File.separator + "asyncIOSync" + File.separator + "partition_0_index_data");
+    try {
+      long length = 0;
+      for (int x = 0; x < 20; x++) {
+        storage.add(createMessageBuilder(x));
+        // The add only returns once its record is in the file
+        Assertions.assertTrue(dataFile.length() > length);
+        length = dataFile.length();
+      }
+      for (int x = 0; x < 20; x++) {
+        validateMessage(storage.get(x), x);
+      }
+    } finally {
+      storage.delete();
+    }
+  }
+
+  @Test
+  void unsupportedOptionsAreRejected() {
+    Map<String, String> properties = partitionProperties(1_000);
+    properties.put("AsyncIO", "" + true);
+    properties.put("CompressionThreshold", "" + 64);
+    IOException exception = Assertions.assertThrows(IOException.class, () -> partitionBuilder("asyncIOOptions", properties).build());
+    Assertions.assertTrue(exception.getMessage().contains("CompressionThreshold"));
+
+    properties.remove("CompressionThreshold");
+    properties.put("DirectIO", "" + true);
+    Assertions.assertThrows(IOException.class, () -> partitionBuilder("asyncIOOptions", properties).build());
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl;
+
+import io.mapsmessaging.storage.AsyncStorage;
+import io.mapsmessaging.storage.Batch;
+import io.mapsmessaging.storage.Storage;
+import io.mapsmessaging.storage.StorageBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+class AtomicBatchTest extends BaseTest {
+
+  @Test
+  void atomicBatch() throws IOException, ExecutionException, InterruptedException {
+    Map<String, String> properties = partitionProperties(40);
+    StorageBuilder<MappedData> storageBuilder = partitionBuilder("atomicBatch", properties);
+    Storage<MappedData> storage = storageBuilder.build();
+    try {
+      Assertions.assertTrue(storage.supportAtomicBatches());
+      for (int x = 0; x < 50; x++) {
+        storage.add(createMessageBuilder(x));
+      }
+      // Spans several partitions, and replaces key 20 by removing it first
+      Batch<MappedData> batch = storage.batch();
+      for (int x = 50; x < 100; x++) {
+        batch.add(createMessageBuilder(x));
+      }
+      for (int x = 0; x < 10; x++) {
+        batch.remove(x);
+      }
+      batch.remove(20).add(createMessageBuilder(20));
+      batch.commit();
+      Assertions.assertEquals(90, storage.size());
+      Assertions.assertNull(storage.get(5));
+      validateMessage(storage.get(20), 20);
+      validateMessage(storage.get(75), 75);
+
+      // A colliding add rejects the whole batch before anything is applied
+      Batch<MappedData> rejected = storage.batch().add(createMessageBuilder(200)).remove(30).add(createMessageBuilder(40));
+      Assertions.assertThrows(IOException.class, rejected::commit);
+      Assertions.assertNull(storage.get(200));
+      validateMessage(storage.get(30), 30);
+
+      AsyncStorage<MappedData> async = new AsyncStorage<>(storage);
+      Batch<MappedData> asyncBatch = async.batch().add(createMessageBuilder(100)).remove(10);
+      Assertions.assertTrue(async.apply(asyncBatch).get());
+      Assertions.assertNull(async.get(10).get());
+      async.close();
+
+      storage = storageBuilder.build();
+      Assertions.assertEquals(90, storage.size());
+      Assertions.assertNull(storage.get(10));
+      for (int x = 11; x <= 100; x += 7) {
+        validateMessage(storage.get(x), x);
+      }
+    } finally {
+      storage.delete();
+    }
+  }
+
+  @Test
+  void failedBatchIsRolledBack() throws IOException {
+    File root = new File("test_file" + File.separator + "failedBatch");
+    StorageBuilder<MappedData> storageBuilder = partitionBuilder("failedBatch", partitionProperties(100));
+    Storage<MappedData> storage = storageBuilder.build();
+    File[] blockers = {new File(root, "partition_1"), new File(root, "partition_1_index")};
+    try {
+      for (int x = 0; x < 10; x++) {
+        storage.add(createMessageBuilder(x));
+      }
+      // Directories in the way of the next partition make the last add fail after the others were applied
+      for (File blocker : blockers) {
+        Assertions.assertTrue(blocker.mkdirs());
+      }
+      Batch<MappedData> batch = storage.batch().add(createMessageBuilder(50)).remove(5).add(createMessageBuilder(500));
+      Assertions.assertThrows(IOException.class, batch::commit);
+      Assertions.assertEquals(10, storage.size());
+      Assertions.assertNull(storage.get(50));
+      validateMessage(storage.get(5), 5);
+      for (File blocker : blockers) {
+        Assertions.assertTrue(blocker.delete());
+      }
+      storage.close();
+
+      // Nothing of the failed batch is replayed when the store is opened again
+      storage = storageBuilder.build();
+      Assertions.assertEquals(10, storage.size());
+      Assertions.assertNull(storage.get(50));
+      Assertions.assertNull(storage.get(500));
+      validateMessage(storage.get(5), 5);
+
+      storage.batch().add(createMessageBuilder(50)).remove(5).add(createMessageBuilder(500)).commit();
+      Assertions.assertEquals(11, storage.size());
+      Assertions.assertNull(storage.get(5));
+      validateMessage(storage.get(500), 500);
+    } finally {
+      for (File blocker : blockers) {
+        if (blocker.isDirectory()) {
+          Files.delete(blocker.toPath());
+        }
+      }
+      storage.delete();
+    }
+  }
+}
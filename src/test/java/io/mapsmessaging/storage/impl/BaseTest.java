@@ -21,6 +21,7 @@ package io.mapsmessaging.storage.impl;
 
 import io.mapsmessaging.storage.Storable;
 import io.mapsmessaging.storage.StorableFactory;
+import io.mapsmessaging.storage.StorageBuilder;
 import io.mapsmessaging.storage.impl.streams.BufferObjectReader;
 import io.mapsmessaging.storage.impl.streams.BufferObjectWriter;
 import io.mapsmessaging.storage.impl.streams.ObjectReader;
@@ -33,6 +34,7 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.TestInfo;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.LinkedHashMap;
@@ -344,6 +346,25 @@ public class BaseTest {
     }
   }
 
+  // Partition store settings shared by the feature tests, each test adds the options it exercises
+  static Map<String, String> partitionProperties(int itemCount) {
+    Map<String, String> properties = new LinkedHashMap<>();
+    properties.put("storeType", "Partition");
+    properties.put("Sync", "" + false);
+    properties.put("ItemCount", "" + itemCount);
+    return properties;
+  }
+
+  // The properties are parsed when set, so a test that changes them must set them again before the next build
+  static StorageBuilder<MappedData> partitionBuilder(String name, Map<String, String> properties) {
+    StorageBuilder<MappedData> storageBuilder = new StorageBuilder<>();
+    storageBuilder
+        .setFactory(getFactory())
+        .setName("test_file" + File.separator + name)
+        .setProperties(properties);
+    return storageBuilder;
+  }
+
   public static StorableFactory<MappedData> getFactory() {
     return new MappedDataStorableFactory();
   }
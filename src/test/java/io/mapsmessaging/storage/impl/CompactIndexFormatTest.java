@@ -0,0 +1,74 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl;
+
+import io.mapsmessaging.storage.Storage;
+import io.mapsmessaging.storage.StorageBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Map;
+
+class CompactIndexFormatTest extends BaseTest {
+
+  @Test
+  void compactIndexFormatUpgrade() throws IOException {
+    Map<String, String> properties = partitionProperties(1_000);
+    properties.put("MaxPartitionSize", "" + (64L * 1024L)); // force partitions to fill and compact
+    StorageBuilder<MappedData> storageBuilder = partitionBuilder("compactIndex", properties);
+    Storage<MappedData> storage = storageBuilder.build();
+    try {
+      for (int x = 0; x < 500; x++) {
+        storage.add(createMessageBuilder(x));
+      }
+      storage.close();
+
+      // Reopen with the compact format, existing partitions are upgraded as they are compacted
+      properties.put("IndexFormat", "compact");
+      storageBuilder.setProperties(properties);
+      storage = storageBuilder.build();
+      for (int x = 500; x < 1_000; x++) {
+        MappedData message = createMessageBuilder(x);
+        message.setExpiry(System.currentTimeMillis() + 60_000);
+        storage.add(message);
+      }
+      storage.close();
+
+      storage = storageBuilder.build();
+      Assertions.assertEquals(1_000, storage.size());
+      for (int x = 0; x < 1_000; x++) {
+        MappedData lookup = storage.get(x);
+        Assertions.assertNotNull(lookup);
+        Assertions.assertEquals(x, lookup.getKey());
+      }
+    } finally {
+      storage.delete();
+    }
+  }
+
+  @Test
+  void unknownIndexFormatIsRejected() {
+    Map<String, String> properties = partitionProperties(1_000);
+    properties.put("IndexFormat", "compcat");
+    StorageBuilder<MappedData> storageBuilder = partitionBuilder("unknownIndexFormat", properties);
+    Assertions.assertThrows(IOException.class, storageBuilder::build);
+  }
+}
@@ -21,6 +21,7 @@ package io.mapsmessaging.storage.impl;
 
 import io.mapsmessaging.storage.Storage;
 import io.mapsmessaging.storage.TierMigrationMonitor;
+import io.mapsmessaging.storage.impl.file.partition.deferred.TreeDigest;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
@@ -28,7 +29,10 @@ import org.junit.jupiter.params.provider.ValueSource;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.security.NoSuchAlgorithmException;
 import java.util.Map;
+import java.util.Random;
 import java.util.concurrent.TimeUnit;
 
 class CompressionArchivePartitionTest  extends BaseTest {
@@ -62,6 +66,53 @@ class CompressionArchivePartitionTest  extends BaseTest {
     storage.delete();
   }
 
+  @ParameterizedTest
+  @ValueSource(strings = {"MD5", "SHA-256"})
+  void compressArchiveAndRestoreWithTreeDigest(String digestName) throws IOException, InterruptedException {
+    Map<String, String> properties = BasePartitionStoreTest.buildProperties(false);
+    properties.put("deferredName", "Compress");
+    properties.put("archiveIdleTime", ""+ TimeUnit.SECONDS.toMillis(4));
+    properties.put("digestName", digestName);
+    properties.put("digestChunkSize", "4096");
+    Storage<MappedData> storage = BasePartitionStoreTest.build(properties, testName);
+    for (int x = 0; x < 1100; x++) {
+      MappedData message = createMessageBuilder(x);
+      storage.add(message);
+    }
+    TimeUnit.SECONDS.sleep(5);
+    ((TierMigrationMonitor)storage).scanForArchiveMigration();
+
+    // Restoring validates every chunk against the tree digest held in the archive record
+    for (int x = 0; x < 1100; x++) {
+      MappedData data = storage.get(x);
+      Assertions.assertNotNull(data, "Expected data for key "+x);
+      Assertions.assertEquals(data.key, x);
+    }
+    storage.delete();
+  }
+
+  @Test
+  void treeHasherMatchesFileDigest() throws IOException, NoSuchAlgorithmException {
+    File file = new File("test_file" + File.separator + "treeHasher");
+    Files.createDirectories(file.getParentFile().toPath());
+    byte[] content = new byte[3 * 4096 + 100];
+    new Random(7).nextBytes(content);
+    Files.write(file.toPath(), content);
+    try {
+      TreeDigest treeDigest = new TreeDigest("SHA-256", 4096);
+      TreeDigest.Hasher hasher = treeDigest.newHasher();
+      hasher.update(content, 0, 10);
+      hasher.update(content, 10, content.length - 10);
+      TreeDigest.Result streamed = hasher.complete();
+      TreeDigest.Result computed = treeDigest.compute(file);
+      Assertions.assertEquals(computed.getRoot(), streamed.getRoot());
+      Assertions.assertEquals(4, streamed.getChunkHashes().size());
+      Assertions.assertTrue(treeDigest.verify(file, streamed.getChunkHashes()).isEmpty());
+    } finally {
+      Files.deleteIfExists(file.toPath());
+    }
+  }
+
   @Test
   void compressArchiveAndDeleteStore() throws IOException, InterruptedException {
     Map<String, String> properties = BasePartitionStoreTest.buildProperties(false);
@@ -0,0 +1,108 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl;
+
+import io.mapsmessaging.storage.Storage;
+import io.mapsmessaging.storage.StorageBuilder;
+import io.mapsmessaging.storage.impl.file.partition.DirectDataStorage;
+import io.mapsmessaging.storage.impl.file.partition.IndexRecord;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+class DirectIOStoreTest extends BaseTest {
+
+  @Test
+  void directIOStore() throws IOException {
+    new File("test_file").mkdirs();
+    Assumptions.assumeTrue(DirectDataStorage.isSupported("test_file"), "O_DIRECT is not supported on this file system");
+    Map<String, String> properties = partitionProperties(1_000);
+    properties.put("DirectIO", "" + true);
+    StorageBuilder<MappedData> storageBuilder = partitionBuilder("directIO", properties);
+    Storage<MappedData> storage = storageBuilder.build();
+    try {
+      byte[] body = new byte[300 * 1024];
+      for (int x = 0; x < body.length; x++) {
+        body[x] = (byte) x;
+      }
+      for (int x = 0; x < 500; x++) {
+        MappedData mappedData = createMessageBuilder(x);
+        // Larger than the write buffer, so it grows and is read back uncached
+        if (x % 100 == 0) {
+          mappedData.setData(ByteBuffer.wrap(body));
+        }
+        storage.add(mappedData);
+        Assertions.assertEquals(x, storage.get(x).getKey());
+      }
+      storage.close();
+
+      storage = storageBuilder.build();
+      Assertions.assertEquals(500, storage.size());
+      for (int x = 500; x < 600; x++) {
+        storage.add(createMessageBuilder(x));
+      }
+      for (int x = 0; x < 600; x++) {
+        MappedData mappedData = storage.get(x);
+        if (x % 100 == 0 && x < 500) {
+          Assertions.assertEquals(ByteBuffer.wrap(body), mappedData.getData());
+        } else {
+          validateMessage(mappedData, x);
+        }
+      }
+    } finally {
+      storage.delete();
+    }
+  }
+
+  @Test
+  void directIOTailRecovery() throws IOException {
+    new File("test_file").mkdirs();
+    Assumptions.assumeTrue(DirectDataStorage.isSupported("test_file"), "O_DIRECT is not supported on this file system");
+    String fileName = "test_file" + File.separator + "directRecovery_data";
+    Files.deleteIfExists(new File(fileName).toPath());
+    DirectDataStorage<MappedData> crashed = new DirectDataStorage<>(fileName, getFactory(), false, 1024L * 1024L);
+    List<IndexRecord> records = new ArrayList<>();
+    for (int x = 0; x < 10; x++) {
+      records.add(crashed.add(createMessageBuilder(x)));
+    }
+
+    // Not closed, so the header still holds the tail from when it was opened
+    DirectDataStorage<MappedData> recovered = new DirectDataStorage<>(fileName, getFactory(), false, 1024L * 1024L);
+    try {
+      Assertions.assertTrue(recovered.isValidationRequired());
+      IndexRecord last = records.get(records.size() - 1);
+      Assertions.assertEquals(last.getPosition() + last.getLength(), recovered.length());
+      for (int x = 0; x < 10; x++) {
+        validateMessage(recovered.get(records.get(x)), x);
+      }
+    } finally {
+      crashed.close();
+      recovered.delete();
+    }
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl;
+
+import io.mapsmessaging.storage.Storage;
+import io.mapsmessaging.storage.StorageBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+class FixedRecordSlabTest extends BaseTest {
+
+  @Test
+  void fixedRecordSlab() throws IOException {
+    Map<String, String> properties = partitionProperties(1_000);
+    properties.put("FixedRecordSize", "" + 4096);
+    StorageBuilder<MappedData> storageBuilder = partitionBuilder("fixedRecords", properties);
+    Storage<MappedData> storage = storageBuilder.build();
+    try {
+      for (int x = 0; x < 2_500; x++) {
+        storage.add(createMessageBuilder(x));
+      }
+      Storage<MappedData> store = storage;
+      Assertions.assertThrows(IOException.class, () -> store.add(createMessageBuilder(10)));
+      MappedData large = createMessageBuilder(3_000);
+      large.setData(ByteBuffer.allocate(8192));
+      Assertions.assertThrows(IOException.class, () -> store.add(large));
+
+      for (int x = 0; x < 2_500; x += 2) {
+        Assertions.assertTrue(storage.remove(x));
+      }
+      Assertions.assertFalse(storage.remove(0));
+      Assertions.assertEquals(1_250, storage.size());
+      storage.close();
+
+      // Three partitions covering the key blocks and no index files
+      String[] files = new File("test_file" + File.separator + "fixedRecords").list();
+      Assertions.assertNotNull(files);
+      Assertions.assertEquals(3, files.length);
+      for (String name : files) {
+        Assertions.assertTrue(name.startsWith("slab_"));
+      }
+
+      storage = storageBuilder.build();
+      Assertions.assertEquals(1_250, storage.size());
+      Assertions.assertEquals(2_499, storage.getLastKey());
+      for (int x = 0; x < 2_500; x++) {
+        if (x % 2 == 0) {
+          Assertions.assertNull(storage.get(x));
+        } else {
+          validateMessage(storage.get(x), x);
+        }
+      }
+      storage.add(createMessageBuilder(4));
+      validateMessage(storage.get(4), 4);
+    } finally {
+      storage.delete();
+    }
+  }
+}
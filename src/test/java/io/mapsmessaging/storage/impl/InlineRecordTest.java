@@ -0,0 +1,124 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl;
+
+import io.mapsmessaging.storage.StorableFactory;
+import io.mapsmessaging.storage.Storage;
+import io.mapsmessaging.storage.StorageBuilder;
+import io.mapsmessaging.storage.impl.file.partition.IndexRecord;
+import io.mapsmessaging.storage.impl.file.partition.InlineIndexRecordFormat;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+class InlineRecordTest extends BaseTest {
+
+  private static final int BODY_SIZE = 64;
+
+  @Test
+  void inlineRecords() throws IOException {
+    Map<String, String> properties = partitionProperties(1_000);
+    properties.put("InlineThreshold", "" + (64 * 1024)); // capped
+    StorageBuilder<MappedData> storageBuilder = partitionBuilder("inlineRecords", properties).setFactory(new SmallRecordFactory());
+    Storage<MappedData> storage = storageBuilder.build();
+    try {
+      for (int x = 0; x < 200; x++) {
+        storage.add(createSmallRecord(x));
+      }
+      for (int x = 0; x < 200; x++) {
+        validateSmallRecord(storage.get(x), x);
+      }
+      File directory = new File("test_file" + File.separator + "inlineRecords");
+      File index = new File(directory, "partition_0_index");
+      long slotSize = IndexRecord.HEADER_SIZE + InlineIndexRecordFormat.MAX_INLINE_SIZE;
+      Assertions.assertTrue(index.length() > 0 && index.length() <= 1_000L * slotSize + 4096, "Index " + index.length());
+      File data = new File(directory, "partition_0_index_data");
+      Assertions.assertTrue(data.length() < 200L * BODY_SIZE, "Data " + data.length());
+      for (int x = 0; x < 200; x += 4) {
+        Assertions.assertTrue(storage.remove(x));
+      }
+      storage.close();
+
+      // Reopen without inline storage, new records go to the data file while the inline ones remain readable
+      properties.put("InlineThreshold", "0");
+      storageBuilder.setProperties(properties);
+      storage = storageBuilder.build();
+      for (int x = 200; x < 300; x++) {
+        storage.add(createSmallRecord(x));
+      }
+      storage.close();
+      Assertions.assertTrue(data.length() >= 100L * BODY_SIZE, "Data " + data.length());
+
+      storage = storageBuilder.build();
+      Assertions.assertEquals(250, storage.size());
+      for (int x = 0; x < 300; x++) {
+        MappedData lookup = storage.get(x);
+        if (x < 200 && x % 4 == 0) {
+          Assertions.assertNull(lookup);
+        } else {
+          validateSmallRecord(lookup, x);
+        }
+      }
+    } finally {
+      storage.delete();
+    }
+  }
+
+  private static MappedData createSmallRecord(long key) {
+    MappedData mappedData = new MappedData();
+    mappedData.setKey(key);
+    byte[] body = new byte[BODY_SIZE];
+    for (int x = 0; x < body.length; x++) {
+      body[x] = (byte) (key + x);
+    }
+    mappedData.setData(ByteBuffer.wrap(body));
+    return mappedData;
+  }
+
+  private static void validateSmallRecord(MappedData mappedData, long key) {
+    Assertions.assertNotNull(mappedData);
+    Assertions.assertEquals(key, mappedData.getKey());
+    Assertions.assertEquals(createSmallRecord(key).getData(), mappedData.getData());
+  }
+
+  // Packs just the key and body, the standard test records are too large to be stored inline
+  private static final class SmallRecordFactory implements StorableFactory<MappedData> {
+
+    @Override
+    public @NotNull MappedData unpack(@NotNull ByteBuffer[] buffers) {
+      MappedData mappedData = new MappedData();
+      mappedData.setKey(buffers[0].getLong());
+      mappedData.setData(buffers[0].slice());
+      return mappedData;
+    }
+
+    @Override
+    public @NotNull ByteBuffer[] pack(@NotNull MappedData object) {
+      ByteBuffer buffer = ByteBuffer.allocate(8 + object.getData().remaining());
+      buffer.putLong(object.getKey()).put(object.getData().duplicate()).flip();
+      return new ByteBuffer[]{buffer};
+    }
+  }
+}
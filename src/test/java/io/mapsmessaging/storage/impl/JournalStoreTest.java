@@ -0,0 +1,178 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl;
+
+import io.mapsmessaging.storage.Batch;
+import io.mapsmessaging.storage.Storage;
+import io.mapsmessaging.storage.StorageBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class JournalStoreTest extends BaseStoreTest {
+
+  @Override
+  public Storage<MappedData> createStore(String testName, boolean sync) throws IOException {
+    return build(testName, sync, 64L * 1024 * 1024);
+  }
+
+  static Storage<MappedData> build(String testName, boolean sync, long segmentSize) throws IOException {
+    Map<String, String> properties = new LinkedHashMap<>();
+    properties.put("storeType", "Journal");
+    properties.put("Sync", "" + sync);
+    properties.put("SegmentSize", "" + segmentSize);
+    StorageBuilder<MappedData> storageBuilder = new StorageBuilder<>();
+    storageBuilder.setFactory(getFactory())
+        .setName("test_file" + File.separator + testName)
+        .setProperties(properties);
+    return storageBuilder.build();
+  }
+
+  @Test
+  void sharedJournalAcrossStores() throws IOException {
+    File journal = new File("test_file" + File.separator + "journal");
+    List<Storage<MappedData>> stores = new ArrayList<>();
+    for (int x = 0; x < 20; x++) {
+      stores.add(build("sharedJournal_" + x, true, 256 * 1024));
+    }
+    try {
+      for (int key = 0; key < 200; key++) {
+        for (Storage<MappedData> store : stores) {
+          store.add(createMessageBuilder(key));
+        }
+      }
+      String[] segments = journal.list((dir, name) -> name.startsWith("segment_"));
+      Assertions.assertNotNull(segments);
+      int written = segments.length;
+      Assertions.assertTrue(written > 1);
+
+      // Removing most records lets the oldest segments be dropped or compacted
+      for (Storage<MappedData> store : stores) {
+        for (int key = 0; key < 200; key++) {
+          if (key % 10 != 0) {
+            Assertions.assertTrue(store.remove(key));
+          }
+        }
+      }
+      segments = journal.list((dir, name) -> name.startsWith("segment_"));
+      Assertions.assertNotNull(segments);
+      Assertions.assertTrue(segments.length < written, "Segments " + segments.length + " of " + written);
+      for (Storage<MappedData> store : stores) {
+        store.close();
+      }
+      stores.clear();
+
+      for (int x = 0; x < 20; x++) {
+        stores.add(build("sharedJournal_" + x, true, 256 * 1024));
+      }
+      for (Storage<MappedData> store : stores) {
+        Assertions.assertEquals(20, store.size());
+        for (int key = 0; key < 200; key += 10) {
+          validateMessage(store.get(key), key);
+        }
+        Assertions.assertNull(store.get(1));
+      }
+
+      // A deleted store does not come back when the journal is replayed
+      stores.remove(0).delete();
+      for (Storage<MappedData> store : stores) {
+        store.close();
+      }
+      stores.clear();
+      Storage<MappedData> store = build("sharedJournal_0", true, 256 * 1024);
+      stores.add(store);
+      Assertions.assertTrue(store.isEmpty());
+    } finally {
+      for (Storage<MappedData> store : stores) {
+        store.delete();
+      }
+    }
+  }
+
+  @Test
+  void rejectsDuplicatesAndConflictingJournalConfig() throws IOException {
+    Storage<MappedData> store = build("journalDuplicates", false, 256 * 1024);
+    try {
+      store.add(createMessageBuilder(1));
+      Assertions.assertThrows(IOException.class, () -> store.add(createMessageBuilder(1)));
+      Batch<MappedData> batch = store.batch().add(createMessageBuilder(2)).add(createMessageBuilder(1));
+      Assertions.assertThrows(IOException.class, batch::commit);
+      Assertions.assertNull(store.get(2));
+      store.batch().remove(1).add(createMessageBuilder(1)).commit();
+      validateMessage(store.get(1), 1);
+      Assertions.assertEquals(1, store.size());
+
+      // The journal is shared, so a second store must open it with the same settings
+      Assertions.assertThrows(IOException.class, () -> build("journalDuplicatesOther", false, 512 * 1024));
+    } finally {
+      store.delete();
+    }
+  }
+
+  @Test
+  void batchWithoutCommitRecordIsDropped() throws IOException {
+    File journal = new File("test_file" + File.separator + "batchJournal");
+    Map<String, String> properties = new LinkedHashMap<>();
+    properties.put("storeType", "Journal");
+    properties.put("Sync", "" + true);
+    properties.put("JournalDirectory", journal.getPath());
+    StorageBuilder<MappedData> storageBuilder = new StorageBuilder<>();
+    storageBuilder.setFactory(getFactory())
+        .setName("test_file" + File.separator + "journalBatch")
+        .setProperties(properties);
+    Storage<MappedData> store = storageBuilder.build();
+    try {
+      Assertions.assertTrue(store.supportAtomicBatches());
+      for (int key = 0; key < 10; key++) {
+        store.add(createMessageBuilder(key));
+      }
+      store.batch().add(createMessageBuilder(10)).add(createMessageBuilder(11)).remove(0).remove(99).commit();
+      Assertions.assertEquals(11, store.size());
+      store.close();
+
+      store = storageBuilder.build();
+      Assertions.assertEquals(11, store.size());
+      Assertions.assertNull(store.get(0));
+      validateMessage(store.get(11), 11);
+
+      store.batch().add(createMessageBuilder(12)).remove(1).commit();
+      store.close();
+      // Lose the commit record, as if the write had been torn, and the whole batch goes with it
+      try (RandomAccessFile segment = new RandomAccessFile(new File(journal, "segment_0"), "rw")) {
+        segment.setLength(segment.length() - 29);
+      }
+      store = storageBuilder.build();
+      Assertions.assertEquals(11, store.size());
+      Assertions.assertNull(store.get(12));
+      validateMessage(store.get(1), 1);
+      store.add(createMessageBuilder(12));
+      validateMessage(store.get(12), 12);
+    } finally {
+      store.delete();
+    }
+  }
+}
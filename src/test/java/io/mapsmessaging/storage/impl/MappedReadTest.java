@@ -0,0 +1,64 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl;
+
+import io.mapsmessaging.storage.Storage;
+import io.mapsmessaging.storage.StorageBuilder;
+import io.mapsmessaging.storage.TierMigrationMonitor;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+class MappedReadTest extends BaseTest {
+
+  @Test
+  void mappedReadsOfFullPartitions() throws IOException, InterruptedException {
+    Map<String, String> properties = partitionProperties(100);
+    properties.put("MaxPartitionSize", "" + (64L * 1024L));
+    properties.put("MappedReads", "" + true);
+    properties.put("MappedReadIdleTime", "" + 1);
+    StorageBuilder<MappedData> storageBuilder = partitionBuilder("mappedReads", properties);
+    Storage<MappedData> storage = storageBuilder.build();
+    try {
+      for (int x = 0; x < 1000; x++) {
+        storage.add(createMessageBuilder(x));
+      }
+      for (int x = 0; x < 1000; x++) {
+        validateMessage(storage.get(x), x);
+      }
+      // Releases the mappings of the idle partitions, the next reads map them again
+      TimeUnit.MILLISECONDS.sleep(10);
+      ((TierMigrationMonitor) storage).scanForArchiveMigration();
+      for (int x = 999; x >= 0; x--) {
+        validateMessage(storage.get(x), x);
+      }
+      storage.close();
+
+      storage = storageBuilder.build();
+      for (int x = 0; x < 1000; x++) {
+        validateMessage(storage.get(x), x);
+      }
+    } finally {
+      storage.delete();
+    }
+  }
+}
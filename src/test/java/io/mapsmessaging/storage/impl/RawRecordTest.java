@@ -0,0 +1,78 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl;
+
+import io.mapsmessaging.storage.RawRecord;
+import io.mapsmessaging.storage.Storage;
+import io.mapsmessaging.storage.StorageBuilder;
+import io.mapsmessaging.storage.TierMigrationMonitor;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+class RawRecordTest extends BaseTest {
+
+  @Test
+  void rawRecordLeases() throws IOException, InterruptedException {
+    Map<String, String> properties = partitionProperties(100);
+    properties.put("MaxPartitionSize", "" + (64L * 1024L));
+    properties.put("MappedReads", "" + true);
+    properties.put("MappedReadIdleTime", "" + 1);
+    StorageBuilder<MappedData> storageBuilder = partitionBuilder("rawRecords", properties);
+    Storage<MappedData> storage = storageBuilder.build();
+    try {
+      Assertions.assertTrue(storage.supportRawAccess());
+      for (int x = 0; x < 300; x++) {
+        storage.add(createMessageBuilder(x));
+      }
+      Assertions.assertNull(storage.getRaw(1000));
+      List<RawRecord> leases = new ArrayList<>();
+      for (int x = 0; x < 300; x++) {
+        RawRecord raw = storage.getRaw(x);
+        Assertions.assertNotNull(raw);
+        Assertions.assertEquals(x, raw.getKey());
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        Assertions.assertEquals(raw.getLength(), raw.writeTo(Channels.newChannel(outputStream)));
+        Assertions.assertEquals(raw.getLength(), outputStream.size());
+        validateMessage(getFactory().unpack(raw.getBuffers()), x);
+        leases.add(raw);
+      }
+
+      // Outstanding leases keep the mappings valid even when the idle partitions release them
+      TimeUnit.MILLISECONDS.sleep(10);
+      ((TierMigrationMonitor) storage).scanForArchiveMigration();
+      for (RawRecord raw : leases) {
+        validateMessage(getFactory().unpack(raw.getBuffers()), raw.getKey());
+        raw.close();
+        Assertions.assertTrue(raw.isReleased());
+        Assertions.assertThrows(IOException.class, raw::getBuffers);
+      }
+    } finally {
+      storage.delete();
+    }
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl;
+
+import io.mapsmessaging.storage.Storable;
+import io.mapsmessaging.storage.StorableFactory;
+import io.mapsmessaging.storage.impl.file.partition.DataStorageImpl;
+import io.mapsmessaging.storage.impl.file.partition.IndexRecord;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+@State(Scope.Benchmark)
+public class RecordCompressionBenchmark {
+
+  private static final long PARTITION_SIZE = 1L << 30;
+
+  @Param({"512", "4096", "65536"})
+  public int payloadSize;
+
+  @Param({"0", "256"})
+  public int compressionThreshold;
+
+  private File file;
+  private DataStorageImpl<Record> dataStorage;
+  private ByteBuffer[] payload;
+  private long key;
+
+  // Reported per operation, so the runs show the bytes written alongside the throughput
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  public static class BytesWritten {
+    public long bytes;
+  }
+
+  @Setup(Level.Iteration)
+  public void setup() throws IOException {
+    file = File.createTempFile("record_compression", ".jmh");
+    file.delete();
+    dataStorage = new DataStorageImpl<>(file.getAbsolutePath(), new RecordFactory(), false, PARTITION_SIZE, 0, false, 0, compressionThreshold);
+    StringBuilder json = new StringBuilder();
+    while (json.length() < payloadSize) {
+      json.append("{\"id\":").append(json.length()).append(",\"state\":\"active\",\"tags\":[\"queue\",\"topic\"]},");
+    }
+    payload = new ByteBuffer[]{ByteBuffer.wrap(json.substring(0, payloadSize).getBytes(StandardCharsets.UTF_8))};
+  }
+
+  @TearDown(Level.Iteration)
+  public void tearDown() throws IOException {
+    dataStorage.delete();
+  }
+
+  @Benchmark
+  @BenchmarkMode({Mode.Throughput})
+  @Fork(value = 1, warmups = 2)
+  @Threads(1)
+  public void addRecord(BytesWritten bytesWritten, Blackhole blackhole) throws IOException {
+    if (dataStorage.isFull()) {
+      tearDown();
+      setup();
+    }
+    payload[0].clear();
+    IndexRecord indexRecord = dataStorage.add(new Record(key++), payload);
+    bytesWritten.bytes += indexRecord.getLength();
+    blackhole.consume(indexRecord);
+  }
+
+  public static final class Record implements Storable {
+
+    private final long key;
+
+    Record(long key) {
+      this.key = key;
+    }
+
+    @Override
+    public long getKey() {
+      return key;
+    }
+
+    @Override
+    public long getExpiry() {
+      return 0;
+    }
+  }
+
+  public static final class RecordFactory implements StorableFactory<Record> {
+
+    @Override
+    public @NotNull Record unpack(@NotNull ByteBuffer[] reloadBuffers) {
+      return new Record(0);
+    }
+
+    @Override
+    public @NotNull ByteBuffer[] pack(@NotNull Record object) {
+      return new ByteBuffer[0];
+    }
+  }
+}
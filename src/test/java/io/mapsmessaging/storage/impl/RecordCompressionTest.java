@@ -0,0 +1,82 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl;
+
+import io.mapsmessaging.storage.RawRecord;
+import io.mapsmessaging.storage.Storage;
+import io.mapsmessaging.storage.StorageBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+class RecordCompressionTest extends BaseTest {
+
+  @Test
+  void compressedRecords() throws IOException {
+    Map<String, String> properties = partitionProperties(1_000);
+    properties.put("CompressionThreshold", "" + 4096);
+    StorageBuilder<MappedData> storageBuilder = partitionBuilder("compressedRecords", properties);
+    Storage<MappedData> storage = storageBuilder.build();
+    try {
+      StringBuilder json = new StringBuilder();
+      while (json.length() < 64 * 1024) {
+        json.append("{\"id\":").append(json.length()).append(",\"state\":\"active\",\"tags\":[\"queue\",\"topic\"]},");
+      }
+      byte[] body = json.toString().getBytes();
+      for (int x = 0; x < 100; x++) {
+        MappedData mappedData = createMessageBuilder(x);
+        // The random 1KB bodies fall below the threshold and are stored as is
+        if (x % 2 == 0) {
+          mappedData.setData(ByteBuffer.wrap(body));
+        }
+        storage.add(mappedData);
+      }
+      storage.close();
+      File dataFile = new File("test_file" + File.separator + "compressedRecords" + File.separator + "partition_0_index_data");
+      Assertions.assertTrue(dataFile.exists());
+      Assertions.assertTrue(dataFile.length() < 50L * body.length);
+
+      storage = storageBuilder.build();
+      for (int x = 0; x < 100; x++) {
+        MappedData full = storage.get(x);
+        Assertions.assertNotNull(full);
+        Assertions.assertEquals(x, full.getKey());
+        MappedData headerOnly = storage.get(x, 1L);
+        Assertions.assertNotNull(headerOnly);
+        Assertions.assertEquals(x, headerOnly.getKey());
+        try (RawRecord raw = storage.getRaw(x)) {
+          Assertions.assertNotNull(raw);
+          Assertions.assertEquals(x, getFactory().unpack(raw.getBuffers()).getKey());
+        }
+        if (x % 2 == 0) {
+          Assertions.assertEquals(ByteBuffer.wrap(body), full.getData());
+        } else {
+          validateMessage(full, x);
+        }
+      }
+    } finally {
+      storage.delete();
+    }
+  }
+}
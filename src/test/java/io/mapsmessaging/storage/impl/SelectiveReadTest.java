@@ -0,0 +1,69 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl;
+
+import io.mapsmessaging.storage.Storage;
+import io.mapsmessaging.storage.StorageBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+class SelectiveReadTest extends BaseTest {
+
+  @Test
+  void selectiveBufferReads() throws IOException {
+    Map<String, String> properties = partitionProperties(1_000);
+    StorageBuilder<MappedData> storageBuilder = partitionBuilder("selectiveReads", properties);
+    Storage<MappedData> storage = storageBuilder.build();
+    try {
+      byte[] body = new byte[64 * 1024];
+      for (int x = 0; x < body.length; x++) {
+        body[x] = (byte) x;
+      }
+      for (int x = 0; x < 100; x++) {
+        MappedData mappedData = createMessageBuilder(x);
+        // Small records are always read in full
+        if (x % 2 == 0) {
+          mappedData.setData(ByteBuffer.wrap(body));
+        }
+        storage.add(mappedData);
+      }
+      for (int x = 0; x < 100; x++) {
+        MappedData headerOnly = storage.get(x, 1L);
+        Assertions.assertNotNull(headerOnly);
+        Assertions.assertEquals(x, headerOnly.getKey());
+        Assertions.assertEquals(createMessageBuilder(x).getMap().keySet(), headerOnly.getMap().keySet());
+        MappedData full = storage.get(x, Storage.ALL_BUFFERS);
+        if (x % 2 == 0) {
+          Assertions.assertEquals(0, headerOnly.getData().remaining());
+          Assertions.assertEquals(ByteBuffer.wrap(body), full.getData());
+        } else {
+          validateMessage(headerOnly, x);
+          validateMessage(full, x);
+        }
+      }
+    } finally {
+      storage.delete();
+    }
+  }
+}
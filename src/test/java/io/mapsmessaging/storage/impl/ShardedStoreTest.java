@@ -0,0 +1,120 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl;
+
+import io.mapsmessaging.storage.AsyncStorage;
+import io.mapsmessaging.storage.Storage;
+import io.mapsmessaging.storage.StorageBuilder;
+import io.mapsmessaging.storage.StorageStatistics;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+class ShardedStoreTest extends BaseTest {
+
+  @Test
+  void shardedStore() throws IOException, ExecutionException, InterruptedException {
+    String name = "test_file" + File.separator + "sharded";
+    Map<String, String> properties = partitionProperties(1_000);
+    properties.put("ShardCount", "" + 4);
+    properties.put("ShardRouting", "range");
+    properties.put("ShardRangeSize", "" + 100);
+    StorageBuilder<MappedData> storageBuilder = partitionBuilder("sharded", properties);
+    Storage<MappedData> storage = storageBuilder.build();
+    Assertions.assertFalse(storage.supportAtomicBatches());
+    AsyncStorage<MappedData> async = new AsyncStorage<>(storage);
+    try {
+      List<Future<MappedData>> futures = new ArrayList<>();
+      for (int x = 0; x < 2_000; x++) {
+        futures.add(async.add(createMessageBuilder(x)));
+      }
+      for (Future<MappedData> future : futures) {
+        future.get();
+      }
+      for (int x = 0; x < 4; x++) {
+        Assertions.assertTrue(new File(name, "shard_" + x).isDirectory());
+      }
+      Assertions.assertEquals(2_000, async.size().get());
+      List<Long> keys = async.getKeys().get();
+      Assertions.assertEquals(2_000, keys.size());
+      for (int x = 0; x < 2_000; x++) {
+        Assertions.assertEquals(x, keys.get(x));
+      }
+      StorageStatistics statistics = (StorageStatistics) async.getStatistics().get();
+      Assertions.assertEquals(2_000, statistics.getWrites());
+      for (int x = 0; x < 2_000; x += 2) {
+        Assertions.assertTrue(async.remove(x).get());
+      }
+      validateMessage(async.get(1_001).get(), 1_001);
+      Assertions.assertNull(async.get(1_000).get());
+      async.close();
+
+      storage = storageBuilder.build();
+      Assertions.assertEquals(1_000, storage.size());
+      Assertions.assertEquals(1_999, storage.getLastKey());
+      for (int x = 1; x < 2_000; x += 2) {
+        validateMessage(storage.get(x), x);
+      }
+      Assertions.assertEquals(500, storage.removeAll(storage.getKeys().subList(0, 500)));
+      Assertions.assertEquals(500, storage.size());
+      storage.close();
+
+      properties.put("ShardCount", "" + 2);
+      storageBuilder.setProperties(properties);
+      Assertions.assertThrows(IOException.class, storageBuilder::build);
+      properties.put("ShardCount", "" + 4);
+      storageBuilder.setProperties(properties);
+      storage = storageBuilder.build();
+    } finally {
+      storage.delete();
+    }
+    Assertions.assertFalse(new File(name).exists());
+  }
+
+  @Test
+  void shardedStoreBehindCache() throws IOException, ExecutionException, InterruptedException {
+    Map<String, String> properties = partitionProperties(1_000);
+    properties.put("ShardCount", "" + 2);
+    properties.put("ShardRouting", "range");
+    properties.put("ShardRangeSize", "" + 100);
+    StorageBuilder<MappedData> storageBuilder = partitionBuilder("shardedCache", properties).setCache();
+    Storage<MappedData> storage = storageBuilder.build();
+    AsyncStorage<MappedData> async = new AsyncStorage<>(storage);
+    try {
+      // The cache is not thread safe, so operations through it stay on the store's own scheduler
+      Assertions.assertNull(storage.getExecutor(0));
+      Assertions.assertNull(storage.getExecutor(100));
+      for (int x = 0; x < 200; x++) {
+        async.add(createMessageBuilder(x));
+      }
+      validateMessage(async.get(150).get(), 150);
+      Assertions.assertEquals(200, async.size().get());
+    } finally {
+      async.delete();
+    }
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl;
+
+import io.mapsmessaging.storage.Storage;
+import io.mapsmessaging.storage.StorageBuilder;
+import io.mapsmessaging.storage.impl.journal.SharedPayloadStore;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+class SharedPayloadStoreTest extends BaseTest {
+
+  @Test
+  void sharedPayloadFanOut() throws IOException {
+    File payloads = new File("test_file" + File.separator + "payloads");
+    Map<String, String> properties = partitionProperties(100);
+    properties.put("SharedPayloadDirectory", payloads.getPath());
+    List<StorageBuilder<MappedData>> builders = new ArrayList<>();
+    List<Storage<MappedData>> stores = new ArrayList<>();
+    for (int x = 0; x < 10; x++) {
+      StorageBuilder<MappedData> storageBuilder = partitionBuilder("fanOut_" + x, properties);
+      builders.add(storageBuilder);
+      stores.add(storageBuilder.build());
+    }
+    try {
+      List<MappedData> messages = new ArrayList<>();
+      for (int key = 0; key < 200; key++) {
+        messages.add(createMessageBuilder(key));
+      }
+      for (MappedData message : messages) {
+        stores.get(0).add(message);
+      }
+      long written = payloadBytes(payloads);
+      // The other subscribers only take references to the payloads already written
+      for (int x = 1; x < stores.size(); x++) {
+        for (MappedData message : messages) {
+          stores.get(x).add(message);
+        }
+      }
+      Assertions.assertEquals(written, payloadBytes(payloads));
+      for (Storage<MappedData> store : stores) {
+        Assertions.assertEquals(200, store.size());
+        validateMessage(store.get(7), 7);
+      }
+
+      for (Storage<MappedData> store : stores) {
+        Assertions.assertTrue(store.remove(0));
+        store.close();
+      }
+      stores.clear();
+      for (StorageBuilder<MappedData> storageBuilder : builders) {
+        stores.add(storageBuilder.build());
+      }
+      for (Storage<MappedData> store : stores) {
+        Assertions.assertEquals(199, store.size());
+        Assertions.assertNull(store.get(0));
+        for (int key = 1; key < 200; key += 11) {
+          validateMessage(store.get(key), key);
+        }
+      }
+      // The content id released above is reused for the next new payload
+      stores.get(0).add(createMessageBuilder(500));
+      validateMessage(stores.get(0).get(500), 500);
+    } finally {
+      for (Storage<MappedData> store : stores) {
+        store.delete();
+      }
+    }
+  }
+
+  @Test
+  void sharedPayloadRekeyedAndRecounted() throws IOException {
+    File payloads = new File("test_file" + File.separator + "recount_payloads");
+    Map<String, String> properties = partitionProperties(100);
+    properties.put("SharedPayloadDirectory", payloads.getPath());
+    List<StorageBuilder<MappedData>> builders = new ArrayList<>();
+    List<Storage<MappedData>> stores = new ArrayList<>();
+    for (int x = 0; x < 2; x++) {
+      StorageBuilder<MappedData> storageBuilder = partitionBuilder("recount_" + x, properties);
+      builders.add(storageBuilder);
+      stores.add(storageBuilder.build());
+    }
+    try {
+      // The same instance re-keyed for the second store must not reuse the bytes packed for the first
+      MappedData message = createMessageBuilder(1);
+      stores.get(0).add(message);
+      message.setKey(2);
+      stores.get(1).add(message);
+      Assertions.assertEquals(1, stores.get(0).get(1).getKey());
+      Assertions.assertEquals(2, stores.get(1).get(2).getKey());
+      for (Storage<MappedData> store : stores) {
+        store.close();
+      }
+      stores.clear();
+
+      // Simulate a crash that left a count with no reference behind it
+      try (RandomAccessFile file = new RandomAccessFile(new File(payloads, "references"), "rw")) {
+        file.seek(8);
+        file.writeInt(0);
+        file.seek(16);
+        file.writeInt(7);
+      }
+      for (StorageBuilder<MappedData> storageBuilder : builders) {
+        stores.add(storageBuilder.build());
+      }
+      SharedPayloadStore store = SharedPayloadStore.open(payloads.getPath(), false);
+      try {
+        Assertions.assertEquals(1, store.getReferenceCount(0));
+        Assertions.assertEquals(1, store.getReferenceCount(1));
+        Assertions.assertTrue(stores.get(0).remove(1));
+        Assertions.assertEquals(0, store.getReferenceCount(0));
+        Assertions.assertThrows(IOException.class, () -> store.get(0));
+        Assertions.assertEquals(2, stores.get(1).get(2).getKey());
+      } finally {
+        SharedPayloadStore.release(store);
+      }
+    } finally {
+      for (Storage<MappedData> store : stores) {
+        store.delete();
+      }
+    }
+  }
+
+  private static long payloadBytes(File directory) {
+    long size = 0;
+    File[] segments = directory.listFiles((dir, name) -> name.startsWith("segment_"));
+    if (segments != null) {
+      for (File segment : segments) {
+        size += segment.length();
+      }
+    }
+    return size;
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl;
+
+import io.mapsmessaging.storage.PackSink;
+import io.mapsmessaging.storage.StorableFactory;
+import io.mapsmessaging.storage.Storage;
+import io.mapsmessaging.storage.StorageBuilder;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+class SinkPackTest extends BaseTest {
+
+  @Test
+  void sinkPackedWrites() throws IOException {
+    AtomicLong sinkPacked = new AtomicLong();
+    StorableFactory<MappedData> sinkFactory = new StorableFactory<>() {
+      @Override
+      public @NotNull MappedData unpack(@NotNull ByteBuffer[] reloadBuffers) throws IOException {
+        return getFactory().unpack(reloadBuffers);
+      }
+
+      @Override
+      public @NotNull ByteBuffer[] pack(@NotNull MappedData object) throws IOException {
+        return getFactory().pack(object);
+      }
+
+      @Override
+      public boolean pack(@NotNull MappedData object, @NotNull PackSink sink) throws IOException {
+        if (object.getKey() % 2 == 0) {
+          return false; // mix in the array path
+        }
+        for (ByteBuffer buffer : getFactory().pack(object)) {
+          sink.newBuffer().put(buffer);
+        }
+        sinkPacked.incrementAndGet();
+        return true;
+      }
+    };
+
+    StorageBuilder<MappedData> storageBuilder = partitionBuilder("sinkPacked", partitionProperties(1_000)).setFactory(sinkFactory);
+    Storage<MappedData> storage = storageBuilder.build();
+    try {
+      for (int x = 0; x < 500; x++) {
+        storage.add(createMessageBuilder(x));
+      }
+      Assertions.assertEquals(250, sinkPacked.get());
+      storage.close();
+
+      storage = storageBuilder.build();
+      for (int x = 0; x < 500; x++) {
+        validateMessage(storage.get(x), x);
+      }
+    } finally {
+      storage.delete();
+    }
+  }
+}
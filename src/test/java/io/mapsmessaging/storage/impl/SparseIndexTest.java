@@ -0,0 +1,81 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl;
+
+import io.mapsmessaging.storage.Storage;
+import io.mapsmessaging.storage.StorageBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+class SparseIndexTest extends BaseTest {
+
+  @Test
+  void sparseIndexPartitions() throws IOException {
+    Map<String, String> properties = partitionProperties(1_000);
+    properties.put("SparseIndex", "" + true);
+    StorageBuilder<MappedData> storageBuilder = partitionBuilder("sparseIndex", properties);
+    Storage<MappedData> storage = storageBuilder.build();
+    long stride = 1_000_003;
+    try {
+      // With one slot per key every add would need its own partition
+      for (int x = 1; x <= 2_500; x++) {
+        storage.add(createMessageBuilder(x * stride));
+      }
+      storage.add(createMessageBuilder(7)); // before the first partition
+      String[] indexes = new File("test_file" + File.separator + "sparseIndex").list((dir, name) -> name.endsWith("_index"));
+      Assertions.assertNotNull(indexes);
+      Assertions.assertTrue(indexes.length <= 5, "Created " + indexes.length + " partitions");
+
+      for (int x = 2; x <= 2_500; x += 2) {
+        Assertions.assertTrue(storage.remove(x * stride));
+      }
+      Assertions.assertEquals(1_251, storage.size());
+      storage.close();
+
+      storage = storageBuilder.build();
+      Assertions.assertEquals(1_251, storage.size());
+      Assertions.assertNotNull(storage.get(7));
+      for (int x = 1; x <= 2_500; x++) {
+        MappedData mappedData = storage.get(x * stride);
+        if (x % 2 == 0) {
+          Assertions.assertNull(mappedData);
+        } else {
+          Assertions.assertNotNull(mappedData);
+          Assertions.assertEquals(x * stride, mappedData.getKey());
+        }
+      }
+      List<Long> keys = storage.getKeys();
+      Assertions.assertEquals(1_251, keys.size());
+      Assertions.assertEquals(7L, keys.get(0));
+      Assertions.assertEquals(stride, keys.get(1));
+
+      // A removed key can be stored again in its old slot
+      storage.add(createMessageBuilder(2 * stride));
+      Assertions.assertEquals(2 * stride, storage.get(2 * stride).getKey());
+    } finally {
+      storage.delete();
+    }
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl;
+
+import io.mapsmessaging.storage.Storage;
+import io.mapsmessaging.storage.StorageBuilder;
+import io.mapsmessaging.storage.impl.file.FileHelper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+class StripedDirectoryTest extends BaseTest {
+
+  @Test
+  void stripedDirectories() throws IOException {
+    String name = "test_file" + File.separator + "striped";
+    String rootA = "stripe_a";
+    String rootB = "stripe_b";
+    Map<String, String> properties = partitionProperties(100);
+    properties.put("IndexDirectories", rootA + "," + rootB);
+    properties.put("DataDirectories", rootB + "," + rootA);
+    StorageBuilder<MappedData> storageBuilder = partitionBuilder("striped", properties);
+    Storage<MappedData> storage = storageBuilder.build();
+    try {
+      for (int x = 0; x < 1_000; x++) {
+        storage.add(createMessageBuilder(x));
+      }
+      for (String root : new String[]{rootA, rootB}) {
+        File directory = new File(root, name);
+        String[] indexes = directory.list((dir, file) -> file.endsWith("_index"));
+        String[] data = directory.list((dir, file) -> file.endsWith("_data"));
+        Assertions.assertNotNull(indexes);
+        Assertions.assertNotNull(data);
+        Assertions.assertEquals(5, indexes.length);
+        Assertions.assertEquals(5, data.length);
+      }
+      storage.close();
+
+      storage = storageBuilder.build();
+      Assertions.assertEquals(1_000, storage.size());
+      for (int x = 0; x < 1_000; x++) {
+        validateMessage(storage.get(x), x);
+      }
+      storage.add(createMessageBuilder(1_000));
+      Assertions.assertEquals(1_001, storage.size());
+    } finally {
+      storage.delete();
+    }
+    Assertions.assertFalse(new File(rootA, name).exists());
+    Assertions.assertFalse(new File(rootB, name).exists());
+    FileHelper.delete(rootA, true, false);
+    FileHelper.delete(rootB, true, false);
+  }
+
+  @Test
+  void dataDirectoriesAddedToExistingStore() throws IOException {
+    String root = "stripe_c";
+    File directory = new File("test_file" + File.separator + "addedRoots");
+    Map<String, String> properties = partitionProperties(100);
+    StorageBuilder<MappedData> storageBuilder = partitionBuilder("addedRoots", properties);
+    Storage<MappedData> storage = storageBuilder.build();
+    try {
+      for (int x = 0; x < 250; x++) {
+        storage.add(createMessageBuilder(x));
+      }
+      storage.close();
+
+      // The existing partitions keep their data in the store directory, new ones go to the configured root
+      properties.put("DataDirectories", root);
+      storageBuilder.setProperties(properties);
+      storage = storageBuilder.build();
+      for (int x = 0; x < 250; x++) {
+        validateMessage(storage.get(x), x);
+      }
+      for (int x = 250; x < 400; x++) {
+        storage.add(createMessageBuilder(x));
+      }
+      String[] moved = new File(root, directory.getPath()).list((dir, file) -> file.endsWith("_data"));
+      Assertions.assertNotNull(moved);
+      Assertions.assertTrue(moved.length > 0);
+      storage.close();
+
+      // A missing data file fails the load rather than being replaced by an empty one
+      File lost = new File(directory, "partition_0_index_data");
+      Assertions.assertTrue(lost.delete());
+      IOException exception = Assertions.assertThrows(IOException.class, storageBuilder::build);
+      Assertions.assertTrue(exception.getMessage().contains("partition_0_index_data"), exception.getMessage());
+    } finally {
+      FileHelper.delete(directory.getPath(), true, false);
+      FileHelper.delete(root, true, false);
+    }
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl;
+
+import io.mapsmessaging.storage.Storage;
+import io.mapsmessaging.storage.StorageBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Map;
+
+class WindowedIndexTest extends BaseTest {
+
+  @Test
+  void windowedIndexReload() throws IOException {
+    Map<String, String> properties = partitionProperties(100_000);
+    properties.put("IndexWindowSize", "" + 1_024);
+    properties.put("IndexWindowCount", "" + 2);
+    StorageBuilder<MappedData> storageBuilder = partitionBuilder("windowedIndex", properties);
+    Storage<MappedData> storage = storageBuilder.build();
+    try {
+      for (int x = 0; x < 5_000; x++) {
+        MappedData message = createMessageBuilder(x);
+        message.setKey(x * 7L);
+        storage.add(message);
+      }
+      for (int x = 0; x < 5_000; x += 2) {
+        storage.remove(x * 7L);
+      }
+      storage.close();
+
+      storage = storageBuilder.build();
+      Assertions.assertEquals(2_500, storage.size());
+      for (int x = 0; x < 5_000; x++) {
+        MappedData lookup = storage.get(x * 7L);
+        if (x % 2 == 0) {
+          Assertions.assertNull(lookup);
+        } else {
+          Assertions.assertNotNull(lookup);
+          Assertions.assertEquals(x * 7L, lookup.getKey());
+        }
+      }
+    } finally {
+      storage.delete();
+    }
+  }
+}
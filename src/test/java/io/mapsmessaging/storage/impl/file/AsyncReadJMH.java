@@ -0,0 +1,103 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl.file;
+
+import io.mapsmessaging.storage.impl.file.DataAppendJMH.Record;
+import io.mapsmessaging.storage.impl.file.DataAppendJMH.RecordFactory;
+import io.mapsmessaging.storage.impl.file.partition.AsyncDataStorage;
+import io.mapsmessaging.storage.impl.file.partition.DataStorage;
+import io.mapsmessaging.storage.impl.file.partition.DataStorageImpl;
+import io.mapsmessaging.storage.impl.file.partition.IndexRecord;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Random reads issued queueDepth at a time before any is waited on. The blocking engine can only ever have one in flight
+@State(Scope.Benchmark)
+public class AsyncReadJMH {
+
+  private static final long PARTITION_SIZE = 1L << 30;
+  private static final int RECORDS = 16_384;
+
+  @Param({"blocking", "async"})
+  public String engine;
+
+  @Param({"1", "4", "16", "64"})
+  public int queueDepth;
+
+  @Param({"4096"})
+  public int recordSize;
+
+  private File file;
+  private DataStorage<Record> dataStorage;
+  private IndexRecord[] records;
+  private CompletableFuture<Record>[] inFlight;
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  public static class Reads {
+    public long reads;
+  }
+
+  @Setup(Level.Trial)
+  @SuppressWarnings("unchecked")
+  public void setup() throws IOException {
+    file = File.createTempFile("async_read", ".jmh");
+    file.delete();
+    if (engine.equals("async")) {
+      dataStorage = new AsyncDataStorage<>(file.getAbsolutePath(), new RecordFactory(), false, PARTITION_SIZE);
+    } else {
+      dataStorage = new DataStorageImpl<>(file.getAbsolutePath(), new RecordFactory(), false, PARTITION_SIZE);
+    }
+    ByteBuffer[] payload = new ByteBuffer[]{ByteBuffer.allocate(recordSize)};
+    records = new IndexRecord[RECORDS];
+    for (int x = 0; x < RECORDS; x++) {
+      payload[0].clear();
+      records[x] = dataStorage.add(new Record(x), payload);
+    }
+    dataStorage.flush();
+    inFlight = new CompletableFuture[queueDepth];
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    dataStorage.delete();
+  }
+
+  @Benchmark
+  @BenchmarkMode({Mode.Throughput})
+  @Fork(value = 1, warmups = 2)
+  @Threads(1)
+  public void randomReads(Reads reads, Blackhole blackhole) throws IOException {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    for (int x = 0; x < queueDepth; x++) {
+      inFlight[x] = dataStorage.getAsync(records[random.nextInt(RECORDS)]);
+    }
+    for (int x = 0; x < queueDepth; x++) {
+      blackhole.consume(inFlight[x].join());
+    }
+    reads.reads += queueDepth;
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl.file;
+
+import io.mapsmessaging.storage.Storable;
+import io.mapsmessaging.storage.StorableFactory;
+import io.mapsmessaging.storage.impl.file.partition.DataStorageImpl;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+@State(Scope.Benchmark)
+public class DataAppendJMH {
+
+  private static final long PARTITION_SIZE = 1L << 30;
+
+  @Param({"0", "67108864"})
+  public int appendWindowSize;
+
+  @Param({"128", "4096"})
+  public int recordSize;
+
+  private File file;
+  private DataStorageImpl<Record> dataStorage;
+  private ByteBuffer[] payload;
+  private long key;
+
+  @Setup(Level.Iteration)
+  public void setup() throws IOException {
+    file = File.createTempFile("data_append", ".jmh");
+    file.delete();
+    dataStorage = new DataStorageImpl<>(file.getAbsolutePath(), new RecordFactory(), false, PARTITION_SIZE, 0, false, appendWindowSize);
+    payload = new ByteBuffer[]{ByteBuffer.allocate(recordSize)};
+  }
+
+  @TearDown(Level.Iteration)
+  public void tearDown() throws IOException {
+    dataStorage.delete();
+  }
+
+  @Benchmark
+  @BenchmarkMode({Mode.Throughput})
+  @Fork(value = 1, warmups = 2)
+  @Threads(1)
+  public void append(Blackhole blackhole) throws IOException {
+    if (dataStorage.isFull()) {
+      tearDown();
+      setup();
+    }
+    payload[0].clear();
+    blackhole.consume(dataStorage.add(new Record(key++), payload));
+  }
+
+  public static final class Record implements Storable {
+
+    private final long key;
+
+    Record(long key) {
+      this.key = key;
+    }
+
+    @Override
+    public long getKey() {
+      return key;
+    }
+
+    @Override
+    public long getExpiry() {
+      return 0;
+    }
+  }
+
+  public static final class RecordFactory implements StorableFactory<Record> {
+
+    @Override
+    public @NotNull Record unpack(@NotNull ByteBuffer[] reloadBuffers) {
+      return new Record(0);
+    }
+
+    @Override
+    public @NotNull ByteBuffer[] pack(@NotNull Record object) {
+      return new ByteBuffer[0];
+    }
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl.file;
+
+
+import io.mapsmessaging.storage.impl.file.partition.IndexRecord;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ThreadLocalRandom;
+
+@State(Scope.Benchmark)
+public class IndexAccessJMH {
+
+  private static final int ENTRIES = 65536;
+
+  private File file;
+  private RandomAccessFile randomAccessFile;
+  private MappedByteBuffer index;
+
+  @Setup
+  public void setup() throws IOException {
+    file = File.createTempFile("index_access", ".jmh");
+    randomAccessFile = new RandomAccessFile(file, "rw");
+    index = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, (long) ENTRIES * IndexRecord.HEADER_SIZE);
+    for (int x = 0; x < ENTRIES; x++) {
+      new IndexRecord(x, 0, (x + 1L) * 64, 0, 64).update(index, x * IndexRecord.HEADER_SIZE);
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    randomAccessFile.close();
+    file.delete();
+  }
+
+  @Benchmark
+  @BenchmarkMode({Mode.Throughput})
+  @Fork(value = 1, warmups = 2)
+  @Threads(1)
+  public void positionedRecordRead(Blackhole blackhole) {
+    int key = ThreadLocalRandom.current().nextInt(ENTRIES);
+    synchronized (this) {
+      index.position(key * IndexRecord.HEADER_SIZE);
+      IndexRecord indexRecord = new IndexRecord(key, index);
+      blackhole.consume(indexRecord.getPosition() > 0);
+    }
+  }
+
+  @Benchmark
+  @BenchmarkMode({Mode.Throughput})
+  @Fork(value = 1, warmups = 2)
+  @Threads(12)
+  public void positionedRecordReadContended(Blackhole blackhole) {
+    positionedRecordRead(blackhole);
+  }
+
+  @Benchmark
+  @BenchmarkMode({Mode.Throughput})
+  @Fork(value = 1, warmups = 2)
+  @Threads(1)
+  public void absoluteRead(Blackhole blackhole) {
+    int key = ThreadLocalRandom.current().nextInt(ENTRIES);
+    blackhole.consume(IndexRecord.readPosition(index, key * IndexRecord.HEADER_SIZE) > 0);
+  }
+
+  @Benchmark
+  @BenchmarkMode({Mode.Throughput})
+  @Fork(value = 1, warmups = 2)
+  @Threads(12)
+  public void absoluteReadContended(Blackhole blackhole) {
+    absoluteRead(blackhole);
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ *
+ *  Copyright [ 2020 - 2024 ] Matthew Buckton
+ *  Copyright [ 2024 - 2025 ] MapsMessaging B.V.
+ *
+ *  Licensed under the Apache License, Version 2.0 with the Commons Clause
+ *  (the "License"); you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at:
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *      https://commonsclause.com/
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.mapsmessaging.storage.impl.file.partition;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+
+public class IndexMapTest {
+
+  @Test
+  public void segmentedMapSpansSegments() throws IOException {
+    File file = File.createTempFile("segmented", ".idx");
+    file.deleteOnExit();
+    int slots = 1000;
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+      FileChannel channel = randomAccessFile.getChannel();
+      long size = slots * (long) IndexRecord.HEADER_SIZE;
+      try (SegmentedIndexMap map = new SegmentedIndexMap(channel, 16, size, IndexRecord.HEADER_SIZE, 7)) {
+        Assertions.assertEquals(size, map.size());
+        for (int x = 0; x < slots; x++) {
+          new IndexRecord(x, 1, x + 1L, x * 2L, x + 3).update(map, x * (long) IndexRecord.HEADER_SIZE);
+        }
+        for (int x = 0; x < slots; x++) {
+          long offset = x * (long) IndexRecord.HEADER_SIZE;
+          Assertions.assertEquals(x + 1L, IndexRecord.readPosition(map, offset));
+          Assertions.assertEquals(x * 2L, IndexRecord.readExpiry(map, offset));
+          Assertions.assertEquals(x + 3, IndexRecord.readLength(map, offset));
+        }
+      }
+      try (IndexMap map = IndexMap.map(channel, 16, slots * (long) IndexRecord.HEADER_SIZE, IndexRecord.HEADER_SIZE)) {
+        Assertions.assertTrue(map instanceof MappedIndexMap);
+        IndexRecord indexRecord = new IndexRecord(500, map, 500L * IndexRecord.HEADER_SIZE);
+        Assertions.assertEquals(501L, indexRecord.getPosition());
+        Assertions.assertEquals(1, indexRecord.getLocationId());
+      }
+    }
+  }
+
+  @Test
+  public void windowedMapBoundsMappedWindows() throws IOException {
+    File file = File.createTempFile("windowed", ".idx");
+    file.deleteOnExit();
+    int slots = 1000;
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+      FileChannel channel = randomAccessFile.getChannel();
+      try (WindowedIndexMap map = new WindowedIndexMap(channel, 16, slots * (long) IndexRecord.HEADER_SIZE, IndexRecord.HEADER_SIZE, 64, 3)) {
+        for (int x = 0; x < slots; x++) {
+          new IndexRecord(x, 0, x + 1L, 0, 10).update(map, x * (long) IndexRecord.HEADER_SIZE);
+          Assertions.assertTrue(map.mappedWindows() <= 3);
+        }
+        for (int x = slots - 1; x >= 0; x--) {
+          Assertions.assertEquals(x + 1L, IndexRecord.readPosition(map, x * (long) IndexRecord.HEADER_SIZE));
+        }
+        Assertions.assertEquals(3, map.mappedWindows());
+      }
+    }
+  }
+
+  @Test
+  public void compactFormatRoundTrip() throws IOException {
+    File file = File.createTempFile("compact", ".idx");
+    file.deleteOnExit();
+    long baseTime = System.currentTimeMillis();
+    CompactIndexRecordFormat format = new CompactIndexRecordFormat(baseTime);
+    int slots = 100;
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+      FileChannel channel = randomAccessFile.getChannel();
+      try (IndexMap map = IndexMap.map(channel, 0, slots * (long) format.getSlotSize(), format.getSlotSize())) {
+        for (int x = 0; x < slots; x++) {
+          long expiry = (x % 2 == 0) ? 0 : baseTime + x * 1500L;
+          format.write(new IndexRecord(x, 0, x * 4096L + 1, expiry, x + 40), map, x * (long) format.getSlotSize());
+        }
+        for (int x = 0; x < slots; x++) {
+          IndexRecord indexRecord = format.read(x, map, x * (long) format.getSlotSize());
+          Assertions.assertEquals(x * 4096L + 1, indexRecord.getPosition());
+          Assertions.assertEquals(x + 40, indexRecord.getLength());
+          if (x % 2 == 0) {
+            Assertions.assertEquals(0, indexRecord.getExpiry());
+          } else {
+            long expected = baseTime + x * 1500L;
+            Assertions.assertTrue(indexRecord.getExpiry() >= expected && indexRecord.getExpiry() < expected + 1000);
+          }
+        }
+        IndexRecord tooLarge = new IndexRecord(0, 0, CompactIndexRecordFormat.MAX_POSITION + 1, 0, 10);
+        Assertions.assertThrows(IOException.class, () -> format.write(tooLarge, map, 0));
+      }
+    }
+  }
+
+  @Test
+  public void wideSlotsSegmentBeyondTwoGigabytes() throws IOException {
+    int slotSize = IndexRecord.HEADER_SIZE + 4096; // inline slots with a 4K threshold
+    int segmentSlots = SegmentedIndexMap.segmentSlots(slotSize);
+    Assertions.assertEquals(Integer.bitCount(segmentSlots), 1);
+    Assertions.assertTrue((long) segmentSlots * slotSize <= MappedIndexMap.MAX_SIZE);
+
+    File file = File.createTempFile("wide", ".idx");
+    file.deleteOnExit();
+    long slots = MappedIndexMap.MAX_SIZE / slotSize + 16L; // just over a single mapping
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+      FileChannel channel = randomAccessFile.getChannel();
+      try (IndexMap map = IndexMap.map(channel, 0, slots * slotSize, slotSize)) {
+        Assertions.assertTrue(map instanceof SegmentedIndexMap);
+        long last = (slots - 1) * slotSize;
+        new IndexRecord(slots - 1, 0, 42L, 0, 7).update(map, last);
+        new IndexRecord(0, 0, 11L, 0, 5).update(map, 0);
+        Assertions.assertEquals(42L, IndexRecord.readPosition(map, last));
+        Assertions.assertEquals(11L, IndexRecord.readPosition(map, 0));
+      }
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void rejectsUnalignedSegments() throws IOException {
+    File file = File.createTempFile("segmented", ".idx");
+    file.deleteOnExit();
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+      FileChannel channel = randomAccessFile.getChannel();
+      Assertions.assertThrows(IOException.class, () -> new SegmentedIndexMap(channel, 0, 4096, IndexRecord.HEADER_SIZE, 0));
+    }
+  }
+
+  @Test
+  public void closedMapsRejectAccess() throws IOException {
+    File file = File.createTempFile("closed", ".idx");
+    file.deleteOnExit();
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+      FileChannel channel = randomAccessFile.getChannel();
+      long size = 100 * (long) IndexRecord.HEADER_SIZE;
+      IndexMap[] maps = {new MappedIndexMap(channel, 16, size), new SegmentedIndexMap(channel, 16, size, IndexRecord.HEADER_SIZE, 7)};
+      for (IndexMap map : maps) {
+        map.putLong(0, 42);
+        map.close();
+        map.close();
+        Assertions.assertThrows(IllegalStateException.class, () -> map.getLong(0));
+        Assertions.assertThrows(IllegalStateException.class, () -> map.putLong(0, 1));
+        Assertions.assertEquals(size, map.size());
+      }
+    }
+  }
+}
@@ -21,6 +21,8 @@ package io.mapsmessaging.storage.impl.file.partition;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.nio.ByteBuffer;
+
 public class IndexRecordTest {
   @Test
   public void testIndexRecord() {
@@ -32,4 +34,23 @@ public class IndexRecordTest {
     Assertions.assertEquals(0, record.getLength());
     Assertions.assertEquals(0, record.getKey());
   }
+
+  @Test
+  public void testAbsoluteAccess() {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(IndexRecord.HEADER_SIZE * 4);
+    IndexRecord record = new IndexRecord(2, 7, 1024, 5000, 321);
+    record.update(buffer, 2 * IndexRecord.HEADER_SIZE);
+    Assertions.assertEquals(0, buffer.position());
+
+    IndexRecord reloaded = new IndexRecord(2, buffer, 2 * IndexRecord.HEADER_SIZE);
+    Assertions.assertEquals(record.getLocationId(), reloaded.getLocationId());
+    Assertions.assertEquals(record.getPosition(), reloaded.getPosition());
+    Assertions.assertEquals(record.getExpiry(), reloaded.getExpiry());
+    Assertions.assertEquals(record.getLength(), reloaded.getLength());
+    Assertions.assertEquals(1024, IndexRecord.readPosition(buffer, 2 * IndexRecord.HEADER_SIZE));
+    Assertions.assertEquals(5000, IndexRecord.readExpiry(buffer, 2 * IndexRecord.HEADER_SIZE));
+    Assertions.assertEquals(321, IndexRecord.readLength(buffer, 2 * IndexRecord.HEADER_SIZE));
+    Assertions.assertEquals(0, IndexRecord.readPosition(buffer, IndexRecord.HEADER_SIZE));
+    Assertions.assertEquals(0, buffer.position());
+  }
 }